@@ -0,0 +1,141 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for parsing, serialising, querying, encoding, solving and
+ * rendering {@link Lights} boards.
+ *
+ * <p>
+ * The parameter is the dimension of one of the example boards from the
+ * README. Run with <code>./gradlew jmh</code>.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class LightsBenchmark {
+
+	// the example boards from the README by dimension
+	private static final Map<String, String> BOARDS = new HashMap<String, String>();
+	static {
+		BOARDS.put("5",
+				"5:i1g1a1c0B");
+		BOARDS.put("7",
+				"7:BBb3aBaBiBBi1a2c0c4aBg");
+		BOARDS.put("10",
+				"10:b10cB1bBj3a2c1Ba2bBa1hBa22bBBa0h0aBbBa0BcBaBjBb21cBBb");
+		BOARDS.put("45",
+				"45:b1cBBBBBb0b0BBBBa2BaBbBBbBcBa2a1e2fB2gBa2Be2bBB0cBBbB0bB1BBaBBb2bBeBBbBBBBBaBaBa1aBa3Ba1d1cBa0bBdBB0aBB1a2bBBa1g2a3aBaBaBbBB2f1BBbBbBeBBaBaBBcBBBaBBb2iBaBBBBfB1dBBBBBaB0BBaBaBcBbBcBa0BBBaBa3bBBa1bBaB1a1bBBBB2aBd2aBbBaBcBa1BBbBBBaBBc0aBbBaBdBB1d3aB3cBbBBcBa1gBbB1aBBBB2dBaBcB2d1eBcBaBBcBaBBBBaBBcBBa3bBBaBBaBBeBaBB2BBBbBbBc1c1aBbBdBaBe1b2a2B1g3a2aBa2aBaBBBaBeBbBa1cBd3aBbBbB0cB1aBBBBaBBBaB0bBBaBBaBBaBcBBdBaBBeBBBBBBBBBa1cBB2gBBBBBbB1a2a1aBcB1a2bBa1bBbBBBBBBBbBa1aBaBcBB1BbBc1cBaBd2bB1bBe1dB2c1BcBBaBaBBBaBiBb1b2dBaB2bBaBaBb1BbBa1bBBBB1aBeBBBbBBa1B2bBbBBBBBBbBeBBBa1B1d0a1BBaBBBBbBBBcBBBc3eB1BaBaBcBbBbBBd2cBBaBBB2c1BBb1BBBaBB1aBBaBBaBBBBBbBBBBaB1BBBBaBBb1c1BbBBa2bBBeBBbBBBbBeBBaBdBBdBBaBBBBBaBaBa2aBBaB1a1c0d1d1b0aBbBBBBaBBbBaBBBbBBbBBBaBbBBc0d0dBa1aB1bB12cBa12bB2bBBaB1a2b3bB0gBBBBBcBb1BaBbBBa0fBbBaBa3BbBBBBBa1aBb1gBBc0bBa0aBBaBbBdBiBBBB2bBa201dBBBc0aBa3cBc1d0aBBBbBcBBcBaBaBBBaBcB2cBBbBBBbB2eB3cBaBBBBaBaB2BBBBBBb1bBBBbB2aBc1aBBBc2cBBbBBBgBcBaBBBbBBcBcBB1dBa1BBBBf1cBBB1BBaBBBBaBc1dBd1BeBBBb3hB1BaBaBc2BBBBBBa21cBaB0a1dBbBkBiBb2dBBaBBBBBBmBcBa2aBB0BBBBaBbB2aBaBb2BBBB2b1bBBBaB1Ba3aBbBiBeBBaBcBeBbBa2aBaBbB1dBBbBBBBbBBBBaBBBBBB2cBBBdBa1aBb1eBBbBBB1bBBbBaBBBa2aBbBBBa0aBa2BBBaBbB0aBBB10BbBa1aBB3bBBbBBBa2aBaBaBBdB1cBBBBBgBBaBc1eB0aBB1cBaBBaBBb1BBe3cB1aBb2aBaB0aB0cBb0aBB3bBaB1bBBa1a3Ba2eBBBaBBBcBBBbBaBb0gBaB0bBBaBaBBBc2aBaBBBd2aBBBBdBaBbBb1d0c1bBa3bBBa1bBbBBBaBaBBb1bBa3a2cBBBbBBBfBBBBaBBBa0bBBBa1a");
+		BOARDS.put("70",
+				"70:a0Ba1bBbBBdBBBBBeBBBaBaBaBa02bBb11bBBBeBaBaBBaBaBb1aBdBBaB2c3bBBaBBb2BBBcBaBaBBcBgBaBBb3aBaBBbBBBh1a2BaBBBaBBaBBaBBj11cBc4aBBbBaBBBBBbBBBd4aBb0b0BdB2aBb2BaBaBa2aBgB11dBBaBb0b11aBa1cB1cBcB1cBa0dBBaBaBcBBeBaBBB11BBc1a1h1a0e3d1BBaBBbB1aBa2a3bBBBaBBB2e1cBBdBbBaBBBa100aBBd1BcBaBBcBBdBBaBbBa00B0b0eBaBBa1bBBbBb3bBfBcBcBa2BB1cBBBb2aBB1eBBB1Bb1BdBaBaBbB0cBBBa3e1BcBbBBBBbB2bBB1dBBBBBBBBBfBbB1bBBbBaB1bBcBa2hBB1B1dBbBf1cBaBbBB1b1BBBBaBbBf2bBbBBaBaBBBlBa2BaBaBBaBB1eBBb4aBcBa1BBBBB1fB1aBaBaB1b1aBaBcBc2aBBBaBa4bBbBdBBBcBaBa2eBdB2aBbBbBc4aBdBhBj0aBBa3a2bBaBa2bBeBaBBa3aBaBB1bBbBBBbBBaBaBBa3aBBa3d1eBcBBaBBBBB2aBBBBBa1aBBa2bBc1bBdBBaBBB2aBB2cBBb4cBBBBaBBBbBBBBcBaBb1dBaBaBaB2b2BBBBBcBB1bBaBbBBBBdBbBBB0c0BBBa3BdB2bBaB0c1aBBBaBBaBgB3dBBcBdBa0bBa2gBaBBb1bBBBaBBBfBa2bBaBc0a2BBBBbBBB1c2a2b2bBaBBaBeBBb0BBc0BaBc11aBb1BbBBaBaBeBa2aBbBbBBaBBBBaBaBaBBBBaBc3aBeBbBB3aBdBa0aBBBbBaBBaBBBaBbBBBaBBd2BaBBcBBBbBBc2aBBBBBa3bBcBaBaBBBb1a1bBBbBBBBaBBBaBd1dBBc1aBaBBbBBb1aB1bBaBBBd1bB2cBBBaBaBB1bBb22aBBBBBBBBBb2BBb1bBB21b3aBB10aBBBBeBaBbBdBB2aBa1a1c0hBBBc0bBBBa0B3aBcBBe1bBBaBB1bBBaBaBB2aBBcBbBBBBBcBBBcBb2aBdBBdBBBaBBaBb1b3aBBBaBa2bB2aBd1aBjBB1dBdBbBBb2BbBBB1dBB0aBcBBBa3aBBaBBb1aBBdB0a1cB1Bb1a1a1cBc3aBcB1aBBaBBaBa1cBBbBaBaB2aBBeBBBBcBa1aBe1bBaBBBa4aBbBBaBBa2b0bB0a1aBaBfBaBBBcBc2b1bBaBaBaBBaBBBBbBcBcBBBBBb2BdBBBbBaBBaBBBBaBaBcBB0a1a1cBa3a3BBaBeBBBcBBbBBaBBBB0bBc0a10bBB01aBBaBbBa2aBBeB2eBdB2eBc2B1aBBbBaBBdBaBBbBbBbBbBbB2bB1BcBbBBbBBaBBc2aBa3BBBBB2aBBb2aBcBBBaBaBaBaBb1c1aBBB3aBaBb1dBBbBBB1aB0aBBBBaBdBBgBbB1BBaBBb1BBB2BBdBBcBBB2dBaBBBB2a3aBaB1aBBb2aBbBbBBBBb3aB0eBBhBBbBBaBaBBaBcBBb1BaBaBaBb1bBBa0dBa4aBBaBaBbB1c3aBBBbBbBaBfBBBBbBbBBb2aBBaBaBBBdBBBBa3bBbBaBBa0BBBBbBaBBBB0aB1bBBBaBaB1d1cB1bBcB2BBaBbBaBBaBcBaBBBa1eBBaBBB1BaBcBBBcBaBeBBaBBBcBbBBbBBBb1a1a1bBBBaBBBb0cBBa1bBe1dB1aBbBBaB2eBa4bBaBaBa1bBBaBBcBBcBBBBb1BaB0bB1aBaBgBBaBaBbBbBBa2f1b01BaBBBeBBaB12dBBBaBaBb1aBBa2bBbB1BdBcBaB1gBaBe2aB1BbBa1fBaBBbBaBBdBb1bBBa1Bb0a2aB2BaBb3bBa10cBBBdBbBb2aB2cBBBBaBaBbBBa2aBaBBcBBaBeBBeBcBcBBB1aBBaBBc1bBaBbBa2dBBaBBBBaB1aBa0bBBB1bBb11B2aBbBBbB1cBBd0aBbBbBaBBbBbBcBBbBBaBBbBfBBcBBaBaBbBa3cBBBdB2fBB0cBdBB2aBaBBBBa2a4aBaBd0Ba0c2BbBaBBBbBBc1dB2aBB1g2Bb0aBBBbBaBBBBbBhBBBc1bB2bBBbBBBbBaBBbBBbBB0eBbBdBbBBa3BaBBBc1aBBcBaB1a3cBbBbB2d2bBaBdBBe1BbBBbBaBbBBbBB1c2BBaBBa1a2bBdBbBBeBbBBBaBbBa2Ba1a2e1aBc2B0c0aBBBkBB1aBeBBb1aBc1Ba3aBfBaBBbBa2bB1e0dBBBaBBbBaB2cBBbBaBBaBa3aB1dBBBbBBdBB1bBBa0bBaBBaBBBaB1bBBBbB11BaBbBBBaBbBaBbBdB1bBaBBaBa2a1cBBaBBBBBaBB2cBdBbBBa2aBaBBaBaBaBaBcBaBBBBaB1bBbB3cBBBa0B0BaBBBBBBBBaBa2cB3cBdB3bBBa2BB3aBbB2bBaB0BgBaBBaBaBdBa3bBBBBaBbBBaBb3d1bBaBaBBBaBbB1aB0aBbBdBBb1aBBBBBB1eBBaB1fBaBBBBB2BbBBcBBaBBeB0c2bBb0dBaBBbBBBBa2BfBaBcBBBB1cBdBBBa3BB1aBBBBB2b1BaBdBB1cBBa1a3a1bBcBBb3a1a0aBaBBBBaBb1aBBcBbBaBBB1aBcBBa2c0BB1dBcBBdBcBBBa1dBbBBbBbBbBaB0BBBBaBBaBBaBBd3BaBB0aBBcBbBBaBaBaBaB1aBdBBaBh2a0BbBcBdBBB1BaBcBaBaBBdBa1b1bBaBB3aBaBB2aBa2dBBbBaBaBcB2c3aBBB2dBBBb2iB0BBeBBe2BBc1aBBg3dBBBBe2aBBcBBBa2bBc0BaBBb1BbB2aBBb1hBa1aBa2a4aBbBa3cBa0a1BeBBbBBaBBBBeBBBBa1a2BBBBd2fBBeBbBbBBbBBBBBdB1cBa0aBBb1aBB0b0h1b0bBcBBBBaBcBBBbBBBaBaBeBiBf2BaBBdBbBBBBaBbBB2BaBaB1BBB1a1fB1dBBaBB2aBB0a0Bb2cBbBaBBcBBbB2BBaBcBeBBcBBaBBBB2aBBBBcBBBa2aBBBBeBBa0BB1bBa2aBdBBa10c1aBb2BBBaBB1cBBbBBaBBbB1dBB1aBb2bBaBBg2bBa12bBdBa0bBbBBBBBBBaBd1a3cBa1cBbBBkBB0c3fBB1bBbBd1BB1BaBBbBBBBcBbBa1BaB0aB1BaBcBb1011d1aBaBa3a2aBBaB1bBBkBb1aBbBBBgBaBdB2aBb2BcBa1bBBaBcBhBBaBb2cBbBd0aBBBd0fBeBBBcBa1cBc1aBbBaBb1a2aBBBgBa2bBcBbBBa1cBBBa3bBBBaBB1aBBBaBBBa2bBBBbBaBBBBdBBb1BBaBBe10b2aBBaBBBBBBBBbB0bBaBBBbBaBBa");
+	}
+
+	@Param({ "5", "7", "10", "45", "70" })
+	public String size;
+
+	// the description of the board
+	private String description;
+
+	// the board without lights
+	private Lights board;
+
+	// the board with the lights of a solution
+	private Lights solved;
+
+	// renders the solved board
+	private LightsComponent component;
+
+	// the offscreen image to render into
+	private BufferedImage image;
+
+	@Setup
+	public void setup() throws Exception {
+		description = BOARDS.get(size);
+		board = new Lights(description);
+		solved = board.clone();
+		if (!new Solution(solved).solve())
+			throw new IllegalStateException("No solution for " + description);
+
+		component = new LightsComponent(solved);
+		Dimension preferred = component.getPreferredSize();
+		image = new BufferedImage(preferred.width, preferred.height,
+				BufferedImage.TYPE_INT_RGB);
+	}
+
+	@Benchmark
+	public Lights parse() throws LightsFormatException {
+		return new Lights(description);
+	}
+
+	@Benchmark
+	public String serialise() {
+		return solved.toString();
+	}
+
+	@Benchmark
+	public void isLit(Blackhole blackhole) {
+		int dimension = solved.getDimension();
+		for (int row = 0; row < dimension; row++) {
+			for (int col = 0; col < dimension; col++) {
+				blackhole.consume(solved.isLit(row, col));
+			}
+		}
+	}
+
+	@Benchmark
+	public void getLitNeighbours(Blackhole blackhole) {
+		int dimension = solved.getDimension();
+		for (int row = 0; row < dimension; row++) {
+			for (int col = 0; col < dimension; col++) {
+				blackhole.consume(solved.getLitNeighbours(row, col));
+			}
+		}
+	}
+
+	@Benchmark
+	public boolean encode() {
+		return new Solution(board.clone()).encode();
+	}
+
+	@Benchmark
+	public boolean solve() throws Exception {
+		return new Solution(board.clone()).solve();
+	}
+
+	@Benchmark
+	public BufferedImage paint() {
+		Graphics2D g = image.createGraphics();
+		g.setClip(0, 0, image.getWidth(), image.getHeight());
+		component.paintComponent(g);
+		g.dispose();
+		return image;
+	}
+
+}
@@ -0,0 +1,172 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import java.util.Arrays;
+
+import org.sat4j.specs.ContradictionException;
+
+/**
+ * The ways to encode that at most one of a set of literals is true.
+ *
+ * <p>
+ * {@link Solution} needs one such constraint per segment of the board. The
+ * pairwise encoding needs no auxiliary variables but a quadratic number of
+ * clauses, which hurts on long open rows. The other encodings trade auxiliary
+ * variables for a linear number of clauses.
+ * </p>
+ *
+ * <p>
+ * Sets with less than {@link #PAIRWISE_THRESHOLD} literals are always encoded
+ * pairwise since the auxiliary variables do not pay off for them.
+ * </p>
+ *
+ * @see Solution#setAtMostOneEncoding(AtMostOneEncoding)
+ */
+public enum AtMostOneEncoding {
+
+	/**
+	 * One binary clause for every pair of literals. No auxiliary variables,
+	 * n(n-1)/2 clauses.
+	 */
+	PAIRWISE {
+		@Override
+		void encodeLarge(CnfBuilder cnf, int[] literals)
+				throws ContradictionException {
+			encodePairwise(cnf, literals);
+		}
+	},
+
+	/**
+	 * The sequential counter by Sinz: auxiliary variable s<sub>i</sub> is
+	 * true if one of the first i literals is true. n-1 auxiliary variables,
+	 * 3n-4 clauses.
+	 */
+	SEQUENTIAL {
+		@Override
+		void encodeLarge(CnfBuilder cnf, int[] literals)
+				throws ContradictionException {
+			int n = literals.length;
+			int previous = cnf.newVariable();
+			cnf.addClause(-literals[0], previous);
+			for (int i = 1; i < n - 1; i++) {
+				int s = cnf.newVariable();
+				cnf.addClause(-literals[i], s);
+				cnf.addClause(-previous, s);
+				cnf.addClause(-literals[i], -previous);
+				previous = s;
+			}
+			cnf.addClause(-literals[n - 1], -previous);
+		}
+	},
+
+	/**
+	 * The commander encoding by Klieber and Kwon: the literals are split into
+	 * groups of three, each group is encoded pairwise and gets a commander
+	 * variable implied by its literals. At most one commander may be true,
+	 * which is encoded recursively.
+	 */
+	COMMANDER {
+		@Override
+		void encodeLarge(CnfBuilder cnf, int[] literals)
+				throws ContradictionException {
+			int groups = (literals.length + 2) / 3;
+			int[] commanders = new int[groups];
+			for (int g = 0; g < groups; g++) {
+				int[] group = Arrays.copyOfRange(literals, 3 * g,
+						Math.min(3 * g + 3, literals.length));
+				encodePairwise(cnf, group);
+				commanders[g] = cnf.newVariable();
+				for (int literal : group) {
+					cnf.addClause(-literal, commanders[g]);
+				}
+			}
+			encode(cnf, commanders);
+		}
+	},
+
+	/**
+	 * The product encoding by Chen: the literals are arranged in a p x q grid
+	 * with p, q about the square root of n. Every literal implies the variable
+	 * of its row and of its column, at most one row and at most one column
+	 * variable may be true, which is encoded recursively.
+	 */
+	PRODUCT {
+		@Override
+		void encodeLarge(CnfBuilder cnf, int[] literals)
+				throws ContradictionException {
+			int n = literals.length;
+			int p = (int) Math.ceil(Math.sqrt(n));
+			int q = (n + p - 1) / p;
+			int[] rows = new int[p];
+			int[] cols = new int[q];
+			for (int i = 0; i < p; i++) {
+				rows[i] = cnf.newVariable();
+			}
+			for (int j = 0; j < q; j++) {
+				cols[j] = cnf.newVariable();
+			}
+			for (int k = 0; k < n; k++) {
+				cnf.addClause(-literals[k], rows[k / q]);
+				cnf.addClause(-literals[k], cols[k % q]);
+			}
+			encode(cnf, rows);
+			encode(cnf, cols);
+		}
+	},
+
+	/**
+	 * A native SAT4J cardinality constraint (see
+	 * {@link org.sat4j.specs.ISolver#addAtMost}). No auxiliary variables and no
+	 * clauses.
+	 */
+	NATIVE {
+		@Override
+		void encodeLarge(CnfBuilder cnf, int[] literals)
+				throws ContradictionException {
+			cnf.addAtMost(literals, 1);
+		}
+	};
+
+	/**
+	 * Sets of literals smaller than this are always encoded pairwise.
+	 */
+	public static final int PAIRWISE_THRESHOLD = 5;
+
+	/**
+	 * add constraints to a solver which ensure that at most one of the given
+	 * literals is true.
+	 *
+	 * @param cnf
+	 *            the builder to add the constraints to
+	 * @param literals
+	 *            the literals in DIMACS notation, without duplicates
+	 * @throws ContradictionException
+	 *             if the constraints make the clause set trivially
+	 *             unsatisfiable
+	 */
+	public void encode(CnfBuilder cnf, int[] literals)
+			throws ContradictionException {
+		if (literals.length < PAIRWISE_THRESHOLD)
+			encodePairwise(cnf, literals);
+		else
+			encodeLarge(cnf, literals);
+	}
+
+	// encode a set of at least PAIRWISE_THRESHOLD literals
+	abstract void encodeLarge(CnfBuilder cnf, int[] literals)
+			throws ContradictionException;
+
+	private static void encodePairwise(CnfBuilder cnf, int[] literals)
+			throws ContradictionException {
+		for (int i = 0; i < literals.length; i++) {
+			for (int j = i + 1; j < literals.length; j++) {
+				cnf.addClause(-literals[i], -literals[j]);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,626 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ISolver;
+
+/**
+ * This class solves many boards without any user interaction.
+ *
+ * <p>
+ * The input contains one board description per line in the format of
+ * {@link Lights#Lights(String)}. Empty lines and lines starting with
+ * <code>#</code> are skipped. For every board one result line is written as
+ * soon as the board is solved, so only one board is held in memory at any
+ * time.
+ * </p>
+ *
+ * <p>
+ * A result consists of
+ * </p>
+ * <ul>
+ * <li><code>line</code>: the number of the input line,</li>
+ * <li><code>status</code>: <code>SAT</code>, <code>UNSAT</code>,
+ * <code>UNKNOWN</code> (out of time or conflicts before the first solution)
+ * or <code>ERROR</code>,</li>
+ * <li><code>solutions</code>: the number of solutions found, at most the
+ * limit,</li>
+ * <li><code>solution</code>: the first solution as description string,</li>
+ * <li><code>millis</code>: the time for parsing and solving,</li>
+ * <li><code>firstMillis</code>: the time until the first solution was
+ * known,</li>
+ * <li><code>error</code>: the error message for malformed lines, or a note
+ * that the budget ran out while further solutions were counted.</li>
+ * </ul>
+ *
+ * <p>
+ * With <code>--timeout=MS</code> and <code>--conflicts=N</code>, every SAT
+ * call is limited in wall clock time and conflicts (see
+ * {@link Solution#setTimeoutMs(long)}), so a single hard board cannot stall a
+ * worker.
+ * </p>
+ *
+ * <p>
+ * With <code>--cache=FILE</code>, results are kept in a {@link SolutionCache}
+ * of <code>--cache-size=N</code> boards which is loaded from the file before
+ * and saved to it after the run, so repeated boards are not solved again. The
+ * cache holds up to two solutions per board and is hence only used for
+ * limits up to 2. Answers from the cache carry no metrics. With
+ * <code>--canonical</code>, rotated and mirrored boards share cache entries
+ * (see {@link SolutionCache#setCanonical(boolean)}).
+ * </p>
+ *
+ * <p>
+ * With <code>--verify</code>, the first solution of every board is checked
+ * by the {@link Verifier} before it is written; a board whose solution breaks
+ * a rule is reported as <code>ERROR</code> with the first violation.
+ * </p>
+ *
+ * <p>
+ * With <code>--metrics</code>, JSON results additionally contain the
+ * {@link SolveMetrics} of the board as member <code>metrics</code>. The CSV
+ * format has no room for them and ignores the option.
+ * </p>
+ *
+ * <p>
+ * Boards are solved in parallel by a fixed number of worker threads. Every
+ * worker keeps one SAT solver which is reset for each board. The results are
+ * written in input order. At most {@link #WINDOW_PER_THREAD} boards per thread
+ * are read ahead, so a slow board holds back the reader rather than letting
+ * the pending results pile up in memory.
+ * </p>
+ *
+ * <p>
+ * Usage:
+ * <code>Solution --batch [--format=csv|json] [--limit=N] [--threads=N] [--timeout=MS] [--conflicts=N] [--metrics]
+ * [--cache=FILE] [--cache-size=N] [--canonical] [--verify] [file]</code>.
+ * Without file (or with <code>-</code>) the boards are read from stdin. The
+ * number of threads defaults to the number of available processors.
+ * </p>
+ */
+public class BatchSolver {
+
+	/**
+	 * The output formats.
+	 */
+	public enum Format {
+		/** comma separated values with a header line */
+		CSV,
+		/** one JSON object per line */
+		JSON
+	}
+
+	/**
+	 * The default maximum number of solutions per board. 2 suffices to tell
+	 * unique from ambiguous boards.
+	 */
+	public static final long DEFAULT_LIMIT = 2;
+
+	/**
+	 * The number of boards per worker thread which may be read ahead of the
+	 * first unfinished board.
+	 */
+	public static final int WINDOW_PER_THREAD = 4;
+
+	/**
+	 * The default number of boards kept in the cache.
+	 */
+	public static final int DEFAULT_CACHE_SIZE = 100000;
+
+	private static final String CSV_HEADER = "line,status,solutions,solution,millis,firstMillis,error";
+
+	// worker threads must not keep the JVM alive
+	private static final ThreadFactory DAEMON_THREADS = runnable -> {
+		Thread thread = new Thread(runnable, "lights-batch");
+		thread.setDaemon(true);
+		return thread;
+	};
+
+	// the output format
+	private final Format format;
+
+	// the maximum number of solutions to enumerate per board
+	private final long limit;
+
+	// the number of worker threads
+	private final int threads;
+
+	// whether JSON results contain the solve metrics
+	private boolean withMetrics;
+
+	// whether solutions are checked before they are reported
+	private boolean verify;
+
+	// the wall clock time per SAT call in ms, 0 for no limit
+	private long timeoutMs;
+
+	// the conflicts per SAT call, 0 for no limit
+	private int conflictBudget;
+
+	// the results of earlier boards, null for none
+	private SolutionCache cache;
+
+	// the SAT solver of each worker thread
+	private final ThreadLocal<ISolver> solvers = ThreadLocal
+			.withInitial(SolverFactory::newDefault);
+
+	/**
+	 * The outcome of solving one board.
+	 */
+	public static class Result {
+		/** the number of the input line */
+		long line;
+		/** SAT, UNSAT, UNKNOWN or ERROR */
+		String status;
+		/** the number of solutions found */
+		long solutions;
+		/** the first solution, null if there is none */
+		String solution;
+		/** the time for parsing and solving in ms */
+		double millis;
+		/** the time until the first solution was known in ms */
+		double firstMillis;
+		/** the error message or a note, null for a complete SAT or UNSAT result */
+		String error;
+		/** the metrics of the solve, null unless requested */
+		SolveMetrics metrics;
+
+		/**
+		 * get the status of the board.
+		 *
+		 * @return one of SAT, UNSAT, UNKNOWN, ERROR
+		 */
+		public String getStatus() {
+			return status;
+		}
+
+		/**
+		 * get the number of solutions found.
+		 *
+		 * @return a non-negative number not above the limit
+		 */
+		public long getSolutions() {
+			return solutions;
+		}
+
+		/**
+		 * get the first solution found.
+		 *
+		 * @return a description string, null if there is no solution
+		 */
+		public String getSolution() {
+			return solution;
+		}
+
+		/**
+		 * get the time for parsing and solving the board.
+		 *
+		 * @return the wall clock time in milliseconds
+		 */
+		public double getMillis() {
+			return millis;
+		}
+
+		/**
+		 * get the metrics of the solve.
+		 *
+		 * @return the metrics, null unless requested by
+		 *         {@link BatchSolver#setMetrics(boolean)} or if the board could
+		 *         not be parsed
+		 */
+		public SolveMetrics getMetrics() {
+			return metrics;
+		}
+	}
+
+	/**
+	 * create a new batch solver which solves one board at a time.
+	 *
+	 * @param format
+	 *            the output format
+	 * @param limit
+	 *            the maximum number of solutions to enumerate per board,
+	 *            positive
+	 */
+	public BatchSolver(Format format, long limit) {
+		this(format, limit, 1);
+	}
+
+	/**
+	 * create a new batch solver.
+	 *
+	 * @param format
+	 *            the output format
+	 * @param limit
+	 *            the maximum number of solutions to enumerate per board,
+	 *            positive
+	 * @param threads
+	 *            the number of worker threads, positive
+	 */
+	public BatchSolver(Format format, long limit, int threads) {
+		if (limit <= 0)
+			throw new IllegalArgumentException("Limit non-positive: " + limit);
+		if (threads <= 0)
+			throw new IllegalArgumentException("Threads non-positive: "
+					+ threads);
+		this.format = format;
+		this.limit = limit;
+		this.threads = threads;
+	}
+
+	/**
+	 * choose whether the results contain the {@link SolveMetrics} of every
+	 * board. Only the JSON format writes them.
+	 *
+	 * @param withMetrics
+	 *            true to collect metrics, false (the default) otherwise
+	 */
+	public void setMetrics(boolean withMetrics) {
+		this.withMetrics = withMetrics;
+	}
+
+	/**
+	 * limit the SAT calls for every board.
+	 *
+	 * @see Solution#setTimeoutMs(long)
+	 * @see Solution#setConflictBudget(int)
+	 * @param timeoutMs
+	 *            the wall clock time per call in ms, 0 for no limit
+	 * @param conflicts
+	 *            the conflicts per call, 0 for no limit
+	 */
+	public void setBudget(long timeoutMs, int conflicts) {
+		if (timeoutMs < 0 || conflicts < 0)
+			throw new IllegalArgumentException("Negative budget");
+		this.timeoutMs = timeoutMs;
+		this.conflictBudget = conflicts;
+	}
+
+	/**
+	 * answer repeated boards from a cache. The cache is only used if the
+	 * limit is at most 2, see class comment.
+	 *
+	 * @param cache
+	 *            the cache to use and fill, null for none
+	 */
+	public void setCache(SolutionCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * choose whether the first solution of every board is checked by the
+	 * {@link Verifier} before it is reported.
+	 *
+	 * @param verify
+	 *            true to check solutions, false (the default) otherwise
+	 */
+	public void setVerify(boolean verify) {
+		this.verify = verify;
+	}
+
+	/**
+	 * solve all boards from a reader and write the results.
+	 *
+	 * @param in
+	 *            the source of the board descriptions, one per line
+	 * @param out
+	 *            the destination of the results, flushed at the end
+	 * @throws IOException
+	 *             if reading or writing fails
+	 */
+	public void run(BufferedReader in, Writer out) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		if (format == Format.CSV)
+			out.write(CSV_HEADER + "\n");
+
+		ExecutorService executor = threads == 1 ? null : Executors
+				.newFixedThreadPool(threads, DAEMON_THREADS);
+		ArrayDeque<Future<Result>> pending = new ArrayDeque<Future<Result>>();
+		int window = threads * WINDOW_PER_THREAD;
+
+		try {
+			String line;
+			long lineNumber = 0;
+			while ((line = in.readLine()) != null) {
+				lineNumber++;
+				final String description = line.trim();
+				if (description.isEmpty() || description.startsWith("#"))
+					continue;
+
+				if (executor == null) {
+					write(solve(lineNumber, description), out, sb);
+				} else {
+					final long number = lineNumber;
+					pending.add(executor.submit(() -> solve(number, description)));
+					while (pending.size() >= window)
+						write(await(pending.poll()), out, sb);
+				}
+			}
+
+			while (!pending.isEmpty())
+				write(await(pending.poll()), out, sb);
+		} finally {
+			if (executor != null)
+				executor.shutdownNow();
+		}
+		out.flush();
+	}
+
+	// wait for a result of a worker thread
+	private static Result await(Future<Result> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Batch interrupted");
+		} catch (ExecutionException e) {
+			// solve() catches all exceptions, so this is an error
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private void write(Result result, Writer out, StringBuilder sb)
+			throws IOException {
+		sb.setLength(0);
+		format(result, sb);
+		out.append(sb).append('\n');
+	}
+
+	/**
+	 * solve a single board.
+	 *
+	 * @param lineNumber
+	 *            the number of the line the board was read from
+	 * @param description
+	 *            the board description
+	 * @return the result, never null. Problems are reported with status ERROR.
+	 */
+	public Result solve(long lineNumber, String description) {
+		Result result = new Result();
+		result.line = lineNumber;
+		long start = System.nanoTime();
+
+		try {
+			Lights lights = new Lights(description);
+			boolean useCache = cache != null && limit <= 2;
+			if (useCache) {
+				SolutionCache.Entry entry = cache.get(lights);
+				// an entry without verdict cannot tell a second solution
+				if (entry != null && (entry.getVerdict() != null || limit == 1)) {
+					fromCache(entry, result);
+					if (verify && result.solution != null)
+						verify(new Lights(result.solution), result);
+					result.firstMillis = result.millis = millisSince(start);
+					return result;
+				}
+			}
+
+			Solution solution = new Solution(lights, solvers.get());
+			solution.setSolutionLimit(limit);
+			solution.setTimeoutMs(timeoutMs);
+			solution.setConflictBudget(conflictBudget);
+			if (withMetrics)
+				result.metrics = solution.getMetrics();
+			SolveStatus status = solution.trySolve();
+			result.firstMillis = millisSince(start);
+			result.status = status.name();
+			String second = null;
+			if (status == SolveStatus.SAT) {
+				result.solution = lights.toString();
+				if (verify && !verify(lights, result)) {
+					result.millis = millisSince(start);
+					return result;
+				}
+				do {
+					// only count
+					status = solution.tryNewSolution();
+					if (status == SolveStatus.SAT && second == null)
+						second = lights.toString();
+				} while (status == SolveStatus.SAT);
+				result.solutions = solution.getSolutionCount();
+				if (status == SolveStatus.UNKNOWN)
+					result.error = "Out of budget, solutions counted so far";
+			}
+			if (useCache && status == SolveStatus.UNSAT)
+				toCache(lights, result, second);
+		} catch (Exception e) {
+			result.status = "ERROR";
+			result.error = e.toString();
+		}
+
+		result.millis = millisSince(start);
+		return result;
+	}
+
+	// turn the result into an error if the solution breaks a rule
+	private static boolean verify(Lights solution, Result result) {
+		Violation violation = Verifier.verify(solution);
+		if (violation == null)
+			return true;
+		result.status = "ERROR";
+		result.error = "Invalid solution: " + violation;
+		return false;
+	}
+
+	// fill a result from a cache entry
+	private void fromCache(SolutionCache.Entry entry, Result result) {
+		List<String> solutions = entry.getSolutions();
+		result.status = solutions.isEmpty() ? "UNSAT" : "SAT";
+		result.solutions = Math.min(solutions.size(), limit);
+		result.solution = solutions.isEmpty() ? null : solutions.get(0);
+	}
+
+	/*
+	 * store a complete result in the cache. With a limit of 1, a board with
+	 * a solution cannot be told unique and is stored without verdict.
+	 */
+	private void toCache(Lights lights, Result result, String second) {
+		if (result.solutions == 0) {
+			cache.put(lights, new SolutionCache.Entry(Uniqueness.Verdict.NONE));
+		} else if (limit == 1) {
+			cache.put(lights, new SolutionCache.Entry(null, result.solution));
+		} else if (result.solutions < limit) {
+			cache.put(lights, new SolutionCache.Entry(
+					Uniqueness.Verdict.UNIQUE, result.solution));
+		} else if (second != null) {
+			cache.put(lights, new SolutionCache.Entry(
+					Uniqueness.Verdict.MULTIPLE, result.solution, second));
+		}
+	}
+
+	private static double millisSince(long start) {
+		return (System.nanoTime() - start) / 1e6;
+	}
+
+	/**
+	 * append a result in the output format of this solver (without line
+	 * break).
+	 *
+	 * @param result
+	 *            the result to format
+	 * @param sb
+	 *            the builder to append to
+	 */
+	void format(Result result, StringBuilder sb) {
+		if (format == Format.JSON) {
+			sb.append('{');
+			Json.appendMember(sb, "line", result.line);
+			Json.appendMember(sb, "status", result.status);
+			Json.appendMember(sb, "solutions", result.solutions);
+			Json.appendMember(sb, "solution", result.solution);
+			Json.appendMember(sb, "millis", result.millis);
+			Json.appendMember(sb, "firstMillis", result.firstMillis);
+			if (result.error != null)
+				Json.appendMember(sb, "error", result.error);
+			if (result.metrics != null)
+				result.metrics.appendJson(sb.append(",\"metrics\":"));
+			sb.append('}');
+		} else {
+			sb.append(result.line).append(',').append(result.status)
+					.append(',').append(result.solutions).append(',');
+			if (result.solution != null)
+				sb.append(result.solution);
+			sb.append(',').append(String.format(Locale.ROOT, "%.3f", result.millis))
+					.append(',')
+					.append(String.format(Locale.ROOT, "%.3f", result.firstMillis))
+					.append(',');
+			if (result.error != null)
+				sb.append('"').append(result.error.replace("\"", "\"\""))
+						.append('"');
+		}
+	}
+
+	// print the usage line and exit
+	private static void usage() {
+		System.err.println("Usage: Solution --batch [--format=csv|json] [--limit=N] [--threads=N] [--timeout=MS] [--conflicts=N] [--metrics] [--cache=FILE] [--cache-size=N] [--canonical] [--verify] [file]");
+		System.exit(2);
+	}
+
+	/**
+	 * run the batch solver from the command line.
+	 *
+	 * @param args
+	 *            options and an optional input file, see class comment
+	 * @throws IOException
+	 *             if reading or writing fails
+	 */
+	public static void main(String[] args) throws IOException {
+		Format format = Format.CSV;
+		long limit = DEFAULT_LIMIT;
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean withMetrics = false;
+		long timeoutMs = 0;
+		int conflicts = 0;
+		String cacheFile = null;
+		int cacheSize = DEFAULT_CACHE_SIZE;
+		boolean canonical = false;
+		boolean verify = false;
+		String file = "-";
+
+		try {
+			for (String arg : args) {
+				if (arg.startsWith("--format=")) {
+					format = Format.valueOf(arg.substring(9).toUpperCase(
+							Locale.ROOT));
+				} else if (arg.startsWith("--limit=")) {
+					limit = Long.parseLong(arg.substring(8));
+				} else if (arg.startsWith("--threads=")) {
+					threads = Integer.parseInt(arg.substring(10));
+				} else if (arg.startsWith("--timeout=")) {
+					timeoutMs = Long.parseLong(arg.substring(10));
+				} else if (arg.startsWith("--conflicts=")) {
+					conflicts = Integer.parseInt(arg.substring(12));
+				} else if (arg.startsWith("--cache=")) {
+					cacheFile = arg.substring(8);
+				} else if (arg.startsWith("--cache-size=")) {
+					cacheSize = Integer.parseInt(arg.substring(13));
+				} else if (arg.equals("--canonical")) {
+					canonical = true;
+				} else if (arg.equals("--verify")) {
+					verify = true;
+				} else if (arg.equals("--metrics")) {
+					withMetrics = true;
+				} else if (arg.startsWith("--") || !file.equals("-")) {
+					usage();
+				} else {
+					file = arg;
+				}
+			}
+			if (limit <= 0 || threads <= 0 || timeoutMs < 0 || conflicts < 0
+					|| cacheSize <= 0)
+				usage();
+		} catch (IllegalArgumentException e) {
+			// a malformed value like --format=xml or --limit=x
+			usage();
+		}
+
+		Reader reader = file.equals("-") ? new InputStreamReader(System.in,
+				StandardCharsets.US_ASCII) : Files.newBufferedReader(
+				Paths.get(file), StandardCharsets.US_ASCII);
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out,
+				StandardCharsets.US_ASCII));
+		try (BufferedReader in = new BufferedReader(reader)) {
+			BatchSolver batch = new BatchSolver(format, limit, threads);
+			batch.setMetrics(withMetrics);
+			batch.setVerify(verify);
+			batch.setBudget(timeoutMs, conflicts);
+			SolutionCache cache = null;
+			if (cacheFile != null) {
+				cache = SolutionCache.loadIfExists(Paths.get(cacheFile),
+						cacheSize);
+				cache.setCanonical(canonical);
+				batch.setCache(cache);
+			}
+			batch.run(in, out);
+			if (cache != null) {
+				cache.save(Paths.get(cacheFile));
+				System.err.println(cache);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,501 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+/**
+ * An immutable snapshot of a {@link Lights} board as bit masks.
+ *
+ * <p>
+ * Every row of the board is stored in {@link #getWordsPerRow()} words of 64
+ * bits; column <i>col</i> is bit <i>col</i> % 64 of word <i>col</i> / 64.
+ * Besides the blocks and the lights, the constructor computes once for the
+ * whole board which fields are lit, which lights see another light, how many
+ * lights are next to every field and which numbered blocks are violated.
+ * </p>
+ *
+ * <p>
+ * All of this is done with shifts and masks on whole words: within a row, the
+ * light spreads to the neighbouring fields in log 64 steps of doubling
+ * length (Kogge-Stone fill), carrying from word to word; between the rows, it
+ * spreads in one sweep downwards and one upwards, 64 columns at a time. The
+ * neighbour counts are added as three bit planes. Queries are then single
+ * bit tests, and whole-board queries like {@link #countUnlit()} take one pass
+ * over the words.
+ * </p>
+ *
+ * <p>
+ * The snapshot does not follow later changes of the board.
+ * </p>
+ *
+ * @see Verifier
+ */
+public final class Bitboard {
+
+	private final int dimension;
+
+	// the number of words per row
+	private final int words;
+
+	// the masks, row r at offset r * words
+	private final long[] free;
+	private final long[] lights;
+	private final long[] lit;
+	private final long[] conflict;
+	private final long[] numbered;
+	private final long[] violated;
+
+	// the number of adjacent lights of every field in three bit planes
+	private final long[] count0;
+	private final long[] count1;
+	private final long[] count2;
+
+	/**
+	 * take a snapshot of a board.
+	 *
+	 * @param board
+	 *            the board, it is not modified
+	 */
+	public Bitboard(Lights board) {
+		dimension = board.getDimension();
+		words = (dimension + 63) / 64;
+		int length = dimension * words;
+		free = new long[length];
+		lights = new long[length];
+		lit = new long[length];
+		conflict = new long[length];
+		numbered = new long[length];
+		violated = new long[length];
+		count0 = new long[length];
+		count1 = new long[length];
+		count2 = new long[length];
+
+		// the number of every numbered block in three bit planes
+		long[] need0 = new long[length];
+		long[] need1 = new long[length];
+		long[] need2 = new long[length];
+
+		for (int row = 0, pos = 0; row < dimension; row++) {
+			for (int w = 0; w < words; w++) {
+				// collect the word in locals, one store per mask
+				long f = 0, l = 0, n = 0, n0 = 0, n1 = 0, n2 = 0;
+				int end = Math.min(64, dimension - 64 * w);
+				for (int b = 0; b < end; b++, pos++) {
+					int code = board.getLinear(pos);
+					long bit = 1L << b;
+					if (code < Lights.BLOCK_CELL) {
+						f |= bit;
+						if (code == Lights.LIGHT_CELL)
+							l |= bit;
+					} else if (code >= Lights.CONSTRAINED_CELL) {
+						int need = code - Lights.CONSTRAINED_CELL;
+						n |= bit;
+						n0 |= (long) (need & 1) << b;
+						n1 |= (long) (need >> 1 & 1) << b;
+						n2 |= (long) (need >> 2 & 1) << b;
+					}
+				}
+				int i = row * words + w;
+				free[i] = f;
+				lights[i] = l;
+				numbered[i] = n;
+				need0[i] = n0;
+				need1[i] = n1;
+				need2[i] = n2;
+			}
+		}
+
+		spreadInRows();
+		spreadInColumns();
+		countNeighbours();
+		for (int i = 0; i < length; i++) {
+			long mismatch = (count0[i] ^ need0[i]) | (count1[i] ^ need1[i])
+					| (count2[i] ^ need2[i]);
+			violated[i] = numbered[i] & mismatch;
+		}
+	}
+
+	/**
+	 * get the dimension of the board.
+	 *
+	 * @return the height and width of the board
+	 */
+	public int getDimension() {
+		return dimension;
+	}
+
+	/**
+	 * get the number of words in which every row is stored.
+	 *
+	 * @return (dimension + 63) / 64
+	 */
+	public int getWordsPerRow() {
+		return words;
+	}
+
+	/**
+	 * check if a field is a block, with or without number.
+	 *
+	 * @param row
+	 *            the index of the row of the field (0 .. dimension-1)
+	 * @param col
+	 *            the index of the column of the field (0 .. dimension-1)
+	 * @throws IndexOutOfBoundsException
+	 *             if row or col are not within the bounds.
+	 * @return true iff the field is a block
+	 */
+	public boolean isBlock(int row, int col) {
+		return !test(free, row, col);
+	}
+
+	/**
+	 * check if a light is placed on a field.
+	 *
+	 * @param row
+	 *            the index of the row of the field (0 .. dimension-1)
+	 * @param col
+	 *            the index of the column of the field (0 .. dimension-1)
+	 * @throws IndexOutOfBoundsException
+	 *             if row or col are not within the bounds.
+	 * @return true iff the field holds a light
+	 */
+	public boolean isLight(int row, int col) {
+		return test(lights, row, col);
+	}
+
+	/**
+	 * check if a field is lit by a light, see {@link Lights#isLit(int, int)}.
+	 *
+	 * @param row
+	 *            the index of the row of the field (0 .. dimension-1)
+	 * @param col
+	 *            the index of the column of the field (0 .. dimension-1)
+	 * @throws IndexOutOfBoundsException
+	 *             if row or col are not within the bounds.
+	 * @return true iff the field is not a block and a light is placed in its
+	 *         row or column without a block in between
+	 */
+	public boolean isLit(int row, int col) {
+		return test(lit, row, col);
+	}
+
+	/**
+	 * check if a field holds a light which is lit by another light.
+	 *
+	 * @param row
+	 *            the index of the row of the field (0 .. dimension-1)
+	 * @param col
+	 *            the index of the column of the field (0 .. dimension-1)
+	 * @throws IndexOutOfBoundsException
+	 *             if row or col are not within the bounds.
+	 * @return true iff the field holds a light which sees another light
+	 */
+	public boolean isConflict(int row, int col) {
+		return test(conflict, row, col);
+	}
+
+	/**
+	 * check if a field is a numbered block with a different number of
+	 * adjacent lights.
+	 *
+	 * @param row
+	 *            the index of the row of the field (0 .. dimension-1)
+	 * @param col
+	 *            the index of the column of the field (0 .. dimension-1)
+	 * @throws IndexOutOfBoundsException
+	 *             if row or col are not within the bounds.
+	 * @return true iff the constraint of the block is not met
+	 */
+	public boolean isViolated(int row, int col) {
+		return test(violated, row, col);
+	}
+
+	/**
+	 * get the number of lights next to a field, see
+	 * {@link Lights#getLitNeighbours(int, int)}.
+	 *
+	 * @param row
+	 *            the index of the row of the field (0 .. dimension-1)
+	 * @param col
+	 *            the index of the column of the field (0 .. dimension-1)
+	 * @throws IndexOutOfBoundsException
+	 *             if row or col are not within the bounds.
+	 * @return the number of lights horizontally or vertically adjacent (0 ..
+	 *         4)
+	 */
+	public int getLitNeighbours(int row, int col) {
+		int count = test(count0, row, col) ? 1 : 0;
+		if (test(count1, row, col))
+			count += 2;
+		if (test(count2, row, col))
+			count += 4;
+		return count;
+	}
+
+	/**
+	 * get a word of the mask of the non-block fields.
+	 *
+	 * @param row
+	 *            the index of the row (0 .. dimension-1)
+	 * @param word
+	 *            the index of the word (0 .. {@link #getWordsPerRow()}-1)
+	 * @return bit <i>b</i> is set iff the field in column 64 * word + <i>b</i>
+	 *         is not a block; bits beyond the board are clear
+	 */
+	public long getFreeMask(int row, int word) {
+		return free[index(row, word)];
+	}
+
+	/**
+	 * get a word of the mask of the lights, see {@link #getFreeMask(int, int)}.
+	 *
+	 * @param row
+	 *            the index of the row (0 .. dimension-1)
+	 * @param word
+	 *            the index of the word (0 .. {@link #getWordsPerRow()}-1)
+	 * @return the bits of the fields with a light
+	 */
+	public long getLightMask(int row, int word) {
+		return lights[index(row, word)];
+	}
+
+	/**
+	 * get a word of the mask of the lit fields, see
+	 * {@link #getFreeMask(int, int)}.
+	 *
+	 * @param row
+	 *            the index of the row (0 .. dimension-1)
+	 * @param word
+	 *            the index of the word (0 .. {@link #getWordsPerRow()}-1)
+	 * @return the bits of the lit fields
+	 */
+	public long getLitMask(int row, int word) {
+		return lit[index(row, word)];
+	}
+
+	/**
+	 * get a word of the mask of the lights which see another light, see
+	 * {@link #getFreeMask(int, int)}.
+	 *
+	 * @param row
+	 *            the index of the row (0 .. dimension-1)
+	 * @param word
+	 *            the index of the word (0 .. {@link #getWordsPerRow()}-1)
+	 * @return the bits of the conflicting lights
+	 */
+	public long getConflictMask(int row, int word) {
+		return conflict[index(row, word)];
+	}
+
+	/**
+	 * get a word of the mask of the violated numbered blocks, see
+	 * {@link #getFreeMask(int, int)}.
+	 *
+	 * @param row
+	 *            the index of the row (0 .. dimension-1)
+	 * @param word
+	 *            the index of the word (0 .. {@link #getWordsPerRow()}-1)
+	 * @return the bits of the numbered blocks whose constraint is not met
+	 */
+	public long getViolatedMask(int row, int word) {
+		return violated[index(row, word)];
+	}
+
+	/**
+	 * count the lights on the board.
+	 *
+	 * @return a non-negative number
+	 */
+	public int countLights() {
+		return count(lights);
+	}
+
+	/**
+	 * count the non-block fields which are not lit.
+	 *
+	 * @return a non-negative number
+	 */
+	public int countUnlit() {
+		int result = 0;
+		for (int i = 0; i < free.length; i++)
+			result += Long.bitCount(free[i] & ~lit[i]);
+		return result;
+	}
+
+	/**
+	 * count the lights which see another light.
+	 *
+	 * @return a non-negative number
+	 */
+	public int countConflicts() {
+		return count(conflict);
+	}
+
+	/**
+	 * count the numbered blocks whose constraint is not met.
+	 *
+	 * @return a non-negative number
+	 */
+	public int countViolated() {
+		return count(violated);
+	}
+
+	/**
+	 * check whether the lights on the board form a solution.
+	 *
+	 * @return true iff all fields are lit, no light sees another one and all
+	 *         numbered blocks are satisfied
+	 */
+	public boolean isSolution() {
+		for (int i = 0; i < free.length; i++) {
+			if ((free[i] & ~lit[i] | conflict[i] | violated[i]) != 0)
+				return false;
+		}
+		return true;
+	}
+
+	private static int count(long[] mask) {
+		int result = 0;
+		for (int i = 0; i < mask.length; i++)
+			result += Long.bitCount(mask[i]);
+		return result;
+	}
+
+	// the bit of a field in a mask
+	private boolean test(long[] mask, int row, int col) {
+		if (row < 0 || row >= dimension || col < 0 || col >= dimension)
+			throw new IndexOutOfBoundsException("Bitboard: " + row + ", " + col);
+		return (mask[row * words + (col >> 6)] & 1L << col) != 0;
+	}
+
+	// the index of a word in a mask
+	private int index(int row, int word) {
+		if (row < 0 || row >= dimension || word < 0 || word >= words)
+			throw new IndexOutOfBoundsException("Bitboard: row " + row
+					+ ", word " + word);
+		return row * words + word;
+	}
+
+	/*
+	 * light the fields of the row segments of the lights and find the lights
+	 * with another light in their row segment.
+	 */
+	private void spreadInRows() {
+		long[] right = new long[words];
+		long[] left = new long[words];
+		for (int base = 0; base < free.length; base += words) {
+			long carry = 0;
+			for (int w = 0; w < words; w++) {
+				long p = free[base + w];
+				right[w] = fillUp(lights[base + w] | (carry & p & 1L), p);
+				carry = right[w] >>> 63;
+			}
+			carry = 0;
+			for (int w = words - 1; w >= 0; w--) {
+				long p = free[base + w];
+				left[w] = fillDown(lights[base + w] | (carry << 63 & p), p);
+				carry = left[w] & 1L;
+			}
+
+			for (int w = 0; w < words; w++) {
+				int i = base + w;
+				lit[i] |= right[w] | left[w];
+				// lit by a light further left or further right
+				long fromLeft = right[w] << 1;
+				if (w > 0)
+					fromLeft |= right[w - 1] >>> 63;
+				long fromRight = left[w] >>> 1;
+				if (w < words - 1)
+					fromRight |= left[w + 1] << 63;
+				conflict[i] |= lights[i] & (fromLeft | fromRight);
+			}
+		}
+	}
+
+	/*
+	 * light the fields of the column segments of the lights and find the
+	 * lights with another light in their column segment.
+	 */
+	private void spreadInColumns() {
+		// downwards over all rows, then upwards keeping only the row below
+		long[] down = new long[free.length];
+		for (int i = 0; i < free.length; i++) {
+			down[i] = lights[i];
+			if (i >= words)
+				down[i] |= down[i - words] & free[i];
+		}
+		long[] up = new long[words];
+		for (int i = free.length - 1; i >= 0; i--) {
+			int w = i % words;
+			long fromBelow = up[w];
+			long fromAbove = i >= words ? down[i - words] : 0;
+			up[w] = lights[i] | fromBelow & free[i];
+			lit[i] |= down[i] | up[w];
+			conflict[i] |= lights[i] & (fromAbove | fromBelow);
+		}
+	}
+
+	/*
+	 * count the lights above, below, left and right of every field, a full
+	 * adder on the four masks.
+	 */
+	private void countNeighbours() {
+		for (int row = 0; row < dimension; row++) {
+			int base = row * words;
+			for (int w = 0; w < words; w++) {
+				int i = base + w;
+				long north = row > 0 ? lights[i - words] : 0;
+				long south = row < dimension - 1 ? lights[i + words] : 0;
+				long west = lights[i] << 1;
+				if (w > 0)
+					west |= lights[i - 1] >>> 63;
+				long east = lights[i] >>> 1;
+				if (w < words - 1)
+					east |= lights[i + 1] << 63;
+
+				long sum1 = north ^ south;
+				long carry1 = north & south;
+				long sum2 = west ^ east;
+				long carry2 = west & east;
+				long carry = sum1 & sum2;
+				count0[i] = sum1 ^ sum2;
+				// at most two of the carries are set
+				count1[i] = carry ^ carry1 ^ carry2;
+				count2[i] = (carry & (carry1 | carry2)) | (carry1 & carry2);
+			}
+		}
+	}
+
+	// spread the bits of seed towards higher bits within p
+	private static long fillUp(long seed, long p) {
+		seed |= p & seed << 1;
+		p &= p << 1;
+		seed |= p & seed << 2;
+		p &= p << 2;
+		seed |= p & seed << 4;
+		p &= p << 4;
+		seed |= p & seed << 8;
+		p &= p << 8;
+		seed |= p & seed << 16;
+		p &= p << 16;
+		return seed | p & seed << 32;
+	}
+
+	// spread the bits of seed towards lower bits within p
+	private static long fillDown(long seed, long p) {
+		seed |= p & seed >>> 1;
+		p &= p >>> 1;
+		seed |= p & seed >>> 2;
+		p &= p >>> 2;
+		seed |= p & seed >>> 4;
+		p &= p >>> 4;
+		seed |= p & seed >>> 8;
+		p &= p >>> 8;
+		seed |= p & seed >>> 16;
+		p &= p >>> 16;
+		return seed | p & seed >>> 32;
+	}
+
+}
@@ -0,0 +1,348 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A binary file of boards which is read via a memory mapping.
+ *
+ * <p>
+ * The text format of {@link Lights#Lights(String)} needs to be parsed board
+ * by board. A board file stores the cell codes instead, two per byte, and
+ * allows random access to every board through an index. Files are written
+ * by a {@link BoardFileWriter}.
+ * </p>
+ *
+ * <p>
+ * All numbers are big endian. The file consists of
+ * </p>
+ * <ol>
+ * <li>a header: the magic number <code>0x4C474246</code>, the version (int),
+ * the number of boards (long) and the offset of the index (long),</li>
+ * <li>one record per board: the dimension <i>d</i> (short), a flag byte
+ * (bit 0 set iff a solution is present), the <i>d</i>*<i>d</i> cell codes as
+ * 4-bit nibbles, high nibble first, and, if present, a bitmap of the lights
+ * of the solution, least significant bit first,</li>
+ * <li>the index: the offset of every record (long).</li>
+ * </ol>
+ *
+ * <p>
+ * Files larger than 2 GB are mapped in several overlapping chunks, so every
+ * record lies completely within one chunk. Reading is thread-safe.
+ * </p>
+ *
+ * <p>
+ * Every record is checked when it is read: its offset must lie before the
+ * index, its dimension must be between 1 and
+ * {@link LightsParser#MAX_DIMENSION}, and it must end before the next record
+ * (or the index). A corrupt record is reported as an {@link IOException}.
+ * </p>
+ */
+public class BoardFile implements Closeable {
+
+	// the format of the header
+	static final int MAGIC = 0x4C474246;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 24;
+
+	// the flag for records with a solution bitmap
+	static final byte FLAG_SOLUTION = 1;
+
+	// the distance of the starts of two chunks
+	private static final long CHUNK_SIZE = 1L << 30;
+
+	// chunks extend into the next one by the size of the largest record
+	private static final int OVERLAP = recordSize(LightsParser.MAX_DIMENSION,
+			true);
+
+	private final Path file;
+
+	// the mapped chunks, chunk i starts at i * CHUNK_SIZE
+	private final ByteBuffer[] chunks;
+
+	// the number of boards and the position of their offsets
+	private final long count;
+	private final long indexOffset;
+
+	// set by close(), reads fail afterwards
+	private volatile boolean closed;
+
+	/**
+	 * open a board file and map it into memory.
+	 *
+	 * @param file
+	 *            a file written by a {@link BoardFileWriter}
+	 * @throws IOException
+	 *             if the file cannot be read or is not a board file
+	 */
+	public BoardFile(Path file) throws IOException {
+		this.file = file;
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+			long size = channel.size();
+			chunks = new ByteBuffer[(int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+			for (int i = 0; i < chunks.length; i++) {
+				long start = i * CHUNK_SIZE;
+				long length = Math.min(size - start, CHUNK_SIZE + OVERLAP);
+				chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+						length);
+			}
+
+			if (size < HEADER_SIZE || getInt(0) != MAGIC)
+				throw new IOException("Not a board file: " + file);
+			if (getInt(4) != VERSION)
+				throw new IOException("Unsupported version " + getInt(4)
+						+ " of board file: " + file);
+			count = getLong(8);
+			indexOffset = getLong(16);
+			if (count < 0 || indexOffset < HEADER_SIZE
+					|| indexOffset + count * 8 != size)
+				throw new IOException("Corrupt board file: " + file);
+		}
+	}
+
+	/*
+	 * the size of a record in bytes.
+	 */
+	static int recordSize(int dimension, boolean withSolution) {
+		int fields = dimension * dimension;
+		int size = 3 + (fields + 1) / 2;
+		if (withSolution)
+			size += (fields + 7) / 8;
+		return size;
+	}
+
+	/**
+	 * get the number of boards in the file.
+	 *
+	 * @return a non-negative number
+	 */
+	public long size() {
+		return count;
+	}
+
+	/**
+	 * get the dimension of a board without reading it.
+	 *
+	 * @param index
+	 *            the number of the board (0 .. size()-1)
+	 * @return the dimension of the board
+	 * @throws IOException
+	 *             if the record is corrupt
+	 * @throws IllegalStateException
+	 *             if the file has been closed
+	 */
+	public int getDimension(long index) throws IOException {
+		return getShort(record(index));
+	}
+
+	/**
+	 * check whether a board has been stored with a solution.
+	 *
+	 * @param index
+	 *            the number of the board (0 .. size()-1)
+	 * @return true iff {@link #getSolution(long)} returns a board
+	 * @throws IOException
+	 *             if the record is corrupt
+	 * @throws IllegalStateException
+	 *             if the file has been closed
+	 */
+	public boolean hasSolution(long index) throws IOException {
+		return (getByte(record(index) + 2) & FLAG_SOLUTION) != 0;
+	}
+
+	/**
+	 * read a board. Lights are restored as they were written.
+	 *
+	 * @param index
+	 *            the number of the board (0 .. size()-1)
+	 * @return a new board
+	 * @throws IOException
+	 *             if the record is corrupt
+	 * @throws IllegalStateException
+	 *             if the file has been closed
+	 */
+	public Lights getBoard(long index) throws IOException {
+		long offset = record(index);
+		int dimension = getShort(offset);
+		return new Lights(dimension, readField(index, offset, dimension));
+	}
+
+	/**
+	 * read a board together with its solution.
+	 *
+	 * @param index
+	 *            the number of the board (0 .. size()-1)
+	 * @return a new board with the lights of the solution, null if the board
+	 *         has been stored without solution
+	 * @throws IOException
+	 *             if the record is corrupt
+	 * @throws IllegalStateException
+	 *             if the file has been closed
+	 */
+	public Lights getSolution(long index) throws IOException {
+		long offset = record(index);
+		if ((getByte(offset + 2) & FLAG_SOLUTION) == 0)
+			return null;
+		int dimension = getShort(offset);
+		byte[] field = readField(index, offset, dimension);
+
+		int chunk = (int) (offset / CHUNK_SIZE);
+		ByteBuffer buffer = chunks[chunk];
+		int base = (int) (offset - chunk * CHUNK_SIZE) + 3
+				+ (field.length + 1) / 2;
+		for (int pos = 0; pos < field.length; pos++) {
+			if (field[pos] == Lights.LIGHT_CELL)
+				field[pos] = Lights.EMPTY_CELL;
+			if ((buffer.get(base + pos / 8) & 1 << pos % 8) != 0)
+				field[pos] = Lights.LIGHT_CELL;
+		}
+		return new Lights(dimension, field);
+	}
+
+	// unpack and check the cell codes of the record at offset
+	private byte[] readField(long index, long offset, int dimension)
+			throws IOException {
+		int chunk = (int) (offset / CHUNK_SIZE);
+		ByteBuffer buffer = chunks[chunk];
+		int base = (int) (offset - chunk * CHUNK_SIZE) + 3;
+		byte[] field = new byte[dimension * dimension];
+		for (int pos = 0; pos < field.length; pos += 2) {
+			int packed = buffer.get(base + pos / 2);
+			field[pos] = (byte) (packed >> 4 & 0xf);
+			if (pos + 1 < field.length)
+				field[pos + 1] = (byte) (packed & 0xf);
+		}
+		for (byte code : field) {
+			if (code > Lights.CONSTRAINED_CELL + 4)
+				throw corrupt(index);
+		}
+		return field;
+	}
+
+	/*
+	 * the offset of a record, looked up in the index and checked against
+	 * the file: the record must lie between the header and the start of the
+	 * next record, or the index for the last one.
+	 */
+	private long record(long index) throws IOException {
+		if (closed)
+			throw new IllegalStateException("closed");
+		if (index < 0 || index >= count)
+			throw new IndexOutOfBoundsException("Board " + index + " of "
+					+ count);
+		long offset = getLong(indexOffset + index * 8);
+		long end = index + 1 < count ? getLong(indexOffset + index * 8 + 8)
+				: indexOffset;
+		if (offset < HEADER_SIZE || end > indexOffset || offset + 3 > end)
+			throw corrupt(index);
+		int dimension = getShort(offset);
+		boolean withSolution = (getByte(offset + 2) & FLAG_SOLUTION) != 0;
+		if (dimension == 0 || dimension > LightsParser.MAX_DIMENSION
+				|| offset + recordSize(dimension, withSolution) > end)
+			throw corrupt(index);
+		return offset;
+	}
+
+	private IOException corrupt(long index) {
+		return new IOException("Corrupt record " + index + " in board file: "
+				+ file);
+	}
+
+	// absolute reads, valid since no value crosses the end of a chunk
+	private byte getByte(long offset) {
+		int chunk = (int) (offset / CHUNK_SIZE);
+		return chunks[chunk].get((int) (offset - chunk * CHUNK_SIZE));
+	}
+
+	private int getShort(long offset) {
+		int chunk = (int) (offset / CHUNK_SIZE);
+		return chunks[chunk].getShort((int) (offset - chunk * CHUNK_SIZE)) & 0xffff;
+	}
+
+	private int getInt(long offset) {
+		int chunk = (int) (offset / CHUNK_SIZE);
+		return chunks[chunk].getInt((int) (offset - chunk * CHUNK_SIZE));
+	}
+
+	private long getLong(long offset) {
+		int chunk = (int) (offset / CHUNK_SIZE);
+		return chunks[chunk].getLong((int) (offset - chunk * CHUNK_SIZE));
+	}
+
+	/**
+	 * release the file. The mapping itself is released by the garbage
+	 * collector. Later reads throw an {@link IllegalStateException}.
+	 */
+	public void close() {
+		closed = true;
+		for (int i = 0; i < chunks.length; i++)
+			chunks[i] = null;
+	}
+
+	public String toString() {
+		return "BoardFile[" + file + ", " + count + " boards]";
+	}
+
+	/**
+	 * convert a text file of board descriptions (see {@link LightsParser})
+	 * into a board file.
+	 *
+	 * @param text
+	 *            the file of descriptions, one per line
+	 * @param binary
+	 *            the board file to write
+	 * @return the number of boards converted
+	 * @throws IOException
+	 *             if reading or writing fails
+	 * @throws LightsFormatException
+	 *             if a description is malformed
+	 */
+	public static int fromText(Path text, Path binary) throws IOException,
+			LightsFormatException {
+		try (Reader in = Files.newBufferedReader(text,
+				StandardCharsets.US_ASCII);
+				BoardFileWriter out = new BoardFileWriter(binary)) {
+			LightsParser parser = new LightsParser(in);
+			while (parser.hasNext())
+				out.write(parser.next());
+			return out.getCount();
+		}
+	}
+
+	/**
+	 * convert a board file into a text file with one description per line.
+	 * Solutions are not part of the text format and are dropped.
+	 *
+	 * @param binary
+	 *            the board file to read
+	 * @param text
+	 *            the file of descriptions to write
+	 * @throws IOException
+	 *             if reading or writing fails
+	 */
+	public static void toText(Path binary, Path text) throws IOException {
+		try (BoardFile in = new BoardFile(binary);
+				BufferedWriter out = Files.newBufferedWriter(text,
+						StandardCharsets.US_ASCII)) {
+			for (long i = 0; i < in.size(); i++) {
+				in.getBoard(i).appendTo(out);
+				out.newLine();
+			}
+		}
+	}
+
+}
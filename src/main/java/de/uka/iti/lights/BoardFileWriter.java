@@ -0,0 +1,174 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * This class writes boards into a binary board file (see {@link BoardFile}
+ * for the format).
+ *
+ * <p>
+ * Boards are appended one after the other. The offsets of the records are
+ * kept in memory and written as index when the writer is closed; a file
+ * which has not been closed properly is not readable.
+ * </p>
+ */
+public class BoardFileWriter implements Closeable {
+
+	// the size of the write buffer
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final FileChannel channel;
+
+	// the buffer for records not yet written
+	private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+	// the position in the file at which the buffer will be written
+	private long position = BoardFile.HEADER_SIZE;
+
+	// the offsets of the records written so far
+	private long[] offsets = new long[1024];
+	private int count;
+
+	/**
+	 * create a new board file, replacing an existing one.
+	 *
+	 * @param file
+	 *            the file to write
+	 * @throws IOException
+	 *             if the file cannot be created
+	 */
+	public BoardFileWriter(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+	}
+
+	/**
+	 * get the number of boards written so far.
+	 *
+	 * @return a non-negative number
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * append a board without solution. Lights on the board are stored as
+	 * well.
+	 *
+	 * @param board
+	 *            the board to write
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	public void write(Lights board) throws IOException {
+		write(board, null);
+	}
+
+	/**
+	 * append a board together with a solution. Only the lights of the
+	 * solution are stored.
+	 *
+	 * @param board
+	 *            the board to write
+	 * @param solution
+	 *            a board of the same dimension whose lights are stored as
+	 *            solution bitmap, null for none
+	 * @throws IOException
+	 *             if writing fails
+	 * @throws IllegalArgumentException
+	 *             if the dimensions differ or exceed
+	 *             {@link LightsParser#MAX_DIMENSION}
+	 */
+	public void write(Lights board, Lights solution) throws IOException {
+		int dimension = board.getDimension();
+		int fields = dimension * dimension;
+		if (dimension > LightsParser.MAX_DIMENSION)
+			throw new IllegalArgumentException("Dimension too large: "
+					+ dimension);
+		if (solution != null && solution.getDimension() != dimension)
+			throw new IllegalArgumentException("Solution has dimension "
+					+ solution.getDimension() + " instead of " + dimension);
+
+		int size = BoardFile.recordSize(dimension, solution != null);
+		if (buffer.remaining() < size) {
+			flush();
+			if (buffer.capacity() < size)
+				buffer = ByteBuffer.allocate(size);
+		}
+
+		if (count == offsets.length)
+			offsets = Arrays.copyOf(offsets, count * 2);
+		offsets[count++] = position + buffer.position();
+
+		buffer.putShort((short) dimension);
+		buffer.put(solution != null ? BoardFile.FLAG_SOLUTION : 0);
+		for (int pos = 0; pos < fields; pos += 2) {
+			int high = board.getLinear(pos);
+			int low = pos + 1 < fields ? board.getLinear(pos + 1) : 0;
+			buffer.put((byte) (high << 4 | low));
+		}
+		if (solution != null) {
+			for (int pos = 0; pos < fields; pos += 8) {
+				int bits = 0;
+				for (int i = 0; i < 8 && pos + i < fields; i++) {
+					if (solution.getLinear(pos + i) == Lights.LIGHT_CELL)
+						bits |= 1 << i;
+				}
+				buffer.put((byte) bits);
+			}
+		}
+	}
+
+	/**
+	 * write the index and the header and close the file.
+	 *
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	public void close() throws IOException {
+		try {
+			flush();
+			long indexOffset = position;
+			for (int i = 0; i < count; i++) {
+				if (buffer.remaining() < 8)
+					flush();
+				buffer.putLong(offsets[i]);
+			}
+			flush();
+
+			ByteBuffer header = ByteBuffer.allocate(BoardFile.HEADER_SIZE);
+			header.putInt(BoardFile.MAGIC).putInt(BoardFile.VERSION)
+					.putLong(count).putLong(indexOffset).flip();
+			channel.position(0);
+			writeFully(header);
+		} finally {
+			channel.close();
+		}
+	}
+
+	// write the buffered records
+	private void flush() throws IOException {
+		buffer.flip();
+		channel.position(position);
+		position += buffer.remaining();
+		writeFully(buffer);
+		buffer.clear();
+	}
+
+	private void writeFully(ByteBuffer bytes) throws IOException {
+		while (bytes.hasRemaining())
+			channel.write(bytes);
+	}
+
+}
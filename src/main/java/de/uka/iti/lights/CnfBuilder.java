@@ -0,0 +1,207 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.sat4j.core.VecInt;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.IVecInt;
+
+/**
+ * This class forwards clauses and cardinality constraints to a SAT4J
+ * {@link ISolver} and counts them.
+ *
+ * <p>
+ * Auxiliary variables are allocated as internal variables of the solver (see
+ * {@link ISolver#nextFreeVarId(boolean)}). They are hence not part of
+ * {@link ISolver#model()}, which only covers the variables declared with
+ * {@link ISolver#newVar(int)}.
+ * </p>
+ *
+ * <p>
+ * Constraints and auxiliary variables are additionally counted per kind. The
+ * kind is a free-form name set by {@link #setKind(String)} before the
+ * constraints of that kind are added.
+ * </p>
+ *
+ * @see AtMostOneEncoding
+ */
+public class CnfBuilder {
+
+	// the solver which receives the constraints
+	private final ISolver solver;
+
+	// number of auxiliary variables allocated so far
+	private int auxiliaryCount;
+
+	// number of clauses added so far
+	private int clauseCount;
+
+	// number of native cardinality constraints added so far
+	private int cardinalityCount;
+
+	// the kind of the constraints currently added
+	private String kind = "other";
+
+	// number of clauses and cardinality constraints per kind
+	private final Map<String, Integer> constraintsByKind = new LinkedHashMap<String, Integer>();
+
+	// number of auxiliary variables per kind
+	private final Map<String, Integer> variablesByKind = new LinkedHashMap<String, Integer>();
+
+	/**
+	 * create a new builder adding constraints to a solver.
+	 *
+	 * @param solver
+	 *            the solver to fill, not null
+	 */
+	public CnfBuilder(ISolver solver) {
+		this.solver = solver;
+	}
+
+	/**
+	 * get the solver which receives the constraints.
+	 *
+	 * @return the solver passed to the constructor
+	 */
+	public ISolver getSolver() {
+		return solver;
+	}
+
+	/**
+	 * set the kind of the constraints and variables added from now on.
+	 *
+	 * @param kind
+	 *            a name for the statistics, not null
+	 */
+	public void setKind(String kind) {
+		this.kind = kind;
+	}
+
+	/**
+	 * allocate a fresh auxiliary variable.
+	 *
+	 * @return a variable index which has not been used before
+	 */
+	public int newVariable() {
+		auxiliaryCount++;
+		variablesByKind.merge(kind, 1, Integer::sum);
+		return solver.nextFreeVarId(true);
+	}
+
+	/**
+	 * add a clause, i.e. the disjunction of the given literals.
+	 *
+	 * @param literals
+	 *            the literals of the clause in DIMACS notation
+	 * @throws ContradictionException
+	 *             if the clause makes the clause set trivially unsatisfiable
+	 */
+	public void addClause(int... literals) throws ContradictionException {
+		addClause(new VecInt(literals));
+	}
+
+	/**
+	 * add a clause, i.e. the disjunction of the given literals.
+	 *
+	 * @param clause
+	 *            the literals of the clause in DIMACS notation
+	 * @throws ContradictionException
+	 *             if the clause makes the clause set trivially unsatisfiable
+	 */
+	public void addClause(IVecInt clause) throws ContradictionException {
+		clauseCount++;
+		constraintsByKind.merge(kind, 1, Integer::sum);
+		solver.addClause(clause);
+	}
+
+	/**
+	 * add a native cardinality constraint: at most k of the literals are true.
+	 *
+	 * @param literals
+	 *            the literals in DIMACS notation, without duplicates
+	 * @param k
+	 *            the maximum number of true literals
+	 * @throws ContradictionException
+	 *             if the constraint makes the clause set trivially
+	 *             unsatisfiable
+	 */
+	public void addAtMost(int[] literals, int k) throws ContradictionException {
+		cardinalityCount++;
+		constraintsByKind.merge(kind, 1, Integer::sum);
+		solver.addAtMost(new VecInt(literals), k);
+	}
+
+	/**
+	 * add a native cardinality constraint: exactly k of the literals are true.
+	 *
+	 * @param literals
+	 *            the literals in DIMACS notation, without duplicates
+	 * @param k
+	 *            the number of true literals
+	 * @throws ContradictionException
+	 *             if the constraint makes the clause set trivially
+	 *             unsatisfiable
+	 */
+	public void addExactly(int[] literals, int k) throws ContradictionException {
+		cardinalityCount++;
+		constraintsByKind.merge(kind, 1, Integer::sum);
+		solver.addExactly(new VecInt(literals), k);
+	}
+
+	/**
+	 * get the number of auxiliary variables allocated by
+	 * {@link #newVariable()}.
+	 *
+	 * @return a non-negative integer
+	 */
+	public int getAuxiliaryCount() {
+		return auxiliaryCount;
+	}
+
+	/**
+	 * get the number of clauses added so far.
+	 *
+	 * @return a non-negative integer
+	 */
+	public int getClauseCount() {
+		return clauseCount;
+	}
+
+	/**
+	 * get the number of native cardinality constraints added so far.
+	 *
+	 * @return a non-negative integer
+	 */
+	public int getCardinalityCount() {
+		return cardinalityCount;
+	}
+
+	/**
+	 * get the number of clauses and native cardinality constraints per kind.
+	 *
+	 * @return an unmodifiable map from kinds to counts, in the order the kinds
+	 *         were first used
+	 */
+	public Map<String, Integer> getConstraintsByKind() {
+		return Collections.unmodifiableMap(constraintsByKind);
+	}
+
+	/**
+	 * get the number of auxiliary variables per kind.
+	 *
+	 * @return an unmodifiable map from kinds to counts, in the order the kinds
+	 *         were first used
+	 */
+	public Map<String, Integer> getVariablesByKind() {
+		return Collections.unmodifiableMap(variablesByKind);
+	}
+
+}
@@ -0,0 +1,357 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.sat4j.specs.TimeoutException;
+
+/**
+ * A solver which splits a board into independent components and solves each
+ * of them with its own SAT4J instance.
+ *
+ * <p>
+ * The board is presolved first (see {@link Presolver}), then the open fields
+ * are split into {@link Components}. Every component is encoded on its own
+ * (see {@link Solution}), so the SAT calls are small, and the first
+ * solutions of the components are searched in parallel if there is enough
+ * work. A solution of the board consists of the decided lights and one
+ * solution per component.
+ * </p>
+ *
+ * <p>
+ * The solutions of the board are enumerated like the numbers of an
+ * odometer: the last component changes fastest, and the solutions of a
+ * component are searched only when they are needed and remembered
+ * afterwards. {@link #countSolutions(long)} and {@link #isUnique(Lights)}
+ * multiply the numbers of solutions of the components instead of
+ * enumerating their combinations, which keeps them tractable for large
+ * boards with many components.
+ * </p>
+ */
+public class ComponentSolver implements LightsSolver {
+
+	/**
+	 * The number of open fields from which the components are solved in
+	 * parallel. Smaller boards are solved faster in the calling thread.
+	 */
+	public static final int PARALLEL_MIN_FIELDS = 400;
+
+	// the board to place the solutions on
+	private final Lights lights;
+
+	// the decided fields and the components, set by the first search
+	private Presolver presolver;
+	private Components components;
+
+	// one solution per component on its own board
+	private Solution[] solutions;
+	private Lights[] boards;
+
+	// the lights of the solutions found per component
+	private List<List<int[]>> found;
+
+	// whether a component has no further solutions
+	private boolean[] exhausted;
+
+	// whether the search of a component has been started
+	private boolean[] started;
+
+	// the solution of every component currently placed on the board
+	private int[] index;
+
+	// the state of the enumeration
+	private boolean placed;
+	private boolean done;
+	private long solutionLimit = Long.MAX_VALUE;
+	private long solutionCount;
+
+	// the budget, passed on to the components
+	private long timeoutMs;
+	private volatile boolean cancelled;
+
+	/**
+	 * create a new solver for a board.
+	 *
+	 * @param lights
+	 *            the {@link Lights} object which contains the board with all
+	 *            walls set up. Lights on it are ignored and replaced by the
+	 *            solutions found.
+	 */
+	public ComponentSolver(Lights lights) {
+		this.lights = lights;
+	}
+
+	public void setSolutionLimit(long limit) {
+		if (limit <= 0)
+			throw new IllegalArgumentException("Limit non-positive: " + limit);
+		this.solutionLimit = limit;
+	}
+
+	public long getSolutionCount() {
+		return solutionCount;
+	}
+
+	public void setTimeoutMs(long timeoutMs) {
+		if (timeoutMs < 0)
+			throw new IllegalArgumentException("Timeout negative: " + timeoutMs);
+		this.timeoutMs = timeoutMs;
+		if (solutions != null) {
+			for (Solution solution : solutions)
+				solution.setTimeoutMs(timeoutMs);
+		}
+	}
+
+	public void cancel() {
+		cancelled = true;
+		Solution[] current = solutions;
+		if (current != null) {
+			for (Solution solution : current)
+				solution.cancel();
+		}
+	}
+
+	/**
+	 * get the number of independent components of the board.
+	 *
+	 * @return a non-negative number, valid after the first search; 0 if the
+	 *         presolver decided every field or found a contradiction
+	 */
+	public int getComponentCount() {
+		return components == null ? 0 : components.getCount();
+	}
+
+	public SolveStatus trySolve() {
+		if (placed)
+			return tryNewSolution();
+		if (cancelled)
+			return SolveStatus.UNKNOWN;
+		if (presolver == null && !initialize()) {
+			done = true;
+			return SolveStatus.UNSAT;
+		}
+		if (done)
+			return SolveStatus.UNSAT;
+
+		// the first solution of every component
+		SolveStatus status = extendAll(1);
+		if (status != SolveStatus.SAT) {
+			done = status == SolveStatus.UNSAT;
+			return status;
+		}
+		placed = true;
+		index = new int[solutions.length];
+		solutionCount++;
+		place();
+		return SolveStatus.SAT;
+	}
+
+	public SolveStatus tryNewSolution() {
+		if (!placed)
+			return trySolve();
+		if (done || solutionCount >= solutionLimit)
+			return SolveStatus.UNSAT;
+
+		for (int c = index.length - 1; c >= 0; c--) {
+			if (index[c] + 1 == found.get(c).size() && !exhausted[c]) {
+				// the state is unchanged if the search runs out of time
+				SolveStatus status = extend(c);
+				if (status == SolveStatus.UNKNOWN)
+					return status;
+			}
+			if (index[c] + 1 < found.get(c).size()) {
+				index[c]++;
+				Arrays.fill(index, c + 1, index.length, 0);
+				solutionCount++;
+				place();
+				return SolveStatus.SAT;
+			}
+		}
+		done = true;
+		return SolveStatus.UNSAT;
+	}
+
+	/**
+	 * count the solutions of the board, up to a limit. The solutions of the
+	 * components are searched up to the limit each, their numbers are
+	 * multiplied. The board is not modified.
+	 *
+	 * @param limit
+	 *            a positive number
+	 * @return the number of solutions, or limit if there are at least as
+	 *         many
+	 * @throws TimeoutException
+	 *             if a SAT call runs out of time or is cancelled
+	 */
+	public long countSolutions(long limit) throws TimeoutException {
+		if (limit <= 0)
+			throw new IllegalArgumentException("Limit non-positive: " + limit);
+		if (presolver == null && !initialize())
+			done = true;
+		if (done && !placed)
+			return 0;
+
+		SolveStatus status = extendAll(1);
+		check(status);
+		if (status == SolveStatus.UNSAT)
+			return 0;
+		long product = 1;
+		for (int c = 0; c < found.size(); c++) {
+			// with this many solutions, the product reaches the limit
+			long needed = (limit - 1) / product + 1;
+			check(search(c, needed));
+			if (found.get(c).size() >= needed)
+				return limit;
+			product *= found.get(c).size();
+		}
+		return product;
+	}
+
+	/**
+	 * check whether a board has exactly one solution. The board is split
+	 * into components, and every component is checked for a second solution,
+	 * in parallel if there is enough work. The given board is not modified.
+	 *
+	 * @param lights
+	 *            the board to check, lights on it are ignored
+	 * @return the verdict together with up to two solutions; the second one
+	 *         differs from the first in one component
+	 * @throws TimeoutException
+	 *             if the SAT solver times out
+	 */
+	public static Uniqueness isUnique(Lights lights) throws TimeoutException {
+		Lights board = lights.clone();
+		board.removeAllLights();
+		ComponentSolver solver = new ComponentSolver(board);
+		if (!solver.initialize())
+			return new Uniqueness(Uniqueness.Verdict.NONE, null, null);
+
+		SolveStatus status = solver.extendAll(2);
+		check(status);
+		if (status == SolveStatus.UNSAT)
+			return new Uniqueness(Uniqueness.Verdict.NONE, null, null);
+
+		solver.index = new int[solver.found.size()];
+		solver.place();
+		Lights first = board.clone();
+		for (int c = 0; c < solver.found.size(); c++) {
+			if (solver.found.get(c).size() > 1) {
+				solver.index[c] = 1;
+				solver.place();
+				return new Uniqueness(Uniqueness.Verdict.MULTIPLE, first, board);
+			}
+		}
+		return new Uniqueness(Uniqueness.Verdict.UNIQUE, first, null);
+	}
+
+	// report running out of budget as an exception
+	private static void check(SolveStatus status) throws TimeoutException {
+		if (status == SolveStatus.UNKNOWN)
+			throw new TimeoutException("Search of a component timed out");
+	}
+
+	/*
+	 * presolve the board and set up the components. Returns false if the
+	 * board has no solution.
+	 */
+	private boolean initialize() {
+		presolver = new Presolver(lights);
+		if (!presolver.presolve())
+			return false;
+		components = new Components(lights, presolver);
+
+		int count = components.getCount();
+		solutions = new Solution[count];
+		boards = new Lights[count];
+		found = new ArrayList<List<int[]>>(count);
+		exhausted = new boolean[count];
+		started = new boolean[count];
+		for (int c = 0; c < count; c++) {
+			boards[c] = lights.clone();
+			boards[c].removeAllLights();
+			solutions[c] = new Solution(boards[c], presolver, components, c);
+			solutions[c].setTimeoutMs(timeoutMs);
+			if (cancelled)
+				solutions[c].cancel();
+			found.add(new ArrayList<int[]>());
+		}
+		return true;
+	}
+
+	/*
+	 * search every component for up to count solutions, in parallel if
+	 * worthwhile. Returns UNSAT if a component has no solution at all.
+	 */
+	private SolveStatus extendAll(long count) {
+		boolean parallel = presolver.getOpenCount() >= PARALLEL_MIN_FIELDS
+				&& solutions.length > 1;
+		IntStream range = IntStream.range(0, solutions.length);
+		if (parallel)
+			range = range.parallel();
+		SolveStatus[] status = new SolveStatus[solutions.length];
+		range.forEach(c -> status[c] = search(c, count));
+
+		SolveStatus result = SolveStatus.SAT;
+		for (int c = 0; c < status.length; c++) {
+			if (found.get(c).isEmpty() && status[c] == SolveStatus.UNSAT)
+				return SolveStatus.UNSAT;
+			if (status[c] == SolveStatus.UNKNOWN)
+				result = SolveStatus.UNKNOWN;
+		}
+		return result;
+	}
+
+	/*
+	 * search a component until it has count solutions or no further ones.
+	 * Returns UNKNOWN if the search ran out of budget.
+	 */
+	private SolveStatus search(int c, long count) {
+		SolveStatus status = SolveStatus.SAT;
+		while (found.get(c).size() < count && !exhausted[c]
+				&& status != SolveStatus.UNKNOWN)
+			status = extend(c);
+		return status == SolveStatus.UNKNOWN ? status
+				: found.get(c).isEmpty() ? SolveStatus.UNSAT : SolveStatus.SAT;
+	}
+
+	/*
+	 * search the next solution of a component and remember its lights.
+	 */
+	private SolveStatus extend(int c) {
+		Solution solution = solutions[c];
+		SolveStatus status = started[c] ? solution.tryNewSolution()
+				: solution.trySolve();
+		started[c] = true;
+		if (status == SolveStatus.SAT) {
+			int[] fields = components.getFields(c);
+			int count = 0;
+			int dimension = lights.getDimension();
+			for (int pos : fields) {
+				if (boards[c].isLight(pos / dimension, pos % dimension))
+					fields[count++] = pos;
+			}
+			found.get(c).add(Arrays.copyOf(fields, count));
+		} else if (status == SolveStatus.UNSAT) {
+			exhausted[c] = true;
+		}
+		return status;
+	}
+
+	// put the decided lights and the current solution of every component on
+	// the board
+	private void place() {
+		presolver.applyTo(lights);
+		int dimension = lights.getDimension();
+		for (int c = 0; c < index.length; c++) {
+			for (int pos : found.get(c).get(index[c]))
+				lights.setLight(pos / dimension, pos % dimension);
+		}
+	}
+
+}
@@ -0,0 +1,224 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import java.util.Arrays;
+
+/**
+ * This class splits the open fields of a presolved {@link Lights} board into
+ * independent components.
+ *
+ * <p>
+ * Two open fields (see {@link Presolver#OPEN}) depend on each other if
+ * </p>
+ * <ul>
+ * <li>they lie in the same segment without decided light (at most one of
+ * them is a light),</li>
+ * <li>they can both illuminate the same unlit field, or</li>
+ * <li>they are both neighbours of the same numbered wall.</li>
+ * </ul>
+ * <p>
+ * The components are the classes of the transitive closure of this
+ * relation. Every constraint which is left after presolving mentions the
+ * fields of one component only, so the solutions of the board are exactly
+ * the combinations of one solution per component together with the decided
+ * lights. The number of solutions is the product of the numbers per
+ * component.
+ * </p>
+ *
+ * <p>
+ * Components are numbered in the row-major order of their first field.
+ * </p>
+ *
+ * @see ComponentSolver
+ */
+public class Components {
+
+	// the component of every field, -1 for decided fields
+	private final int[] component;
+
+	// the index of every open field within its component
+	private final int[] index;
+
+	// the fields of every component in row-major order
+	private final int[][] fields;
+
+	/**
+	 * split a presolved board into components.
+	 *
+	 * @param lights
+	 *            the board
+	 * @param presolver
+	 *            a presolver for the board after a successful
+	 *            {@link Presolver#presolve()}
+	 */
+	public Components(Lights lights, Presolver presolver) {
+		int dimension = lights.getDimension();
+		int size = dimension * dimension;
+		SegmentIndex segments = presolver.getSegments();
+
+		// union-find over the fields, only open fields are ever joined
+		int[] parent = new int[size];
+		for (int pos = 0; pos < size; pos++)
+			parent[pos] = pos;
+
+		// the first open field of every segment, -1 if there is none
+		int[] first = new int[segments.getSegmentCount()];
+		for (int seg = 0; seg < first.length; seg++) {
+			first[seg] = -1;
+			int stride = segments.getSegmentStride(seg);
+			int pos = segments.getSegmentStart(seg);
+			for (int i = 0; i < segments.getSegmentLength(seg); i++, pos += stride) {
+				if (presolver.getState(pos) != Presolver.OPEN)
+					continue;
+				if (first[seg] == -1)
+					first[seg] = pos;
+				else
+					union(parent, first[seg], pos);
+			}
+		}
+
+		for (int pos = 0; pos < size; pos++) {
+			int rowSeg = segments.getRowSegment(pos);
+			if (rowSeg != -1) {
+				// the fields which can illuminate an unlit field
+				int rowFirst = first[rowSeg];
+				int colFirst = first[segments.getColumnSegment(pos)];
+				if (!presolver.isLit(pos) && rowFirst != -1 && colFirst != -1)
+					union(parent, rowFirst, colFirst);
+			} else if (lights.isConstrainedBlock(pos / dimension, pos
+					% dimension)) {
+				joinNeighbours(parent, presolver, dimension, pos);
+			}
+		}
+
+		component = new int[size];
+		int count = 0;
+		int[] sizes = new int[size];
+		for (int pos = 0; pos < size; pos++) {
+			if (presolver.getState(pos) != Presolver.OPEN) {
+				component[pos] = -1;
+				continue;
+			}
+			// the root is the smallest field of its class, numbered first
+			int root = find(parent, pos);
+			component[pos] = root == pos ? count++ : component[root];
+			sizes[component[pos]]++;
+		}
+
+		fields = new int[count][];
+		for (int c = 0; c < count; c++)
+			fields[c] = new int[sizes[c]];
+		Arrays.fill(sizes, 0, count, 0);
+		index = new int[size];
+		for (int pos = 0; pos < size; pos++) {
+			int c = component[pos];
+			if (c == -1) {
+				index[pos] = -1;
+			} else {
+				index[pos] = sizes[c];
+				fields[c][sizes[c]++] = pos;
+			}
+		}
+	}
+
+	// join the open neighbours of the numbered wall at pos
+	private static void joinNeighbours(int[] parent, Presolver presolver,
+			int dimension, int pos) {
+		int row = pos / dimension;
+		int col = pos % dimension;
+		int[] neighbours = { row > 0 ? pos - dimension : -1,
+				row < dimension - 1 ? pos + dimension : -1,
+				col > 0 ? pos - 1 : -1, col < dimension - 1 ? pos + 1 : -1 };
+		int open = -1;
+		for (int neighbour : neighbours) {
+			if (neighbour == -1
+					|| presolver.getState(neighbour) != Presolver.OPEN)
+				continue;
+			if (open == -1)
+				open = neighbour;
+			else
+				union(parent, open, neighbour);
+		}
+	}
+
+	private static int find(int[] parent, int pos) {
+		while (parent[pos] != pos) {
+			// path halving
+			parent[pos] = parent[parent[pos]];
+			pos = parent[pos];
+		}
+		return pos;
+	}
+
+	private static void union(int[] parent, int a, int b) {
+		a = find(parent, a);
+		b = find(parent, b);
+		// the smaller position becomes the root
+		if (a < b)
+			parent[b] = a;
+		else if (b < a)
+			parent[a] = b;
+	}
+
+	/**
+	 * get the number of components.
+	 *
+	 * @return 0 if every field has been decided, a positive number otherwise
+	 */
+	public int getCount() {
+		return fields.length;
+	}
+
+	/**
+	 * get the component of a field.
+	 *
+	 * @param pos
+	 *            the linear index <code>row * dimension + col</code> of the
+	 *            field
+	 * @return the number of the component (0 .. getCount()-1), -1 if the
+	 *         field has been decided
+	 */
+	public int getComponent(int pos) {
+		return component[pos];
+	}
+
+	/**
+	 * get the index of a field within its component.
+	 *
+	 * @param pos
+	 *            the linear index of the field
+	 * @return the index of the field in {@link #getFields(int)} of its
+	 *         component, -1 if the field has been decided
+	 */
+	public int getIndex(int pos) {
+		return index[pos];
+	}
+
+	/**
+	 * get the number of open fields in a component.
+	 *
+	 * @param c
+	 *            the number of the component
+	 * @return a positive number
+	 */
+	public int getSize(int c) {
+		return fields[c].length;
+	}
+
+	/**
+	 * get the open fields of a component.
+	 *
+	 * @param c
+	 *            the number of the component
+	 * @return a new array of the linear indices of the fields in increasing
+	 *         order
+	 */
+	public int[] getFields(int c) {
+		return fields[c].clone();
+	}
+
+}
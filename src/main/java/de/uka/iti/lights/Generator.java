@@ -0,0 +1,370 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class generates random boards which have exactly one solution.
+ *
+ * <p>
+ * A board is generated in three steps:
+ * </p>
+ * <ol>
+ * <li>Every field becomes a block with the wall density as probability.</li>
+ * <li>Lights are placed on the unlit empty fields in random order, which
+ * gives a valid placement. Every block is numbered with its lit neighbours,
+ * so the placement is a solution of the board. If it is not the only one,
+ * the layout is dropped and the next one is tried.</li>
+ * <li>The numbers are removed in random order. A number stays if the board
+ * has a second solution without it.</li>
+ * </ol>
+ *
+ * <p>
+ * The uniqueness checks search for at most two solutions with the solver of
+ * {@link LightsSolver#create(Lights)}, i.e. without SAT solver for boards of
+ * the usual sizes. On 10x10 boards a check takes a few ten microseconds,
+ * so a single thread generates one to two thousand boards per second.
+ * </p>
+ *
+ * <p>
+ * The board with index <i>i</i> depends only on the seed, the dimension, the
+ * wall density and <i>i</i>, so the output is the same for every number of
+ * threads. Boards are generated in parallel by a fixed number of worker
+ * threads, in chunks of {@link #CHUNK_SIZE} boards, and written in index
+ * order.
+ * </p>
+ *
+ * <p>
+ * Usage:
+ * <code>Solution --generate [--dimension=N] [--count=N] [--seed=N] [--walls=P] [--threads=N]</code>.
+ * The descriptions (see {@link Lights#toString()}) are written to stdout, one
+ * per line. The number of threads defaults to the number of available
+ * processors.
+ * </p>
+ */
+public class Generator {
+
+	/**
+	 * The default probability of a field to be a block.
+	 */
+	public static final double DEFAULT_WALL_DENSITY = 0.3;
+
+	/**
+	 * The number of wall layouts tried for a board before giving up.
+	 */
+	public static final int MAX_ATTEMPTS = 1000;
+
+	/**
+	 * The number of boards generated by one task of a worker thread.
+	 */
+	public static final int CHUNK_SIZE = 64;
+
+	/**
+	 * The number of chunks per worker thread which may be generated ahead of
+	 * the output.
+	 */
+	public static final int WINDOW_PER_THREAD = 4;
+
+	// worker threads must not keep the JVM alive
+	private static final ThreadFactory DAEMON_THREADS = runnable -> {
+		Thread thread = new Thread(runnable, "lights-generator");
+		thread.setDaemon(true);
+		return thread;
+	};
+
+	// the size of the boards
+	private final int dimension;
+
+	// the seed of the whole sequence of boards
+	private final long seed;
+
+	// the probability of a field to be a block
+	private double wallDensity = DEFAULT_WALL_DENSITY;
+
+	/**
+	 * create a new generator.
+	 *
+	 * @param dimension
+	 *            the dimension of the boards, positive
+	 * @param seed
+	 *            the seed of the sequence of boards
+	 */
+	public Generator(int dimension, long seed) {
+		if (dimension <= 0)
+			throw new IllegalArgumentException("Dimension non-positive: "
+					+ dimension);
+		this.dimension = dimension;
+		this.seed = seed;
+	}
+
+	/**
+	 * set the probability of a field to be a block.
+	 *
+	 * @param wallDensity
+	 *            a number between 0 and 1, {@link #DEFAULT_WALL_DENSITY} by
+	 *            default
+	 */
+	public void setWallDensity(double wallDensity) {
+		if (!(wallDensity >= 0 && wallDensity <= 1))
+			throw new IllegalArgumentException("Wall density not in [0,1]: "
+					+ wallDensity);
+		this.wallDensity = wallDensity;
+	}
+
+	/**
+	 * generate the board with a given index in the sequence of this
+	 * generator.
+	 *
+	 * @param index
+	 *            the index of the board, non-negative
+	 * @return a board without lights which has exactly one solution
+	 * @throws IllegalStateException
+	 *             if no layout with a unique solution has been found in
+	 *             {@link #MAX_ATTEMPTS} attempts, e.g. for a wall density
+	 *             near 0
+	 */
+	public Lights generate(long index) {
+		SplittableRandom random = new SplittableRandom(mix(seed + mix(index)));
+		for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+			Lights lights = layout(random);
+			if (isUnique(lights)) {
+				removeNumbers(lights, random);
+				return lights;
+			}
+		}
+		throw new IllegalStateException("No unique board found for index "
+				+ index);
+	}
+
+	/**
+	 * generate a number of boards and write their descriptions, one per
+	 * line.
+	 *
+	 * @param first
+	 *            the index of the first board
+	 * @param count
+	 *            the number of boards
+	 * @param threads
+	 *            the number of worker threads, positive
+	 * @param out
+	 *            the destination of the descriptions, flushed at the end
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	public void generate(long first, long count, int threads, Writer out)
+			throws IOException {
+		if (threads <= 0)
+			throw new IllegalArgumentException("Threads non-positive: "
+					+ threads);
+		StringBuilder sb = new StringBuilder();
+		ExecutorService executor = threads == 1 ? null : Executors
+				.newFixedThreadPool(threads, DAEMON_THREADS);
+		ArrayDeque<Future<Lights[]>> pending = new ArrayDeque<Future<Lights[]>>();
+		int window = threads * WINDOW_PER_THREAD;
+
+		try {
+			long end = first + count;
+			for (long start = first; start < end; start += CHUNK_SIZE) {
+				final long from = start;
+				final int size = (int) Math.min(CHUNK_SIZE, end - start);
+				if (executor == null) {
+					write(chunk(from, size), out, sb);
+				} else {
+					pending.add(executor.submit(() -> chunk(from, size)));
+					while (pending.size() >= window)
+						write(await(pending.poll()), out, sb);
+				}
+			}
+
+			while (!pending.isEmpty())
+				write(await(pending.poll()), out, sb);
+		} finally {
+			if (executor != null)
+				executor.shutdownNow();
+		}
+		out.flush();
+	}
+
+	// generate the boards from index from on
+	private Lights[] chunk(long from, int size) {
+		Lights[] boards = new Lights[size];
+		for (int i = 0; i < size; i++)
+			boards[i] = generate(from + i);
+		return boards;
+	}
+
+	// wait for the boards of a worker thread
+	private static Lights[] await(Future<Lights[]> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Generation interrupted");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private static void write(Lights[] boards, Writer out, StringBuilder sb)
+			throws IOException {
+		sb.setLength(0);
+		for (Lights lights : boards) {
+			lights.appendTo(sb);
+			sb.append('\n');
+		}
+		out.append(sb);
+	}
+
+	/*
+	 * random blocks, a random valid placement of lights and all blocks
+	 * numbered after it. The lights are removed again.
+	 */
+	private Lights layout(SplittableRandom random) {
+		Lights lights = new Lights(dimension);
+		int size = dimension * dimension;
+		int[] free = new int[size];
+		int freeCount = 0;
+		int[] blocks = new int[size];
+		int blockCount = 0;
+		for (int pos = 0; pos < size; pos++) {
+			if (random.nextDouble() < wallDensity) {
+				lights.setBlock(pos / dimension, pos % dimension);
+				blocks[blockCount++] = pos;
+			} else {
+				free[freeCount++] = pos;
+			}
+		}
+
+		// the index answers the lit queries in constant time
+		SegmentIndex segments = lights.segments();
+		shuffle(free, freeCount, random);
+		for (int i = 0; i < freeCount; i++) {
+			if (!segments.isLit(free[i])) {
+				lights.setLight(free[i] / dimension, free[i] % dimension);
+				segments.setLight(free[i]);
+			}
+		}
+
+		for (int i = 0; i < blockCount; i++) {
+			int row = blocks[i] / dimension;
+			int col = blocks[i] % dimension;
+			int number = lights.getLitNeighbours(row, col);
+			lights.clear(row, col);
+			lights.setBlockConstraint(row, col, number);
+		}
+		lights.removeAllLights();
+		return lights;
+	}
+
+	/*
+	 * remove the numbers in random order as long as the board stays unique.
+	 * Removing a number keeps the solution valid, so only a second solution
+	 * can appear.
+	 */
+	private void removeNumbers(Lights lights, SplittableRandom random) {
+		int size = dimension * dimension;
+		int[] numbered = new int[size];
+		int count = 0;
+		for (int pos = 0; pos < size; pos++) {
+			if (lights.isConstrainedBlock(pos / dimension, pos % dimension))
+				numbered[count++] = pos;
+		}
+
+		shuffle(numbered, count, random);
+		for (int i = 0; i < count; i++) {
+			int row = numbered[i] / dimension;
+			int col = numbered[i] % dimension;
+			int number = lights.getBlockConstraint(row, col);
+			lights.clear(row, col);
+			lights.setBlock(row, col);
+			if (!isUnique(lights)) {
+				lights.clear(row, col);
+				lights.setBlockConstraint(row, col, number);
+			}
+		}
+	}
+
+	// whether a board has exactly one solution; the board is not modified
+	private static boolean isUnique(Lights lights) {
+		LightsSolver solver = LightsSolver.create(lights.clone());
+		solver.setSolutionLimit(2);
+		if (solver.trySolve() == SolveStatus.SAT)
+			solver.tryNewSolution();
+		return solver.getSolutionCount() == 1;
+	}
+
+	// Fisher-Yates shuffle of the first count elements
+	private static void shuffle(int[] array, int count, SplittableRandom random) {
+		for (int i = count - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = array[i];
+			array[i] = array[j];
+			array[j] = swap;
+		}
+	}
+
+	// the finalizer of SplitMix64, spreads neighbouring seeds
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * run the generator from the command line.
+	 *
+	 * @param args
+	 *            options, see class comment
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	public static void main(String[] args) throws IOException {
+		int dimension = 10;
+		long count = 1;
+		long seed = 0;
+		double walls = DEFAULT_WALL_DENSITY;
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		for (String arg : args) {
+			if (arg.startsWith("--dimension=")) {
+				dimension = Integer.parseInt(arg.substring(12));
+			} else if (arg.startsWith("--count=")) {
+				count = Long.parseLong(arg.substring(8));
+			} else if (arg.startsWith("--seed=")) {
+				seed = Long.parseLong(arg.substring(7));
+			} else if (arg.startsWith("--walls=")) {
+				walls = Double.parseDouble(arg.substring(8));
+			} else if (arg.startsWith("--threads=")) {
+				threads = Integer.parseInt(arg.substring(10));
+			} else {
+				System.err.println("Usage: Solution --generate [--dimension=N] [--count=N] [--seed=N] [--walls=P] [--threads=N]");
+				System.exit(2);
+			}
+		}
+
+		Generator generator = new Generator(dimension, seed);
+		generator.setWallDensity(walls);
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out,
+				StandardCharsets.US_ASCII));
+		generator.generate(0, count, threads, out);
+	}
+
+}
@@ -0,0 +1,472 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import java.util.Arrays;
+
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.TimeoutException;
+
+/**
+ * A solver for a board which is edited one field at a time, e.g. in a puzzle
+ * editor.
+ *
+ * <p>
+ * A {@link Solution} encodes the segments of the board, so changing a block
+ * changes the encoding of its whole row and column. This class keeps one
+ * SAT4J solver alive instead and uses an encoding in which the constraints
+ * of a field depend on the type of this field only: empty, block or
+ * numbered block. Besides the variable <i>pos</i>+1 for a light on field
+ * <i>pos</i>, every field has four auxiliary "ray" variables, one per
+ * direction, which are true iff there is a light on the field or beyond it
+ * in that direction without a block in between:
+ * </p>
+ * <ul>
+ * <li>An empty field continues the rays of its neighbours:
+ * E(<i>pos</i>) &lt;-&gt; light(<i>pos</i>) | E(<i>pos</i>+1), the same for
+ * the other directions. It is lit: E | W | N | S. A light on it sees no
+ * light towards east and south: light(<i>pos</i>) -&gt; !E(<i>pos</i>+1) &amp;
+ * !S(<i>pos</i>+dimension).</li>
+ * <li>A block holds no light and stops all rays.</li>
+ * <li>A numbered block additionally has exactly its number of lights among
+ * its neighbours.</li>
+ * </ul>
+ *
+ * <p>
+ * The constraints of every type of every field are guarded by a selector
+ * variable: each clause contains the negated selector. The selectors of the
+ * current types are passed as assumptions to every SAT call, all other
+ * groups are switched off. A group is encoded the first time its field takes
+ * the type and kept afterwards, so an edit encodes at most one small group
+ * and toggling a field back costs nothing. Clauses learnt by the solver stay
+ * valid for every board, since the clause set only grows. The fields decided
+ * by the {@link Presolver} are passed as further assumptions.
+ * </p>
+ *
+ * <p>
+ * Uniqueness checks exclude the first solution by a clause guarded by a
+ * selector of its own, which is switched off for good afterwards. Like the
+ * groups of former types, the clause of up to <i>dimension</i>^2 literals and
+ * its selector are kept, so every check makes the solver grow. After
+ * {@link #MAX_RETIRED} checks the solver is therefore rebuilt from the
+ * current board, which drops the retired clauses together with the unused
+ * groups and the learnt clauses.
+ * </p>
+ *
+ * @see Solution
+ */
+public class IncrementalSolution {
+
+	/**
+	 * The number of uniqueness checks after which the solver is rebuilt.
+	 */
+	public static final int MAX_RETIRED = 256;
+
+	// the types of a field: empty, block, numbered block 0..4
+	private static final int FREE = 0;
+	private static final int BLOCK = 1;
+	private static final int NUMBERED = 2;
+	private static final int TYPES = 7;
+
+	// the directions of the rays
+	private static final int EAST = 0;
+	private static final int WEST = 1;
+	private static final int SOUTH = 2;
+	private static final int NORTH = 3;
+
+	// the board, edited by the caller
+	private final Lights lights;
+
+	private final int dimension;
+
+	// the number of fields
+	private final int size;
+
+	// replaced by rebuild()
+	private ISolver solver;
+
+	private CnfBuilder cnf;
+
+	// the current type of every field
+	private final int[] type;
+
+	// the selector of every type of every field, 0 if not encoded yet
+	private final int[] selectors;
+
+	// the wall clock time per SAT call in milliseconds, 0 for no limit
+	private long timeoutMs;
+
+	// whether the decisions of the presolver are passed as assumptions
+	private boolean presolve = true;
+
+	// the number of selectors switched off since the last rebuild
+	private int retired;
+
+	/**
+	 * create a solver for a board and encode its current state.
+	 *
+	 * @param lights
+	 *            the board. It may be edited afterwards, see
+	 *            {@link #update(int, int)}; lights on it are ignored.
+	 */
+	public IncrementalSolution(Lights lights) {
+		this.lights = lights;
+		this.dimension = lights.getDimension();
+		this.size = dimension * dimension;
+		this.type = new int[size];
+		this.selectors = new int[TYPES * size];
+		for (int pos = 0; pos < size; pos++)
+			type[pos] = typeOf(pos);
+		rebuild();
+	}
+
+	/*
+	 * start over with a new solver which encodes the current types only.
+	 */
+	private void rebuild() {
+		solver = SolverFactory.newDefault();
+		cnf = new CnfBuilder(solver);
+		Arrays.fill(selectors, 0);
+		retired = 0;
+
+		// the light variables are the model, rays and selectors are internal
+		solver.newVar(size);
+		cnf.setKind("ray");
+		for (int ray = 0; ray < 4 * size; ray++)
+			cnf.newVariable();
+		for (int pos = 0; pos < size; pos++)
+			select(pos);
+	}
+
+	/**
+	 * take over the change of one field of the board. Call this after
+	 * changing a block, a number or an empty field.
+	 *
+	 * @param row
+	 *            the index of the row of the field (0 .. dimension-1)
+	 * @param col
+	 *            the index of the column of the field (0 .. dimension-1)
+	 * @throws IndexOutOfBoundsException
+	 *             if row or col are not within the bounds.
+	 * @return true iff the type of the field has changed
+	 */
+	public boolean update(int row, int col) {
+		if (row < 0 || row >= dimension || col < 0 || col >= dimension)
+			throw new IndexOutOfBoundsException("update: " + row + ", " + col);
+		int pos = row * dimension + col;
+		int newType = typeOf(pos);
+		if (newType == type[pos])
+			return false;
+		type[pos] = newType;
+		select(pos);
+		return true;
+	}
+
+	/**
+	 * take over all changes of the board since the last update.
+	 *
+	 * @return the number of fields whose type has changed
+	 */
+	public int update() {
+		int changed = 0;
+		for (int row = 0; row < dimension; row++) {
+			for (int col = 0; col < dimension; col++) {
+				if (update(row, col))
+					changed++;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * limit the wall clock time of every SAT call.
+	 *
+	 * @param timeoutMs
+	 *            the time in milliseconds, 0 (the default) for no limit
+	 * @throws IllegalArgumentException
+	 *             if the time is negative
+	 */
+	public void setTimeoutMs(long timeoutMs) {
+		if (timeoutMs < 0)
+			throw new IllegalArgumentException("Timeout negative: " + timeoutMs);
+		this.timeoutMs = timeoutMs;
+	}
+
+	/**
+	 * Choose whether the board is presolved before every SAT call (see
+	 * {@link Presolver}). The presolver is run on the whole board, which
+	 * takes linear time, and the fields it decides are passed to the solver
+	 * as assumptions. This is on by default: many edits produce a board
+	 * which the presolver refutes without a SAT call.
+	 *
+	 * @param presolve
+	 *            true to presolve before every call
+	 */
+	public void setPresolve(boolean presolve) {
+		this.presolve = presolve;
+	}
+
+	/**
+	 * get the number of clauses encoded so far, for all types the fields
+	 * have had since the solver has been built.
+	 *
+	 * @return a non-negative number
+	 */
+	public int getClauseCount() {
+		return cnf.getClauseCount();
+	}
+
+	/**
+	 * find a solution of the board in its current state and place it on the
+	 * board.
+	 *
+	 * @return {@link SolveStatus#SAT} if a solution has been placed,
+	 *         {@link SolveStatus#UNSAT} if there is none,
+	 *         {@link SolveStatus#UNKNOWN} if the search ran out of time
+	 */
+	public SolveStatus trySolve() {
+		try {
+			if (!isSatisfiable(0))
+				return SolveStatus.UNSAT;
+		} catch (TimeoutException e) {
+			return SolveStatus.UNKNOWN;
+		}
+		place(lights);
+		return SolveStatus.SAT;
+	}
+
+	/**
+	 * check whether the board in its current state has exactly one solution.
+	 * There are at most two SAT calls. The board is not modified.
+	 *
+	 * @return the verdict together with up to two solutions
+	 * @throws TimeoutException
+	 *             if a SAT call runs out of time
+	 */
+	public Uniqueness isUnique() throws TimeoutException {
+		if (!isSatisfiable(0))
+			return new Uniqueness(Uniqueness.Verdict.NONE, null, null);
+		Lights first = lights.clone();
+		place(first);
+
+		// no solution contains all lights of another one plus a further
+		// light, so it suffices to require that one light is missing
+		int guard = cnf.newVariable();
+		VecInt blocking = new VecInt();
+		blocking.push(-guard);
+		for (int pos = 0; pos < size; pos++) {
+			if (solver.model(light(pos)))
+				blocking.push(-light(pos));
+		}
+		try {
+			cnf.setKind("blocking");
+			cnf.addClause(blocking);
+			if (!isSatisfiable(guard))
+				return new Uniqueness(Uniqueness.Verdict.UNIQUE, first, null);
+			Lights second = lights.clone();
+			place(second);
+			return new Uniqueness(Uniqueness.Verdict.MULTIPLE, first, second);
+		} catch (ContradictionException e) {
+			// the guard is fresh, so the clause cannot contradict
+			throw new IllegalStateException(e);
+		} finally {
+			retire(guard);
+			if (++retired >= MAX_RETIRED)
+				rebuild();
+		}
+	}
+
+	/*
+	 * run the solver with the selectors of the current types, the decided
+	 * fields and the given extra selector (0 for none) as assumptions.
+	 */
+	private boolean isSatisfiable(int extra) throws TimeoutException {
+		VecInt assumptions = new VecInt(2 * size + 1);
+		for (int pos = 0; pos < size; pos++)
+			assumptions.push(selectors[TYPES * pos + type[pos]]);
+		if (presolve) {
+			Presolver presolver = new Presolver(lights);
+			if (!presolver.presolve())
+				return false;
+			for (int pos = 0; pos < size; pos++) {
+				byte state = presolver.getState(pos);
+				if (state == Presolver.LIGHT)
+					assumptions.push(light(pos));
+				else if (state == Presolver.NO_LIGHT && type[pos] == FREE)
+					assumptions.push(-light(pos));
+			}
+		}
+		if (extra != 0)
+			assumptions.push(extra);
+		if (timeoutMs > 0)
+			solver.setTimeoutMs(timeoutMs);
+		else
+			solver.setTimeout(Integer.MAX_VALUE);
+		return solver.isSatisfiable(assumptions);
+	}
+
+	// switch a selector off for good
+	private void retire(int selector) {
+		try {
+			cnf.addClause(-selector);
+		} catch (ContradictionException e) {
+			// the selector occurs negated only, this cannot happen
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// put the lights of the last model on a board
+	private void place(Lights board) {
+		board.removeAllLights();
+		for (int pos = 0; pos < size; pos++) {
+			if (solver.model(light(pos)))
+				board.setLight(pos / dimension, pos % dimension);
+		}
+	}
+
+	// the type of a field on the board
+	private int typeOf(int pos) {
+		byte code = lights.getLinear(pos);
+		if (code >= Lights.CONSTRAINED_CELL)
+			return NUMBERED + code - Lights.CONSTRAINED_CELL;
+		return code == Lights.BLOCK_CELL ? BLOCK : FREE;
+	}
+
+	/*
+	 * make sure the group of the current type of a field is encoded.
+	 */
+	private void select(int pos) {
+		int index = TYPES * pos + type[pos];
+		if (selectors[index] != 0)
+			return;
+		cnf.setKind("selector");
+		int selector = cnf.newVariable();
+		selectors[index] = selector;
+		try {
+			if (type[pos] == FREE)
+				encodeFree(selector, pos);
+			else
+				encodeBlock(selector, pos, type[pos] - NUMBERED);
+		} catch (ContradictionException e) {
+			// every clause contains the fresh selector
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/*
+	 * the constraints of an empty field: the rays through it, lit, and no
+	 * other light towards east and south.
+	 */
+	private void encodeFree(int s, int pos) throws ContradictionException {
+		int row = pos / dimension;
+		int col = pos % dimension;
+		int east = col < dimension - 1 ? pos + 1 : -1;
+		int west = col > 0 ? pos - 1 : -1;
+		int south = row < dimension - 1 ? pos + dimension : -1;
+		int north = row > 0 ? pos - dimension : -1;
+
+		cnf.setKind("ray");
+		encodeRay(s, pos, EAST, east);
+		encodeRay(s, pos, WEST, west);
+		encodeRay(s, pos, SOUTH, south);
+		encodeRay(s, pos, NORTH, north);
+
+		cnf.setKind("lit");
+		cnf.addClause(-s, ray(EAST, pos), ray(WEST, pos), ray(SOUTH, pos),
+				ray(NORTH, pos));
+
+		cnf.setKind("atMostOne");
+		if (east != -1)
+			cnf.addClause(-s, -light(pos), -ray(EAST, east));
+		if (south != -1)
+			cnf.addClause(-s, -light(pos), -ray(SOUTH, south));
+	}
+
+	/*
+	 * ray(pos) <-> light(pos) | ray(next), next is -1 at the edge.
+	 */
+	private void encodeRay(int s, int pos, int direction, int next)
+			throws ContradictionException {
+		int ray = ray(direction, pos);
+		cnf.addClause(-s, -light(pos), ray);
+		if (next == -1) {
+			cnf.addClause(-s, -ray, light(pos));
+		} else {
+			int beyond = ray(direction, next);
+			cnf.addClause(-s, -beyond, ray);
+			cnf.addClause(-s, -ray, light(pos), beyond);
+		}
+	}
+
+	/*
+	 * the constraints of a block: no light, no ray through it, and exactly
+	 * number lights next to it unless number is negative.
+	 */
+	private void encodeBlock(int s, int pos, int number)
+			throws ContradictionException {
+		cnf.setKind("block");
+		cnf.addClause(-s, -light(pos));
+		for (int direction = 0; direction < 4; direction++)
+			cnf.addClause(-s, -ray(direction, pos));
+		if (number < 0)
+			return;
+
+		cnf.setKind("wall");
+		int row = pos / dimension;
+		int col = pos % dimension;
+		int[] neighbours = new int[4];
+		int n = 0;
+		if (row > 0)
+			neighbours[n++] = light(pos - dimension);
+		if (row < dimension - 1)
+			neighbours[n++] = light(pos + dimension);
+		if (col > 0)
+			neighbours[n++] = light(pos - 1);
+		if (col < dimension - 1)
+			neighbours[n++] = light(pos + 1);
+
+		if (number > n) {
+			// more lights than neighbours
+			cnf.addClause(-s);
+			return;
+		}
+		// every subset of size number+1 has a field without light, every
+		// subset of size n-number+1 one with a light
+		for (int subset = 0; subset < (1 << n); subset++) {
+			int count = Integer.bitCount(subset);
+			if (count == number + 1)
+				addSubset(s, neighbours, subset, -1);
+			if (count == n - number + 1)
+				addSubset(s, neighbours, subset, 1);
+		}
+	}
+
+	// add the guarded clause of the neighbours in subset with the given sign
+	private void addSubset(int s, int[] neighbours, int subset, int sign)
+			throws ContradictionException {
+		VecInt clause = new VecInt(5);
+		clause.push(-s);
+		for (int i = 0; subset != 0; i++, subset >>= 1) {
+			if ((subset & 1) != 0)
+				clause.push(sign * neighbours[i]);
+		}
+		cnf.addClause(clause);
+	}
+
+	// the variable of a light on a field
+	private static int light(int pos) {
+		return pos + 1;
+	}
+
+	// the variable of the ray from a field in a direction
+	private int ray(int direction, int pos) {
+		return size + direction * size + pos + 1;
+	}
+
+}
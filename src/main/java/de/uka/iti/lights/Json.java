@@ -0,0 +1,101 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+/**
+ * Helper methods to write JSON output without further libraries.
+ */
+final class Json {
+
+	private Json() {
+	}
+
+	/**
+	 * append a string as a quoted JSON string literal.
+	 *
+	 * @param sb
+	 *            the builder to append to
+	 * @param s
+	 *            the string to quote, null is written as <code>null</code>
+	 * @return sb
+	 */
+	static StringBuilder appendString(StringBuilder sb, String s) {
+		if (s == null)
+			return sb.append("null");
+
+		sb.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				if (c < 0x20)
+					sb.append(String.format("\\u%04x", (int) c));
+				else
+					sb.append(c);
+			}
+		}
+		return sb.append('"');
+	}
+
+	/**
+	 * append a key and a string value as a JSON object member, preceded by a
+	 * comma unless the object has just been opened.
+	 *
+	 * @param sb
+	 *            the builder to append to
+	 * @param key
+	 *            the name of the member
+	 * @param value
+	 *            the value, may be null
+	 * @return sb
+	 */
+	static StringBuilder appendMember(StringBuilder sb, String key,
+			String value) {
+		appendKey(sb, key);
+		return appendString(sb, value);
+	}
+
+	/**
+	 * append a key and a number as a JSON object member, preceded by a comma
+	 * unless the object has just been opened.
+	 *
+	 * @param sb
+	 *            the builder to append to
+	 * @param key
+	 *            the name of the member
+	 * @param value
+	 *            the value
+	 * @return sb
+	 */
+	static StringBuilder appendMember(StringBuilder sb, String key,
+			Number value) {
+		appendKey(sb, key);
+		return sb.append(value);
+	}
+
+	private static void appendKey(StringBuilder sb, String key) {
+		char last = sb.length() == 0 ? '{' : sb.charAt(sb.length() - 1);
+		if (last != '{')
+			sb.append(',');
+		appendString(sb, key).append(':');
+	}
+
+}
@@ -5,8 +5,10 @@
 
 package de.uka.iti.lights;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
 
 import javax.swing.JDialog;
 import javax.swing.JFrame;
@@ -38,6 +40,11 @@ import javax.swing.WindowConstants;
  * <li>... or as a dialog window ({@link #showWindow()}).
  * </ul>
  * 
+ * <p>
+ * Queries do not modify the board, so a board which is no longer changed can
+ * be read by several threads at once. Changes need external synchronisation.
+ * </p>
+ * 
  * @author Mattias Ulbrich
  * @version 2008.1c
  */
@@ -47,8 +54,8 @@ public class Lights {
 	// the height and width of the square board
 	private final int dimension;
 
-	// the actual board
-	private final Object[] field;
+	// the actual board, one cell code per field (see below)
+	private final byte[] field;
 
 	/** this immutable object stands for a light */
 	public static final Object LIGHT = "L";
@@ -56,6 +63,23 @@ public class Lights {
 	/** this immutable object stands for an unconstrained block */
 	public static final Object BLOCK = "B";
 
+	// The cell codes stored in field. All codes fit into 4 bits.
+	// Constrained blocks are stored as CONSTRAINED_CELL + constraint, so
+	// every code >= BLOCK_CELL is a block.
+	static final byte EMPTY_CELL = 0;
+	static final byte LIGHT_CELL = 1;
+	static final byte BLOCK_CELL = 2;
+	static final byte CONSTRAINED_CELL = 3;
+
+	// the objects returned by getField for the cell codes above
+	private static final Object[] FIELD_OBJECTS = { null, LIGHT, BLOCK,
+			Integer.valueOf(0), Integer.valueOf(1), Integer.valueOf(2),
+			Integer.valueOf(3), Integer.valueOf(4) };
+
+	// the characters used by toString for the cell codes above
+	private static final char[] CELL_CHARS = { ' ', 'L', 'B', '0', '1', '2',
+			'3', '4' };
+
 	/**
 	 * convert a board description into a Lights object. The description must be
 	 * well formulated otherwise an exception will be raised.
@@ -86,6 +110,11 @@ public class Lights {
 	 * </tr>
 	 * </table>
 	 * 
+	 * <p>
+	 * The dimension may be at most {@link LightsParser#MAX_DIMENSION}. Use a
+	 * {@link LightsParser} to read many boards from a file or buffer.
+	 * </p>
+	 * 
 	 * @see #toString()
 	 * @param desc
 	 *            a board description as string
@@ -94,47 +123,18 @@ public class Lights {
 	 *             specifications.
 	 */
 	public Lights(String desc) throws LightsFormatException {
-		String[] parts = desc.split(":");
-
-		if (parts.length != 2)
-			throw new LightsFormatException("Description needs a ':'");
+		this(LightsParser.parse(desc));
+	}
 
-		try {
-			dimension = Integer.parseInt(parts[0]);
-		} catch (NumberFormatException e) {
-			throw new LightsFormatException("Dimension must be a number", e);
-		}
+	// take over the field of a freshly parsed board
+	private Lights(Lights parsed) {
+		this(parsed.dimension, parsed.field);
+	}
 
-		if (dimension < 0 || dimension > 80)
-			throw new LightsFormatException(
-					"Dimension must be between 0 and 80");
-
-		int d_square = dimension * dimension;
-		field = new Object[d_square];
-		int pos = 0;
-
-		for (int i = 0; i < parts[1].length(); i++) {
-			if (pos >= d_square)
-				throw new LightsFormatException("Out of bounds!");
-
-			char c = parts[1].charAt(i);
-			if (c >= 'a' && c <= 'z') {
-				pos += (c - 'a' + 1);
-			} else if (c == 'L') {
-				setLinear(pos, LIGHT);
-				pos++;
-			} else if (c == 'B') {
-				setLinear(pos, BLOCK);
-				pos++;
-			} else if (c >= '0' && c <= '4') {
-				setLinear(pos, Integer.valueOf(c - '0'));
-				pos++;
-			} else if (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
-				// do nothing
-			} else
-				throw new LightsFormatException("Unrecognized character: " + c
-						+ " at position " + i);
-		}
+	// create a board on a field array which is not used elsewhere
+	Lights(int dimension, byte[] field) {
+		this.dimension = dimension;
+		this.field = field;
 	}
 
 	/**
@@ -150,7 +150,7 @@ public class Lights {
 			throw new IllegalArgumentException("Dimension non-positive: "
 					+ dimension);
 		this.dimension = dimension;
-		this.field = new Object[dimension * dimension];
+		this.field = new byte[dimension * dimension];
 	}
 
 	/**
@@ -161,38 +161,285 @@ public class Lights {
 	 * @return a string completely describing the board
 	 */
 	public String toString() {
-		StringBuilder sb = new StringBuilder();
-		sb.append(dimension).append(':');
+		return describe(true);
+	}
+
+	/**
+	 * generate a describing String from the walls of this board. This is the
+	 * result of {@link #toString()} after {@link #removeAllLights()}, without
+	 * modifying the board.
+	 * 
+	 * @return a string describing the board without its lights
+	 */
+	public String toBoardString() {
+		return describe(false);
+	}
+
+	// the description with or without the lights
+	private String describe(boolean withLights) {
+		StringBuilder sb = new StringBuilder(dimension * dimension / 2 + 8);
+		appendDescription(sb, Symmetry.IDENTITY, withLights);
+		return sb.toString();
+	}
+
+	/**
+	 * append the description of this board (see {@link #toString()}) to a
+	 * character sink. Apart from the sink nothing is allocated, so a buffer
+	 * can be reused for many boards.
+	 * 
+	 * @param out
+	 *            the sink to append to, e.g. a {@link StringBuilder} or a
+	 *            {@link java.io.Writer}
+	 * @throws IOException
+	 *             if the sink fails
+	 */
+	public void appendTo(Appendable out) throws IOException {
+		emit(out, Symmetry.IDENTITY, true);
+	}
+
+	/**
+	 * write the description of this board (see {@link #toString()}) as ASCII
+	 * characters to a buffer, starting at its position.
+	 * 
+	 * @param buffer
+	 *            the buffer to write to, its position is advanced
+	 * @throws java.nio.BufferOverflowException
+	 *             if the buffer is too small. The position of the buffer is
+	 *             undefined then.
+	 */
+	public void writeTo(ByteBuffer buffer) {
+		try {
+			emit(new ByteSink(buffer), Symmetry.IDENTITY, true);
+		} catch (IOException e) {
+			// a buffer does not throw IOExceptions
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// an ASCII view of a byte buffer as character sink
+	private static class ByteSink implements Appendable {
+		private final ByteBuffer buffer;
+
+		ByteSink(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		public Appendable append(char c) {
+			buffer.put((byte) c);
+			return this;
+		}
+
+		public Appendable append(CharSequence csq) {
+			return append(csq, 0, csq.length());
+		}
+
+		public Appendable append(CharSequence csq, int start, int end) {
+			for (int i = start; i < end; i++)
+				buffer.put((byte) csq.charAt(i));
+			return this;
+		}
+	}
+
+	/**
+	 * get the positions of the lights on the board. Position <i>row</i> *
+	 * dimension + <i>col</i> is set iff there is a light in row <i>row</i>
+	 * and column <i>col</i>.
+	 * 
+	 * @return a new bit set
+	 */
+	public BitSet getLightSet() {
+		return BitSet.valueOf(getLightBits(null));
+	}
+
+	/**
+	 * get the positions of the lights on the board as a bitmap. Bit
+	 * <i>pos</i> % 64 of word <i>pos</i> / 64 is set iff there is a light at
+	 * the position <i>pos</i> = <i>row</i> * dimension + <i>col</i>. This is
+	 * the layout of {@link BitSet#toLongArray()}.
+	 * 
+	 * @param bits
+	 *            an array to reuse, may be null or too short
+	 * @return bits if it holds at least (dimension * dimension + 63) / 64
+	 *         words (only these are overwritten), otherwise a new array of
+	 *         exactly that length
+	 */
+	public long[] getLightBits(long[] bits) {
+		int words = (field.length + 63) / 64;
+		if (bits == null || bits.length < words)
+			bits = new long[words];
+		else
+			Arrays.fill(bits, 0, words, 0L);
+		for (int pos = 0; pos < field.length; pos++) {
+			if (field[pos] == LIGHT_CELL)
+				bits[pos >> 6] |= 1L << pos;
+		}
+		return bits;
+	}
+
+	/*
+	 * append the description of the image of this board under a symmetry.
+	 */
+	void appendDescription(StringBuilder sb, Symmetry symmetry,
+			boolean withLights) {
+		try {
+			emit(sb, symmetry, withLights);
+		} catch (IOException e) {
+			// a StringBuilder does not throw IOExceptions
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/*
+	 * like above, but give up as soon as the appended description is known
+	 * to be lexicographically larger than bound (if not null). Returns false
+	 * if it gave up, sb holds a prefix of the description then.
+	 */
+	boolean appendDescription(StringBuilder sb, Symmetry symmetry,
+			boolean withLights, CharSequence bound) {
+		if (bound == null) {
+			appendDescription(sb, symmetry, withLights);
+			return true;
+		}
+		BoundedSink sink = new BoundedSink(sb, bound);
+		try {
+			emit(sink, symmetry, withLights);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return !sink.larger;
+	}
+
+	/*
+	 * the encoder of all descriptions: write the description of the image of
+	 * this board under a symmetry. The image is not created, the fields are
+	 * read in the order of the image. Symmetries are affine, so the position
+	 * of the source field moves by fixed steps along the rows and columns of
+	 * the image. Stops after a row if a BoundedSink has become larger than
+	 * its bound and returns false then.
+	 */
+	private boolean emit(Appendable out, Symmetry symmetry, boolean withLights)
+			throws IOException {
+		Symmetry inverse = symmetry.inverse();
+		int start = inverse.map(0, dimension);
+		int colStep = inverse.map(1, dimension) - start;
+		int rowStep = inverse.map(dimension, dimension) - start;
+		BoundedSink bounded = out instanceof BoundedSink ? (BoundedSink) out
+				: null;
+
+		appendNumber(out, dimension);
+		out.append(':');
 		int acc = 0;
-		for (int i = 0; i < field.length; i++) {
-			Object content = getLinear(i);
-			if (content == null) {
-				acc++;
-				if (acc == 26) {
-					sb.append('z');
-					acc = 0;
-				}
-			} else {
-				if (acc > 0) {
-					sb.append((char) ('a' + acc - 1));
-					acc = 0;
+		for (int row = 0, rowPos = start; row < dimension; row++, rowPos += rowStep) {
+			for (int col = 0, pos = rowPos; col < dimension; col++, pos += colStep) {
+				byte content = field[pos];
+				if (content == LIGHT_CELL && !withLights)
+					content = EMPTY_CELL;
+				if (content == EMPTY_CELL) {
+					acc++;
+					if (acc == 26) {
+						out.append('z');
+						acc = 0;
+					}
+				} else {
+					if (acc > 0) {
+						out.append((char) ('a' + acc - 1));
+						acc = 0;
+					}
+					out.append(CELL_CHARS[content]);
 				}
-				sb.append(content);
 			}
+			if (bounded != null && bounded.larger)
+				return false;
 		}
 		if (acc > 0)
-			sb.append((char) ('a' + acc - 1));
-		return sb.toString();
+			out.append((char) ('a' + acc - 1));
+		return true;
+	}
+
+	// append a non-negative number digit by digit
+	private static void appendNumber(Appendable out, int number)
+			throws IOException {
+		if (number >= 10)
+			appendNumber(out, number / 10);
+		out.append((char) ('0' + number % 10));
+	}
+
+	/*
+	 * a sink which appends to a StringBuilder and compares the appended
+	 * characters with a bound on the way. A longer string with equal prefix
+	 * is larger.
+	 */
+	private static class BoundedSink implements Appendable {
+		private final StringBuilder sb;
+		private final CharSequence bound;
+
+		// the number of characters appended so far
+		private int length;
+
+		// set once the description is known to be smaller or larger
+		private boolean smaller;
+		boolean larger;
+
+		BoundedSink(StringBuilder sb, CharSequence bound) {
+			this.sb = sb;
+			this.bound = bound;
+		}
+
+		public Appendable append(char c) {
+			sb.append(c);
+			if (!smaller && !larger) {
+				if (length >= bound.length() || c > bound.charAt(length))
+					larger = true;
+				else if (c < bound.charAt(length))
+					smaller = true;
+			}
+			length++;
+			return this;
+		}
+
+		public Appendable append(CharSequence csq) {
+			return append(csq, 0, csq.length());
+		}
+
+		public Appendable append(CharSequence csq, int start, int end) {
+			for (int i = start; i < end; i++)
+				append(csq.charAt(i));
+			return this;
+		}
+	}
+
+	/*
+	 * create the image of this board under a symmetry, see
+	 * Symmetry.apply(Lights).
+	 */
+	Lights transform(Symmetry symmetry) {
+		Lights result = new Lights(dimension);
+		for (int pos = 0; pos < field.length; pos++) {
+			result.setLinear(symmetry.map(pos, dimension), getLinear(pos));
+		}
+		return result;
 	}
 
 	// access the field in a transparent way
-	private Object getLinear(int pos) {
+	byte getLinear(int pos) {
 		return field[pos];
 	}
 
 	// access the field in a transparent way
-	private void setLinear(int pos, Object o) {
-		field[pos] = o;
+	private void setLinear(int pos, byte code) {
+		field[pos] = code;
+	}
+
+	// is the cell code a (constrained or unconstrained) block?
+	static boolean isBlockCode(byte code) {
+		return code >= BLOCK_CELL;
+	}
+
+	// get the cell code of a field with bounds check.
+	private byte getCode(int row, int col) {
+		if (row < 0 || row >= dimension || col < 0 || col >= dimension)
+			throw new IndexOutOfBoundsException("getField: " + row + ", " + col);
+		return field[row * dimension + col];
 	}
 
 	/**
@@ -218,16 +465,20 @@ public class Lights {
 	 * @return see above.
 	 */
 	public Object getField(int row, int col) {
-		if (row < 0 || row >= dimension || col < 0 || col >= dimension)
-			throw new IndexOutOfBoundsException("getField: " + row + ", " + col);
-		return field[row * dimension + col];
+		return FIELD_OBJECTS[getCode(row, col)];
 	}
 
 	// set the value at a field w/o further check.
-	private void setField(int row, int col, Object obj) {
+	private void setField(int row, int col, byte code) {
 		if (row < 0 || row >= dimension || col < 0 || col >= dimension)
 			throw new IndexOutOfBoundsException("setField: " + row + ", " + col);
-		field[row * dimension + col] = obj;
+		field[row * dimension + col] = code;
+	}
+
+	// build a segment index of the board in its current state, owned by the
+	// caller
+	SegmentIndex segments() {
+		return new SegmentIndex(this);
 	}
 
 	/**
@@ -253,7 +504,7 @@ public class Lights {
 	 * @return true iff the field is indeed empty
 	 */
 	public boolean isEmpty(int row, int col) {
-		return getField(row, col) == null;
+		return getCode(row, col) == EMPTY_CELL;
 	}
 
 	/**
@@ -269,7 +520,7 @@ public class Lights {
 	 * @return true iff the field is indeed a light.
 	 */
 	public boolean isLight(int row, int col) {
-		return getField(row, col) == LIGHT;
+		return getCode(row, col) == LIGHT_CELL;
 	}
 
 	/**
@@ -286,7 +537,7 @@ public class Lights {
 	 * @return true iff the field is indeed a block.
 	 */
 	public boolean isBlock(int row, int col) {
-		return getField(row, col) == BLOCK || isConstrainedBlock(row, col);
+		return isBlockCode(getCode(row, col));
 	}
 
 	/**
@@ -302,7 +553,7 @@ public class Lights {
 	 * @return true iff the field is indeed a constrained block.
 	 */
 	public boolean isConstrainedBlock(int row, int col) {
-		return getField(row, col) instanceof Integer;
+		return getCode(row, col) >= CONSTRAINED_CELL;
 	}
 
 	/**
@@ -324,9 +575,9 @@ public class Lights {
 	 * @return the value of the constraint of the indexed field (0..4)
 	 */
 	public int getBlockConstraint(int row, int col) {
-		if (getField(row, col) instanceof Integer) {
-			Integer val = (Integer) getField(row, col);
-			return val.intValue();
+		byte code = getCode(row, col);
+		if (code >= CONSTRAINED_CELL) {
+			return code - CONSTRAINED_CELL;
 		} else {
 			throw new IllegalArgumentException("not a contrained block: " + row
 					+ ", " + col);
@@ -350,18 +601,20 @@ public class Lights {
 	 *         vertically) on which a light is placed
 	 */
 	public int getLitNeighbours(int row, int col) {
+		getCode(row, col); // bounds check
+		int pos = row * dimension + col;
 		int count = 0;
 		
-		if(row > 0 && isLight(row-1, col))
+		if(row > 0 && field[pos - dimension] == LIGHT_CELL)
 			count ++;
 		
-		if(row < getDimension()-1 && isLight(row+1, col))
+		if(row < dimension-1 && field[pos + dimension] == LIGHT_CELL)
 			count ++;
 		
-		if(col > 0 && isLight(row, col-1))
+		if(col > 0 && field[pos - 1] == LIGHT_CELL)
 			count ++;
 		
-		if(col < getDimension()-1 && isLight(row, col+1))
+		if(col < dimension-1 && field[pos + 1] == LIGHT_CELL)
 			count ++;
 
 		
@@ -374,6 +627,10 @@ public class Lights {
 	 * This can be on the same field or on a field horizontally or vertically
 	 * visible from this field. Light does not go through blocks.
 	 * 
+	 * The query takes time linear in the dimension of the board. Use a
+	 * {@link Bitboard} for many queries on a fixed board, or a
+	 * {@link SegmentIndex} for queries between placing and removing lights.
+	 * 
 	 * @see #isLight(int, int)
 	 * @param row
 	 *            the index of the row of the field (0 .. dimension-1)
@@ -385,38 +642,32 @@ public class Lights {
 	 *         the board.
 	 */
 	public boolean isLit(int row, int col) {
-		// top
-		for (int k = row; k >= 0; k--) {
-			if (isBlock(k, col))
-				break;
-			if (isLight(k, col))
+		getCode(row, col); // bounds check
+		int pos = row * dimension + col;
+		if (isBlockCode(field[pos]))
+			return false;
+
+		// left and right
+		for (int k = pos; k >= row * dimension && !isBlockCode(field[k]); k--) {
+			if (field[k] == LIGHT_CELL)
 				return true;
 		}
-
-		// bottom
-		for (int k = row; k < dimension; k++) {
-			if (isBlock(k, col))
-				break;
-			if (isLight(k, col))
+		for (int k = pos + 1; k < (row + 1) * dimension
+				&& !isBlockCode(field[k]); k++) {
+			if (field[k] == LIGHT_CELL)
 				return true;
 		}
 
-		// left
-		for (int k = col; k >= 0; k--) {
-			if (isBlock(row, k))
-				break;
-			if (isLight(row, k))
+		// top and bottom
+		for (int k = pos - dimension; k >= 0 && !isBlockCode(field[k]); k -= dimension) {
+			if (field[k] == LIGHT_CELL)
 				return true;
 		}
-
-		// right
-		for (int k = col; k < dimension; k++) {
-			if (isBlock(row, k))
-				break;
-			if (isLight(row, k))
+		for (int k = pos + dimension; k < field.length
+				&& !isBlockCode(field[k]); k += dimension) {
+			if (field[k] == LIGHT_CELL)
 				return true;
 		}
-
 		return false;
 	}
 
@@ -434,7 +685,7 @@ public class Lights {
 	 *             if row or col are not within the bounds.
 	 */
 	public void clear(int row, int col) {
-		setField(row, col, null);
+		setField(row, col, EMPTY_CELL);
 	}
 
 	/**
@@ -454,11 +705,11 @@ public class Lights {
 	 *             if the indexed field is neither empty nor a light.
 	 */
 	public void setLight(int row, int col) {
-		Object f = getField(row, col);
-		if (f != null && f != LIGHT)
+		byte f = getCode(row, col);
+		if (f != EMPTY_CELL && f != LIGHT_CELL)
 			throw new IllegalArgumentException("The field " + row + ", " + col
-					+ " is already occupied by " + f);
-		setField(row, col, LIGHT);
+					+ " is already occupied by " + FIELD_OBJECTS[f]);
+		setField(row, col, LIGHT_CELL);
 	}
 	
 	/**
@@ -478,11 +729,11 @@ public class Lights {
 	 *             if the indexed field is neither empty nor a light.
 	 */
 	public void setEmpty(int row, int col) {
-		Object f = getField(row, col);
-		if (f != null && f != LIGHT)
+		byte f = getCode(row, col);
+		if (f != EMPTY_CELL && f != LIGHT_CELL)
 			throw new IllegalArgumentException("The field " + row + ", " + col
-					+ " is already occupied by " + f);
-		setField(row, col, null);
+					+ " is already occupied by " + FIELD_OBJECTS[f]);
+		setField(row, col, EMPTY_CELL);
 	}
 
 	/**
@@ -493,8 +744,8 @@ public class Lights {
 	 */
 	public void removeAllLights() {
 		for (int i = 0; i < field.length; i++) {
-			if (field[i] == LIGHT)
-				field[i] = null;
+			if (field[i] == LIGHT_CELL)
+				field[i] = EMPTY_CELL;
 		}
 	}
 
@@ -517,11 +768,11 @@ public class Lights {
 	 *             block.
 	 */
 	public void setBlock(int row, int col) {
-		Object f = getField(row, col);
-		if (f != null && f != BLOCK)
+		byte f = getCode(row, col);
+		if (f != EMPTY_CELL && f != BLOCK_CELL)
 			throw new IllegalArgumentException("The field " + row + ", " + col
-					+ " is already occupied by " + f);
-		setField(row, col, BLOCK);
+					+ " is already occupied by " + FIELD_OBJECTS[f]);
+		setField(row, col, BLOCK_CELL);
 	}
 
 	/**
@@ -549,11 +800,11 @@ public class Lights {
 		if (constraint < 0 || constraint > 4)
 			throw new IllegalArgumentException("constraint not valid: "
 					+ constraint);
-		Object f = getField(row, col);
-		if (f != null && !(f instanceof Integer))
+		byte f = getCode(row, col);
+		if (f != EMPTY_CELL && f < CONSTRAINED_CELL)
 			throw new IllegalArgumentException("The field " + row + ", " + col
-					+ " is already occupied by " + f);
-		setField(row, col, Integer.valueOf(constraint));
+					+ " is already occupied by " + FIELD_OBJECTS[f]);
+		setField(row, col, (byte) (CONSTRAINED_CELL + constraint));
 	}
 
 
@@ -589,24 +840,20 @@ public class Lights {
 	public void toConsole() {
 		for (int row = 0; row < dimension; row++) {
 			for (int col = 0; col < dimension; col++) {
-				Object o = getField(row, col);
-				System.out.print(o == null ? " " : o);
+				System.out.print(CELL_CHARS[field[row * dimension + col]]);
 			}
 			System.out.println();
 		}
 	}
 
 	/**
-	 * create a new object of this class which gets a copy the fields array. The
-	 * entries in the array are not deep copied since they are immutable.
+	 * create a new object of this class which gets a copy the fields array.
 	 * 
 	 * @return a new (identical) Lights object
 	 */
 	public Lights clone() {
 		Lights ret = new Lights(dimension);
-		for (int i = 0; i < field.length; i++) {
-			ret.field[i] = field[i];
-		}
+		System.arraycopy(field, 0, ret.field, 0, field.length);
 		return ret;
 	}
 
@@ -627,16 +874,20 @@ public class Lights {
 			if (l2.dimension != dimension)
 				return false;
 
-			// we always use the same objects, so comparison with == suffices
-			// instead of equals().
-			for (int i = 0; i < field.length; i++) {
-				if (field[i] != l2.field[i])
-					return false;
-			}
-			return true;
+			return Arrays.equals(field, l2.field);
 		} else {
 			return false;
 		}
 	}
 
+	/**
+	 * compute a hash code for this board which is consistent with
+	 * {@link #equals(Object)}.
+	 * 
+	 * @return a hash code depending on the dimension and all fields
+	 */
+	public int hashCode() {
+		return dimension * 31 + Arrays.hashCode(field);
+	}
+
 }
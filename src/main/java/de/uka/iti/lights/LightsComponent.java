@@ -63,10 +63,12 @@ public class LightsComponent extends JComponent {
 		((Graphics2D)g).setStroke(BOLD_STROKE);
 		g.translate(10,10);
 		
+		Bitboard board = new Bitboard(lights);
+		
 		for(int row = 0; row < d; row++) {
 			for(int col = 0; col < d; col++) {
 				
-				if(lights.isLit(row, col)) {
+				if(board.isLit(row, col)) {
 					g.setColor(Color.yellow);
 					g.fillRect((int)(deltax * col), (int)(deltay * row),
 							(int)deltax+1, (int)deltay+1);
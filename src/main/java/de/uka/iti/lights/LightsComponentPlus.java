@@ -63,10 +63,13 @@ public class LightsComponentPlus extends JComponent {
 		((Graphics2D)g).setStroke(BOLD_STROKE);
 		g.translate(10,10);
 		
+		// lit fields, counts and conflicts for the whole board at once
+		Bitboard board = new Bitboard(lights);
+		
 		for(int row = 0; row < d; row++) {
 			for(int col = 0; col < d; col++) {
 				
-				if(lights.isLit(row, col)) {
+				if(board.isLit(row, col)) {
 					g.setColor(Color.yellow);
 					g.fillRect((int)(deltax * col), (int)(deltay * row),
 							(int)deltax+1, (int)deltay+1);
@@ -78,14 +81,14 @@ public class LightsComponentPlus extends JComponent {
 							(int)deltax+1, (int)deltay+1);
 					if(lights.isConstrainedBlock(row, col)) {
 						int v = lights.getBlockConstraint(row, col);
-						int n = lights.getLitNeighbours(row, col);
+						int n = board.getLitNeighbours(row, col);
 						g.setColor(v==n ? Color.white : Color.red);
 						g.drawString(Integer.toString(v), (int)(deltax * col) + 5, (int)(deltay * (row+1)) - 5);
 					}
 				}
 				
 				if(lights.isLight(row, col)) {
-					g.setColor(conflict(row,col) ? Color.red : Color.white);
+					g.setColor(board.isConflict(row, col) ? Color.red : Color.white);
 					g.fillOval((int)(deltax * col)+5, (int)(deltay * row)+5,
 							(int)deltax-10, (int)deltay-10);
 					g.setColor(Color.black);
@@ -103,16 +106,6 @@ public class LightsComponentPlus extends JComponent {
 
 	}
 	
-	boolean conflict(int r, int c) {
-		for(int i = r+1; i < lights.getDimension() && !lights.isBlock(i, c); i++)
-			if(lights.isLight(i, c))
-				return true;
-		for(int i = c+1; i < lights.getDimension() && !lights.isBlock(r, i); i++)
-			if(lights.isLight(r, i))
-				return true;
-		return false;
-	}
-	
 	@Override
 	public Dimension getPreferredSize() {
 		int v = lights.getDimension() * 20 + 20;
@@ -11,20 +11,50 @@ public class LightsFormatException extends Exception {
 
 	private static final long serialVersionUID = -1030942250398403013L;
 
+	// the position of the error in the input, -1 if unknown
+	private final long position;
+
 	public LightsFormatException() {
 		super();
+		position = -1;
+	}
+
+	/**
+	 * create an exception for an error at a known position.
+	 * 
+	 * @param message
+	 *            the description of the error
+	 * @param position
+	 *            the number of characters read before the offending one
+	 */
+	public LightsFormatException(String message, long position) {
+		super(message + " at position " + position);
+		this.position = position;
 	}
 
 	public LightsFormatException(String message, Throwable cause) {
 		super(message, cause);
+		position = -1;
 	}
 
 	public LightsFormatException(String message) {
 		super(message);
+		position = -1;
 	}
 
 	public LightsFormatException(Throwable cause) {
 		super(cause);
+		position = -1;
+	}
+
+	/**
+	 * get the position of the error in the input.
+	 * 
+	 * @return the number of characters read before the offending one, -1 if
+	 *         unknown
+	 */
+	public long getPosition() {
+		return position;
 	}
 
 }
@@ -0,0 +1,281 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+
+/**
+ * This class reads board descriptions (see {@link Lights#Lights(String)})
+ * from a character source.
+ *
+ * <p>
+ * The parser reads character by character from a {@link CharSequence}, a
+ * {@link Reader} or a {@link ByteBuffer} holding ASCII text, e.g. a mapped
+ * file. No intermediate strings are created; the only allocation per board
+ * is the board itself.
+ * </p>
+ *
+ * <p>
+ * The dimension is between 1 and {@link #MAX_DIMENSION}. Unlike the original
+ * parser of {@link Lights#Lights(String)}, the description after the colon may
+ * be incomplete or even empty: <code>3:</code> is an empty 3x3 board.
+ * </p>
+ *
+ * <p>
+ * A source may hold many boards. A board ends as soon as all its fields are
+ * described, or at a line break or the end of the input if it is described
+ * incompletely (the remaining fields are empty). Whitespace between boards
+ * and lines starting with <code>#</code> are skipped. Errors are reported with
+ * their position, i.e. the number of characters read before the offending
+ * one.
+ * </p>
+ *
+ * <pre>
+ * LightsParser parser = new LightsParser(buffer);
+ * while (parser.hasNext()) {
+ * 	Lights lights = parser.next();
+ * 	...
+ * }
+ * </pre>
+ */
+public class LightsParser {
+
+	/**
+	 * The largest dimension accepted.
+	 */
+	public static final int MAX_DIMENSION = 1000;
+
+	// the marker for the end of the input
+	private static final int EOF = -1;
+
+	// the size of the buffer for readers
+	private static final int BUFFER_SIZE = 8192;
+
+	// exactly one of the three sources is set
+	private final CharSequence chars;
+	private final Reader reader;
+	private final ByteBuffer bytes;
+
+	// the buffer for the reader and its fill state
+	private char[] buffer;
+	private int bufferPos;
+	private int bufferLength;
+
+	// the number of characters consumed so far
+	private long position;
+
+	// whether a line break ends an incomplete board
+	private final boolean multiple;
+
+	/**
+	 * create a parser for the boards in a character sequence.
+	 *
+	 * @param chars
+	 *            the descriptions, not modified
+	 */
+	public LightsParser(CharSequence chars) {
+		this(chars, null, null, true);
+	}
+
+	/**
+	 * create a parser for the boards read from a reader. The reader is read
+	 * in chunks and not closed by the parser.
+	 *
+	 * @param reader
+	 *            the source of the descriptions
+	 */
+	public LightsParser(Reader reader) {
+		this(null, reader, null, true);
+		this.buffer = new char[BUFFER_SIZE];
+	}
+
+	/**
+	 * create a parser for the boards in a buffer of ASCII characters. The
+	 * boards are read from the position to the limit of the buffer; the
+	 * position is advanced as boards are read.
+	 *
+	 * @param bytes
+	 *            the descriptions, e.g. a mapped file
+	 */
+	public LightsParser(ByteBuffer bytes) {
+		this(null, null, bytes, true);
+	}
+
+	private LightsParser(CharSequence chars, Reader reader, ByteBuffer bytes,
+			boolean multiple) {
+		this.chars = chars;
+		this.reader = reader;
+		this.bytes = bytes;
+		this.multiple = multiple;
+	}
+
+	/**
+	 * parse a single board. The whole sequence is one description; line
+	 * breaks are ignored like other whitespace.
+	 *
+	 * @param desc
+	 *            the board description
+	 * @return a new board
+	 * @throws LightsFormatException
+	 *             if the description is malformed or holds more than one
+	 *             board
+	 */
+	public static Lights parse(CharSequence desc) throws LightsFormatException {
+		LightsParser parser = new LightsParser(desc, null, null, false);
+		try {
+			return parser.readBoard();
+		} catch (IOException e) {
+			// not raised by character sequences
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * get the number of characters consumed so far.
+	 *
+	 * @return a non-negative number
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * check whether there is a further board. Whitespace and comment lines
+	 * up to the next board are skipped.
+	 *
+	 * @return true iff the input holds further characters
+	 * @throws IOException
+	 *             if the reader fails
+	 */
+	public boolean hasNext() throws IOException {
+		while (true) {
+			int c = peek();
+			if (c == '#') {
+				do {
+					read();
+					c = peek();
+				} while (c != '\n' && c != '\r' && c != EOF);
+			} else if (isWhitespace(c)) {
+				read();
+			} else {
+				return c != EOF;
+			}
+		}
+	}
+
+	/**
+	 * read the next board.
+	 *
+	 * @return a new board
+	 * @throws LightsFormatException
+	 *             if the description is malformed
+	 * @throws IOException
+	 *             if the reader fails
+	 * @throws NoSuchElementException
+	 *             if there is no further board
+	 */
+	public Lights next() throws LightsFormatException, IOException {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		return readBoard();
+	}
+
+	// read one board starting at the current position
+	private Lights readBoard() throws LightsFormatException, IOException {
+		int dimension = 0;
+		int digits = 0;
+		int c;
+		while ((c = peek()) >= '0' && c <= '9') {
+			if (dimension > MAX_DIMENSION)
+				throw error("Dimension must be between 1 and " + MAX_DIMENSION);
+			dimension = dimension * 10 + c - '0';
+			digits++;
+			read();
+		}
+		if (c != ':') {
+			if (c == EOF || isWhitespace(c))
+				throw error("Description needs a ':'");
+			throw error("Dimension must be a number");
+		}
+		if (digits == 0)
+			throw error("Dimension must be a number");
+		if (dimension == 0 || dimension > MAX_DIMENSION)
+			throw error("Dimension must be between 1 and " + MAX_DIMENSION);
+		read();
+
+		byte[] field = new byte[dimension * dimension];
+		int pos = 0;
+		while ((c = peek()) != EOF) {
+			if (isWhitespace(c)) {
+				if (multiple && (c == '\n' || c == '\r'))
+					break;
+				read();
+				continue;
+			}
+			if (pos >= field.length) {
+				if (multiple)
+					break;
+				throw error("Out of bounds!");
+			}
+
+			if (c >= 'a' && c <= 'z') {
+				if (pos + c - 'a' + 1 > field.length)
+					throw error("Out of bounds!");
+				pos += c - 'a' + 1;
+			} else if (c == 'L') {
+				field[pos++] = Lights.LIGHT_CELL;
+			} else if (c == 'B') {
+				field[pos++] = Lights.BLOCK_CELL;
+			} else if (c >= '0' && c <= '4') {
+				field[pos++] = (byte) (Lights.CONSTRAINED_CELL + c - '0');
+			} else {
+				throw error("Unrecognized character: " + (char) c);
+			}
+			read();
+		}
+		return new Lights(dimension, field);
+	}
+
+	private static boolean isWhitespace(int c) {
+		return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+	}
+
+	private LightsFormatException error(String message) {
+		return new LightsFormatException(message, position);
+	}
+
+	// the next character without consuming it, EOF at the end
+	private int peek() throws IOException {
+		if (chars != null)
+			return position < chars.length() ? chars.charAt((int) position)
+					: EOF;
+		if (bytes != null)
+			return bytes.hasRemaining() ? bytes.get(bytes.position()) & 0xff
+					: EOF;
+		if (bufferPos == bufferLength) {
+			bufferLength = reader.read(buffer);
+			bufferPos = 0;
+			if (bufferLength <= 0) {
+				bufferLength = 0;
+				return EOF;
+			}
+		}
+		return buffer[bufferPos];
+	}
+
+	// consume the character returned by peek()
+	private void read() {
+		position++;
+		if (bytes != null)
+			bytes.position(bytes.position() + 1);
+		else if (reader != null)
+			bufferPos++;
+	}
+
+}
@@ -0,0 +1,94 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+/**
+ * A procedure which places the lights of solutions on a {@link Lights}
+ * board.
+ *
+ * <p>
+ * There are two implementations: {@link Solution} encodes the board for the
+ * SAT solver SAT4J, {@link SearchSolver} searches the board directly. The
+ * search avoids building the clause database, which dominates the time for
+ * most boards, but it does not learn clauses from conflicts and may fall
+ * behind on large, hard ones. {@link #create(Lights)} chooses by the size of the board.
+ * </p>
+ *
+ * <p>
+ * Every call of {@link #trySolve()} and {@link #tryNewSolution()} places a
+ * solution on the board which has not been found before, until there are no
+ * more solutions or the solution limit is reached.
+ * </p>
+ */
+public interface LightsSolver {
+
+	/**
+	 * The largest dimension for which {@link #create(Lights)} chooses the
+	 * {@link SearchSolver}.
+	 */
+	int SEARCH_MAX_DIMENSION = 50;
+
+	/**
+	 * create the solver which is expected to be faster for a board.
+	 *
+	 * @param lights
+	 *            the board to solve, with walls but no lights
+	 * @return a {@link SearchSolver} for boards up to
+	 *         {@link #SEARCH_MAX_DIMENSION}, a {@link Solution} otherwise
+	 */
+	static LightsSolver create(Lights lights) {
+		if (lights.getDimension() <= SEARCH_MAX_DIMENSION)
+			return new SearchSolver(lights);
+		return new Solution(lights);
+	}
+
+	/**
+	 * find a first solution and place it on the board.
+	 *
+	 * @return {@link SolveStatus#SAT} if a solution has been placed,
+	 *         {@link SolveStatus#UNSAT} if there is none,
+	 *         {@link SolveStatus#UNKNOWN} if the search ran out of time or has
+	 *         been cancelled; it may be resumed by {@link #tryNewSolution()}
+	 */
+	SolveStatus trySolve();
+
+	/**
+	 * find a further solution and place it on the board.
+	 *
+	 * @return the outcome like {@link #trySolve()}
+	 */
+	SolveStatus tryNewSolution();
+
+	/**
+	 * set the maximum number of solutions to find.
+	 *
+	 * @param limit
+	 *            a positive number, unlimited by default
+	 */
+	void setSolutionLimit(long limit);
+
+	/**
+	 * get the number of solutions found so far.
+	 *
+	 * @return a non-negative number
+	 */
+	long getSolutionCount();
+
+	/**
+	 * limit the wall clock time of every call.
+	 *
+	 * @param timeoutMs
+	 *            the time in milliseconds, 0 (the default) for no limit
+	 */
+	void setTimeoutMs(long timeoutMs);
+
+	/**
+	 * cancel the search. This may be called from any thread; the running
+	 * and all later calls return {@link SolveStatus#UNKNOWN}.
+	 */
+	void cancel();
+
+}
@@ -0,0 +1,298 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.TimeoutException;
+
+/**
+ * This class races several differently configured SAT4J solvers on the same
+ * board.
+ *
+ * <p>
+ * Solve times of hard boards differ a lot between solver configurations. The
+ * portfolio encodes the board once per configuration (see
+ * {@link Solution#Solution(Lights, ISolver)}) and runs all of them in
+ * parallel. The first answer wins, the other solvers are stopped via
+ * {@link Solution#cancel()}.
+ * </p>
+ *
+ * <p>
+ * The portfolio counts how often each configuration won. Use
+ * {@link #narrow(int)} to continue with the most successful ones only.
+ * </p>
+ *
+ * <p>
+ * Every portfolio keeps one thread per configuration until it is closed.
+ * </p>
+ */
+public class Portfolio implements AutoCloseable {
+
+	/**
+	 * A named way to create a SAT solver.
+	 */
+	public static class Configuration {
+		private final String name;
+		private final Supplier<ISolver> factory;
+
+		/**
+		 * create a new configuration.
+		 *
+		 * @param name
+		 *            the name used in the statistics, unique in a portfolio
+		 * @param factory
+		 *            creates a fresh solver for every board
+		 */
+		public Configuration(String name, Supplier<ISolver> factory) {
+			this.name = name;
+			this.factory = factory;
+		}
+
+		/**
+		 * get the name of this configuration.
+		 *
+		 * @return the name passed to the constructor
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * create a solver of this configuration.
+		 *
+		 * @return a fresh solver
+		 */
+		public ISolver newSolver() {
+			return factory.get();
+		}
+
+		public String toString() {
+			return name;
+		}
+	}
+
+	/**
+	 * The configurations used by {@link #Portfolio()}: the SAT4J defaults,
+	 * the light-weight solver, Glucose and MiniSAT with different restart and
+	 * simplification strategies.
+	 */
+	public static final List<Configuration> DEFAULT_CONFIGURATIONS = Collections
+			.unmodifiableList(Arrays.asList(
+					new Configuration("default", SolverFactory::newDefault),
+					new Configuration("light", SolverFactory::newLight),
+					new Configuration("glucose", SolverFactory::newGlucose),
+					new Configuration("minisat", SolverFactory::newMiniSATHeap),
+					new Configuration("rsatBiere",
+							SolverFactory::newMiniLearningHeapRsatExpSimpBiere),
+					new Configuration("luby",
+							SolverFactory::newMiniLearningHeapRsatExpSimpLuby)));
+
+	// the configurations to race
+	private final List<Configuration> configurations;
+
+	// the number of wins per configuration name, same order as configurations
+	private final Map<String, AtomicLong> wins = new LinkedHashMap<String, AtomicLong>();
+
+	// runs the solvers, one thread per configuration
+	private final ExecutorService executor;
+
+	/**
+	 * create a portfolio of the {@link #DEFAULT_CONFIGURATIONS}.
+	 */
+	public Portfolio() {
+		this(DEFAULT_CONFIGURATIONS);
+	}
+
+	/**
+	 * create a portfolio of the given configurations.
+	 *
+	 * @param configurations
+	 *            the configurations to race, not empty
+	 * @throws IllegalArgumentException
+	 *             if no configuration is given
+	 */
+	public Portfolio(List<Configuration> configurations) {
+		if (configurations.isEmpty())
+			throw new IllegalArgumentException("No configurations");
+		this.configurations = new ArrayList<Configuration>(configurations);
+		for (Configuration configuration : configurations) {
+			wins.put(configuration.getName(), new AtomicLong());
+		}
+		this.executor = Executors.newFixedThreadPool(configurations.size(),
+				runnable -> {
+					Thread thread = new Thread(runnable, "lights-portfolio");
+					thread.setDaemon(true);
+					return thread;
+				});
+	}
+
+	// the outcome of one configuration
+	private static class Outcome {
+		final Configuration configuration;
+		final Lights board;
+		final boolean satisfiable;
+
+		Outcome(Configuration configuration, Lights board, boolean satisfiable) {
+			this.configuration = configuration;
+			this.board = board;
+			this.satisfiable = satisfiable;
+		}
+	}
+
+	/**
+	 * stop the threads of this portfolio. Running solves are finished first,
+	 * later calls of {@link #solve(Lights)} fail.
+	 */
+	public void close() {
+		executor.shutdown();
+	}
+
+	/**
+	 * solve a board with all configurations in parallel. The first
+	 * configuration to find an answer wins and its solution is placed on the
+	 * board.
+	 *
+	 * @param lights
+	 *            the board to solve, lights on it are removed
+	 * @return true iff the board has a solution
+	 * @throws TimeoutException
+	 *             if every configuration ran out of time or was cancelled
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting
+	 * @throws IllegalStateException
+	 *             if the portfolio has been closed
+	 */
+	public boolean solve(Lights lights) throws TimeoutException,
+			InterruptedException {
+		if (executor.isShutdown())
+			throw new IllegalStateException("closed");
+		lights.removeAllLights();
+		CompletionService<Outcome> completion = new ExecutorCompletionService<Outcome>(
+				executor);
+		List<Solution> solutions = new ArrayList<Solution>();
+		List<Future<Outcome>> futures = new ArrayList<Future<Outcome>>();
+
+		for (Configuration configuration : configurations) {
+			Lights board = lights.clone();
+			Solution solution = new Solution(board, configuration.newSolver());
+			solutions.add(solution);
+			futures.add(completion.submit(() -> new Outcome(configuration,
+					board, solution.solve())));
+		}
+
+		Outcome winner = null;
+		TimeoutException timeout = null;
+		Throwable failure = null;
+		try {
+			for (int i = 0; i < futures.size() && winner == null; i++) {
+				try {
+					winner = completion.take().get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof TimeoutException)
+						timeout = (TimeoutException) e.getCause();
+					else if (failure == null)
+						failure = e.getCause();
+				}
+			}
+		} finally {
+			stop(solutions, futures);
+		}
+
+		if (winner == null) {
+			// a real error is not hidden behind the timeouts of the others
+			if (failure instanceof RuntimeException)
+				throw (RuntimeException) failure;
+			if (failure instanceof Error)
+				throw (Error) failure;
+			if (failure != null)
+				throw new IllegalStateException(failure);
+			throw timeout;
+		}
+
+		wins.get(winner.configuration.getName()).incrementAndGet();
+		if (winner.satisfiable)
+			copyLights(winner.board, lights);
+		return winner.satisfiable;
+	}
+
+	/*
+	 * Stop all solvers which are still running and wait for them, so that no
+	 * loser keeps a thread busy.
+	 */
+	private static void stop(List<Solution> solutions,
+			List<Future<Outcome>> futures) throws InterruptedException {
+		for (Solution solution : solutions) {
+			solution.cancel();
+		}
+		for (Future<Outcome> future : futures) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				// the expected timeout of a loser
+			}
+		}
+	}
+
+	// place the lights of one board on another with the same blocks
+	private static void copyLights(Lights from, Lights to) {
+		int dimension = from.getDimension();
+		for (int row = 0; row < dimension; row++) {
+			for (int col = 0; col < dimension; col++) {
+				if (from.isLight(row, col))
+					to.setLight(row, col);
+			}
+		}
+	}
+
+	/**
+	 * get the number of wins per configuration.
+	 *
+	 * @return a map from configuration names to the number of boards the
+	 *         configuration answered first, in the order of the configurations
+	 */
+	public Map<String, Long> getWins() {
+		Map<String, Long> result = new LinkedHashMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> entry : wins.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().get());
+		}
+		return result;
+	}
+
+	/**
+	 * create a new portfolio of the configurations which won most often so
+	 * far.
+	 *
+	 * @param count
+	 *            the number of configurations to keep, positive
+	 * @return a new portfolio with at most count configurations, ordered by
+	 *         decreasing number of wins. It has threads of its own, so this
+	 *         portfolio should be closed if it is not used any more.
+	 */
+	public Portfolio narrow(int count) {
+		List<Configuration> sorted = new ArrayList<Configuration>(configurations);
+		sorted.sort(Comparator.comparingLong(
+				(Configuration c) -> wins.get(c.getName()).get()).reversed());
+		return new Portfolio(sorted.subList(0, Math.min(count, sorted.size())));
+	}
+
+}
@@ -0,0 +1,313 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+/**
+ * This class decides fields of a {@link Lights} board by simple logical
+ * deductions before the board is handed to the SAT solver.
+ *
+ * <p>
+ * The following rules are applied until nothing changes any more:
+ * </p>
+ * <ul>
+ * <li>A light forbids all other lights in its row and column segments.</li>
+ * <li>A numbered wall which already has as many lights as its number forbids
+ * its other neighbours (e.g. every neighbour of a <code>0</code>).</li>
+ * <li>A numbered wall which has exactly as many open neighbours as lights are
+ * still missing forces lights on all of them (e.g. every neighbour of a
+ * <code>4</code>).</li>
+ * <li>An unlit field with exactly one field left that could illuminate it
+ * forces a light on that field (which may be the field itself).</li>
+ * </ul>
+ *
+ * <p>
+ * All deductions are consequences of the rules of the puzzle, i.e. every
+ * solution of the board agrees with them. If the rules contradict each other,
+ * the board has no solution. If every field is decided, the decided lights
+ * form the only solution.
+ * </p>
+ *
+ * @see Solution#setPresolve(boolean)
+ */
+public class Presolver {
+
+	/** state of a field which has not been decided yet */
+	public static final byte OPEN = 0;
+
+	/** state of a field which must hold a light */
+	public static final byte LIGHT = 1;
+
+	/** state of a field which must not hold a light (including blocks) */
+	public static final byte NO_LIGHT = 2;
+
+	// the board to analyse
+	private final Lights lights;
+
+	// the height and width of the square board
+	private final int dimension;
+
+	// the segments of the board
+	private final SegmentIndex segments;
+
+	// the state of every field
+	private final byte[] state;
+
+	// the number of open fields in every segment
+	private final int[] segmentOpen;
+
+	// the number of open fields on the board
+	private int openCount;
+
+	// set if the rules contradict each other
+	private boolean contradiction;
+
+	// set if a rule has decided a field in the current round
+	private boolean changed;
+
+	/**
+	 * create a presolver for a board. The board is not modified. Lights placed
+	 * on the board are ignored.
+	 *
+	 * @param lights
+	 *            the board to analyse
+	 */
+	public Presolver(Lights lights) {
+		this.lights = lights;
+		this.dimension = lights.getDimension();
+		this.segments = lights.segments();
+		// the light counts of the index are the decided lights
+		segments.removeAllLights();
+		this.state = new byte[dimension * dimension];
+		this.segmentOpen = new int[segments.getSegmentCount()];
+
+		for (int seg = 0; seg < segmentOpen.length; seg++) {
+			segmentOpen[seg] = segments.getSegmentLength(seg);
+		}
+		for (int pos = 0; pos < state.length; pos++) {
+			if (segments.getRowSegment(pos) == -1)
+				state[pos] = NO_LIGHT;
+			else
+				openCount++;
+		}
+	}
+
+	// the segment index of the board, shared with the users of this presolver.
+	// Its light counts are those of the decided lights.
+	SegmentIndex getSegments() {
+		return segments;
+	}
+
+	/**
+	 * apply the rules until no more fields can be decided.
+	 *
+	 * @return false if the rules contradict each other, i.e. if the board has
+	 *         no solution; true otherwise
+	 */
+	public boolean presolve() {
+		do {
+			changed = false;
+			for (int row = 0; row < dimension && !contradiction; row++) {
+				for (int col = 0; col < dimension && !contradiction; col++) {
+					if (lights.isConstrainedBlock(row, col))
+						propagateConstraint(row, col);
+					else
+						propagateLit(row * dimension + col);
+				}
+			}
+		} while (changed && !contradiction);
+		return !contradiction;
+	}
+
+	/*
+	 * Apply the rules for the numbered wall at row, col.
+	 */
+	private void propagateConstraint(int row, int col) {
+		int[] neighbours = new int[4];
+		int count = 0;
+		if (row > 0)
+			neighbours[count++] = (row - 1) * dimension + col;
+		if (row < dimension - 1)
+			neighbours[count++] = (row + 1) * dimension + col;
+		if (col > 0)
+			neighbours[count++] = row * dimension + col - 1;
+		if (col < dimension - 1)
+			neighbours[count++] = row * dimension + col + 1;
+
+		int lit = 0;
+		int open = 0;
+		for (int i = 0; i < count; i++) {
+			if (state[neighbours[i]] == LIGHT)
+				lit++;
+			else if (state[neighbours[i]] == OPEN)
+				open++;
+		}
+
+		int missing = lights.getBlockConstraint(row, col) - lit;
+		if (missing < 0 || missing > open) {
+			contradiction = true;
+		} else if (open > 0 && (missing == 0 || missing == open)) {
+			for (int i = 0; i < count; i++) {
+				if (state[neighbours[i]] == OPEN) {
+					if (missing == 0)
+						setNoLight(neighbours[i]);
+					else
+						setLight(neighbours[i]);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Apply the rule for unlit fields to field pos.
+	 */
+	private void propagateLit(int pos) {
+		int rowSeg = segments.getRowSegment(pos);
+		if (rowSeg == -1)
+			return;
+		int colSeg = segments.getColumnSegment(pos);
+		if (segments.isLit(pos))
+			return;
+
+		// the field itself is counted in both segments
+		int candidates = segmentOpen[rowSeg] + segmentOpen[colSeg];
+		if (state[pos] == OPEN)
+			candidates--;
+
+		if (candidates == 0) {
+			contradiction = true;
+		} else if (candidates == 1) {
+			int candidate = findOpen(rowSeg);
+			if (candidate == -1)
+				candidate = findOpen(colSeg);
+			setLight(candidate);
+		}
+	}
+
+	// find an open field in a segment, -1 if there is none
+	private int findOpen(int seg) {
+		int stride = segments.getSegmentStride(seg);
+		int pos = segments.getSegmentStart(seg);
+		for (int i = 0; i < segments.getSegmentLength(seg); i++, pos += stride) {
+			if (state[pos] == OPEN)
+				return pos;
+		}
+		return -1;
+	}
+
+	/*
+	 * Decide that field pos holds a light and forbid all other lights in its
+	 * segments.
+	 */
+	private void setLight(int pos) {
+		int rowSeg = segments.getRowSegment(pos);
+		int colSeg = segments.getColumnSegment(pos);
+		if (state[pos] != OPEN || segments.isLit(pos)) {
+			contradiction = true;
+			return;
+		}
+
+		decide(pos, LIGHT);
+		segments.setLight(pos);
+		forbidOpen(rowSeg);
+		forbidOpen(colSeg);
+	}
+
+	// forbid lights on all open fields of a segment
+	private void forbidOpen(int seg) {
+		int stride = segments.getSegmentStride(seg);
+		int pos = segments.getSegmentStart(seg);
+		for (int i = 0; i < segments.getSegmentLength(seg); i++, pos += stride) {
+			if (state[pos] == OPEN)
+				decide(pos, NO_LIGHT);
+		}
+	}
+
+	/*
+	 * Decide that field pos holds no light.
+	 */
+	private void setNoLight(int pos) {
+		if (state[pos] == OPEN)
+			decide(pos, NO_LIGHT);
+	}
+
+	private void decide(int pos, byte value) {
+		state[pos] = value;
+		segmentOpen[segments.getRowSegment(pos)]--;
+		segmentOpen[segments.getColumnSegment(pos)]--;
+		openCount--;
+		changed = true;
+	}
+
+	/**
+	 * get the decided state of a field.
+	 *
+	 * @param pos
+	 *            the linear index <code>row * dimension + col</code> of the
+	 *            field
+	 * @return one of {@link #OPEN}, {@link #LIGHT}, {@link #NO_LIGHT}
+	 */
+	public byte getState(int pos) {
+		return state[pos];
+	}
+
+	/**
+	 * check if a field is lit by one of the decided lights.
+	 *
+	 * @param pos
+	 *            the linear index of the field
+	 * @return true iff the field is not a block and one of its segments holds
+	 *         a decided light
+	 */
+	public boolean isLit(int pos) {
+		return segments.isLit(pos);
+	}
+
+	/**
+	 * check if a segment holds a decided light.
+	 *
+	 * @param seg
+	 *            the number of the segment in the board's {@link SegmentIndex}
+	 * @return true iff one field of the segment is decided to be a light
+	 */
+	public boolean hasLight(int seg) {
+		return segments.getLightCount(seg) > 0;
+	}
+
+	/**
+	 * get the number of fields which have not been decided.
+	 *
+	 * @return a non-negative integer
+	 */
+	public int getOpenCount() {
+		return openCount;
+	}
+
+	/**
+	 * check if all fields have been decided. If {@link #presolve()} succeeded,
+	 * the decided lights are then the only solution of the board.
+	 *
+	 * @return true iff no field is open
+	 */
+	public boolean isComplete() {
+		return openCount == 0;
+	}
+
+	/**
+	 * place the decided lights on a board. Other lights on the board are
+	 * removed.
+	 *
+	 * @param board
+	 *            a board with the same blocks as the analysed one
+	 */
+	public void applyTo(Lights board) {
+		board.removeAllLights();
+		for (int pos = 0; pos < state.length; pos++) {
+			if (state[pos] == LIGHT)
+				board.setLight(pos / dimension, pos % dimension);
+		}
+	}
+
+}
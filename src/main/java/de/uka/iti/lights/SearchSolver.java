@@ -0,0 +1,720 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A solver which searches the board directly instead of encoding it for a
+ * SAT solver.
+ *
+ * <p>
+ * The search is a DPLL procedure on the fields of the board. Every non-block
+ * field is open, holds a light or holds no light. Decisions place a light,
+ * backtracking replaces it by "no light". After every decision the
+ * consequences are propagated:
+ * </p>
+ * <ul>
+ * <li>A light darkens the other fields of its two segments (see
+ * {@link SegmentIndex}), they cannot hold a light.</li>
+ * <li>A field which is not lit needs a light in one of its segments. If
+ * there is no open field left there, the branch fails; if there is only one,
+ * it gets the light.</li>
+ * <li>A numbered wall with as many lights as its number darkens its other
+ * neighbours; if the open neighbours are just enough, they all get lights.</li>
+ * </ul>
+ * <p>
+ * The segments keep counters of their open fields and lights, so a field is
+ * checked in constant time. The search branches on the neighbours of the
+ * numbered wall with the fewest open neighbours first, then on an open field
+ * which can lighten the unlit field with the fewest options left (most
+ * constrained first).
+ * </p>
+ *
+ * <p>
+ * Every propagated field remembers why it has been decided. On a conflict,
+ * the decisions the conflict depends on are collected in a bit set, and the
+ * search jumps back to the latest of them (conflict-directed backjumping).
+ * The decisions in between concern independent parts of the board and would
+ * fail the same way again. Decisions with a solution in their subtree are
+ * never skipped, so every solution is found exactly once.
+ * </p>
+ *
+ * <p>
+ * After a solution, the search continues where it stopped, so no blocking
+ * clauses are needed. The search runs in the calling thread; it can be
+ * limited in time and cancelled like a {@link Solution}.
+ * </p>
+ */
+public class SearchSolver implements LightsSolver {
+
+	// the states of a field
+	private static final byte OPEN = 0;
+	private static final byte LIGHT = 1;
+	private static final byte NO_LIGHT = 2;
+	private static final byte BLOCK = 3;
+
+	// the reasons for the state of a field
+	private static final byte DECISION = 0;
+	private static final byte FLIPPED = 1;
+	private static final byte DARKENED = 2;
+	private static final byte ONLY_OPTION = 3;
+	private static final byte WALL = 4;
+
+	// the number of steps between two checks of time and cancellation
+	private static final int CHECK_INTERVAL = 1024;
+
+	// the board to place the solutions on
+	private final Lights lights;
+
+	private final int dimension;
+
+	// the state of every field
+	private final byte[] state;
+
+	// the segments of every field, -1 for blocks
+	private final int[] rowSegment;
+	private final int[] columnSegment;
+
+	// the fields of every segment
+	private final int[] segmentStart;
+	private final int[] segmentLength;
+	private final int[] segmentStride;
+
+	// the number of open fields and of lights in every segment
+	private final int[] openCount;
+	private final int[] lightCount;
+
+	// the numbered walls: the required number of lights, the counters and
+	// up to four neighbours each (-1 for none)
+	private final int[] wallNeed;
+	private final int[] wallOpen;
+	private final int[] wallLights;
+	private final int[] wallNeighbours;
+
+	// the numbered walls next to every field, four per field, -1 for none
+	private final int[] adjacentWalls;
+
+	// the fields in the order of their assignment, and the number of them
+	// whose consequences have been propagated
+	private final int[] trail;
+	private int trailSize;
+	private int propagated;
+
+	// for every assigned field: its index in the trail, its decision level
+	// (-1 before the first decision), the reason for its state and the
+	// field or wall the reason refers to
+	private final int[] trailIndex;
+	private final int[] level;
+	private final byte[] reason;
+	private final int[] reasonRef;
+
+	// the decision levels: the trail size before, the field, whether the
+	// light has already been replaced by "no light", and the decisions this
+	// replacement depends on
+	private final int[] decisionTrail;
+	private final int[] decisionField;
+	private final boolean[] decisionFlipped;
+	private final BitSet[] flipReason;
+	private int decisionCount;
+
+	// the levels below this one have had a solution in their subtree
+	private int solutionDepth;
+
+	// the decisions the last conflict depends on, null if there is none
+	private BitSet conflict;
+
+	// the work list and the marks of the conflict analysis
+	private final int[] work;
+	private final int[] seen;
+	private int stamp;
+
+	// the state of the enumeration
+	private boolean started;
+	private boolean exhausted;
+	private long solutionLimit = Long.MAX_VALUE;
+	private long solutionCount;
+
+	// the budget
+	private long timeoutMs;
+	private volatile boolean cancelled;
+
+	// statistics
+	private long decisions;
+	private long backtracks;
+
+	/**
+	 * create a new search for a board.
+	 *
+	 * @param lights
+	 *            the {@link Lights} object which contains the board with all
+	 *            walls set up. Lights on it are ignored and replaced by the
+	 *            solutions found.
+	 */
+	public SearchSolver(Lights lights) {
+		this.lights = lights;
+		this.dimension = lights.getDimension();
+		int size = dimension * dimension;
+
+		SegmentIndex segments = lights.segments();
+		int segmentCount = segments.getSegmentCount();
+		state = new byte[size];
+		rowSegment = new int[size];
+		columnSegment = new int[size];
+		segmentStart = new int[segmentCount];
+		segmentLength = new int[segmentCount];
+		segmentStride = new int[segmentCount];
+		openCount = new int[segmentCount];
+		lightCount = new int[segmentCount];
+		for (int seg = 0; seg < segmentCount; seg++) {
+			segmentStart[seg] = segments.getSegmentStart(seg);
+			segmentLength[seg] = segments.getSegmentLength(seg);
+			segmentStride[seg] = segments.getSegmentStride(seg);
+			openCount[seg] = segmentLength[seg];
+		}
+
+		int walls = 0;
+		for (int pos = 0; pos < size; pos++) {
+			byte code = lights.getLinear(pos);
+			if (Lights.isBlockCode(code)) {
+				state[pos] = BLOCK;
+				rowSegment[pos] = columnSegment[pos] = -1;
+				if (code >= Lights.CONSTRAINED_CELL)
+					walls++;
+			} else {
+				rowSegment[pos] = segments.getRowSegment(pos);
+				columnSegment[pos] = segments.getColumnSegment(pos);
+			}
+		}
+
+		wallNeed = new int[walls];
+		wallOpen = new int[walls];
+		wallLights = new int[walls];
+		wallNeighbours = new int[4 * walls];
+		adjacentWalls = new int[4 * size];
+		Arrays.fill(adjacentWalls, -1);
+		int wall = 0;
+		for (int pos = 0; pos < size; pos++) {
+			byte code = lights.getLinear(pos);
+			if (code < Lights.CONSTRAINED_CELL)
+				continue;
+			wallNeed[wall] = code - Lights.CONSTRAINED_CELL;
+			int row = pos / dimension;
+			int col = pos % dimension;
+			int k = 0;
+			k = addNeighbour(wall, k, row > 0, pos - dimension);
+			k = addNeighbour(wall, k, row < dimension - 1, pos + dimension);
+			k = addNeighbour(wall, k, col > 0, pos - 1);
+			k = addNeighbour(wall, k, col < dimension - 1, pos + 1);
+			wallOpen[wall] = k;
+			for (; k < 4; k++)
+				wallNeighbours[4 * wall + k] = -1;
+			wall++;
+		}
+
+		trail = new int[size];
+		trailIndex = new int[size];
+		level = new int[size];
+		reason = new byte[size];
+		reasonRef = new int[size];
+		decisionTrail = new int[size];
+		decisionField = new int[size];
+		decisionFlipped = new boolean[size];
+		flipReason = new BitSet[size];
+		work = new int[size];
+		seen = new int[size];
+	}
+
+	// register a non-block neighbour of a wall, return the new count
+	private int addNeighbour(int wall, int k, boolean inside, int pos) {
+		if (!inside || state[pos] == BLOCK)
+			return k;
+		wallNeighbours[4 * wall + k] = pos;
+		int slot = 4 * pos;
+		while (adjacentWalls[slot] >= 0)
+			slot++;
+		adjacentWalls[slot] = wall;
+		return k + 1;
+	}
+
+	public void setSolutionLimit(long limit) {
+		if (limit <= 0)
+			throw new IllegalArgumentException("Limit non-positive: " + limit);
+		this.solutionLimit = limit;
+	}
+
+	public long getSolutionCount() {
+		return solutionCount;
+	}
+
+	public void setTimeoutMs(long timeoutMs) {
+		if (timeoutMs < 0)
+			throw new IllegalArgumentException("Timeout negative: " + timeoutMs);
+		this.timeoutMs = timeoutMs;
+	}
+
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * get the number of decisions made so far.
+	 *
+	 * @return a non-negative number
+	 */
+	public long getDecisions() {
+		return decisions;
+	}
+
+	/**
+	 * get the number of decisions taken back so far.
+	 *
+	 * @return a non-negative number
+	 */
+	public long getBacktracks() {
+		return backtracks;
+	}
+
+	public SolveStatus trySolve() {
+		if (!started) {
+			started = true;
+			exhausted = !initialize();
+		}
+		return tryNewSolution();
+	}
+
+	public SolveStatus tryNewSolution() {
+		if (!started)
+			return trySolve();
+		if (exhausted || solutionCount >= solutionLimit)
+			return SolveStatus.UNSAT;
+		if (cancelled)
+			return SolveStatus.UNKNOWN;
+
+		long deadline = timeoutMs > 0 ? System.nanoTime() + timeoutMs
+				* 1000000 : Long.MAX_VALUE;
+		int steps = 0;
+		while (true) {
+			if (++steps % CHECK_INTERVAL == 0
+					&& (cancelled || System.nanoTime() > deadline))
+				return SolveStatus.UNKNOWN;
+
+			if (conflict != null) {
+				if (!backjump()) {
+					exhausted = true;
+					return SolveStatus.UNSAT;
+				}
+				propagate();
+				continue;
+			}
+
+			int pos = choose();
+			if (pos < 0) {
+				solutionCount++;
+				place();
+				// the next call takes back the latest decision
+				solutionDepth = decisionCount;
+				conflict = new BitSet();
+				for (int i = 0; i < decisionCount; i++) {
+					if (!decisionFlipped[i])
+						conflict.set(i);
+				}
+				return SolveStatus.SAT;
+			}
+
+			decisions++;
+			decisionTrail[decisionCount] = trailSize;
+			decisionField[decisionCount] = pos;
+			decisionFlipped[decisionCount] = false;
+			decisionCount++;
+			if (assign(pos, LIGHT, DECISION, -1))
+				propagate();
+		}
+	}
+
+	/*
+	 * check all walls and fields before the first decision. Returns false if
+	 * the board has no solution.
+	 */
+	private boolean initialize() {
+		for (int wall = 0; wall < wallNeed.length; wall++) {
+			if (!checkWall(wall))
+				return false;
+		}
+		for (int pos = 0; pos < state.length; pos++) {
+			if (state[pos] != BLOCK && !checkField(pos))
+				return false;
+		}
+		return propagate();
+	}
+
+	/*
+	 * jump back to the latest decision the conflict depends on and replace
+	 * its light by "no light". Returns false if the conflict depends on no
+	 * decision, i.e. there is no further solution.
+	 */
+	private boolean backjump() {
+		int target = conflict.length() - 1;
+		// levels with a solution below must not be skipped
+		for (int i = Math.min(solutionDepth, decisionCount) - 1; i > target; i--) {
+			if (!decisionFlipped[i]) {
+				target = i;
+				break;
+			}
+		}
+		if (target < 0)
+			return false;
+
+		// the "no light" depends on the other decisions of the conflict, or
+		// on all earlier ones if the light led to a solution
+		BitSet flip = flipReason[target];
+		if (flip == null)
+			flip = flipReason[target] = new BitSet();
+		flip.clear();
+		if (target < solutionDepth) {
+			for (int i = 0; i < target; i++) {
+				if (!decisionFlipped[i])
+					flip.set(i);
+			}
+		} else {
+			flip.or(conflict);
+			flip.clear(target, Math.max(target, flip.length()));
+		}
+		solutionDepth = Math.min(solutionDepth, target);
+
+		undo(decisionTrail[target]);
+		decisionCount = target + 1;
+		decisionFlipped[target] = true;
+		conflict = null;
+		backtracks++;
+		assign(decisionField[target], NO_LIGHT, FLIPPED, -1);
+		return true;
+	}
+
+	/*
+	 * find the field to decide on: an open neighbour of the numbered wall
+	 * with the fewest open neighbours, otherwise an open field in a segment
+	 * of the unlit field with the fewest open fields in its segments.
+	 * Returns -1 if every field is lit.
+	 */
+	private int choose() {
+		int bestWall = -1;
+		int bestOpen = Integer.MAX_VALUE;
+		for (int wall = 0; wall < wallNeed.length; wall++) {
+			if (wallOpen[wall] > 0 && wallOpen[wall] < bestOpen) {
+				bestWall = wall;
+				bestOpen = wallOpen[wall];
+			}
+		}
+		if (bestWall >= 0) {
+			for (int k = 4 * bestWall; k < 4 * bestWall + 4; k++) {
+				if (state[wallNeighbours[k]] == OPEN)
+					return wallNeighbours[k];
+			}
+		}
+
+		int best = -1;
+		int bestOptions = Integer.MAX_VALUE;
+		for (int pos = 0; pos < state.length && bestOptions > 2; pos++) {
+			if (state[pos] == BLOCK || isLit(pos))
+				continue;
+			int options = options(pos);
+			if (options < bestOptions) {
+				best = pos;
+				bestOptions = options;
+			}
+		}
+		if (best < 0)
+			return -1;
+		return state[best] == OPEN ? best : findOpen(best);
+	}
+
+	// is there a light in one of the segments of the field?
+	private boolean isLit(int pos) {
+		return lightCount[rowSegment[pos]] > 0
+				|| lightCount[columnSegment[pos]] > 0;
+	}
+
+	// the number of open fields which can lighten the field
+	private int options(int pos) {
+		int options = openCount[rowSegment[pos]]
+				+ openCount[columnSegment[pos]];
+		return state[pos] == OPEN ? options - 1 : options;
+	}
+
+	// an open field in a segment of the field, -1 if there is none
+	private int findOpen(int pos) {
+		int result = findOpenIn(rowSegment[pos]);
+		return result >= 0 ? result : findOpenIn(columnSegment[pos]);
+	}
+
+	private int findOpenIn(int seg) {
+		int stride = segmentStride[seg];
+		for (int i = 0, pos = segmentStart[seg]; i < segmentLength[seg]; i++, pos += stride) {
+			if (state[pos] == OPEN)
+				return pos;
+		}
+		return -1;
+	}
+
+	/*
+	 * assign a state to an open field for a reason and update the counters.
+	 * A light in a lit segment is refused: the conflict is recorded and false
+	 * is returned.
+	 */
+	private boolean assign(int pos, byte value, byte why, int ref) {
+		int rs = rowSegment[pos];
+		int cs = columnSegment[pos];
+		if (value == LIGHT && (lightCount[rs] > 0 || lightCount[cs] > 0)) {
+			// the reason for the light and the lights in its way
+			stamp++;
+			int count = antecedents(why, ref, pos, trailSize, 0);
+			count = addAssigned(rs, LIGHT, count);
+			analyze(addAssigned(cs, LIGHT, count));
+			return false;
+		}
+		state[pos] = value;
+		trailIndex[pos] = trailSize;
+		trail[trailSize++] = pos;
+		level[pos] = decisionCount - 1;
+		reason[pos] = why;
+		reasonRef[pos] = ref;
+		openCount[rs]--;
+		openCount[cs]--;
+		if (value == LIGHT) {
+			lightCount[rs]++;
+			lightCount[cs]++;
+		}
+		for (int slot = 4 * pos; slot < 4 * pos + 4; slot++) {
+			int wall = adjacentWalls[slot];
+			if (wall < 0)
+				break;
+			wallOpen[wall]--;
+			if (value == LIGHT)
+				wallLights[wall]++;
+		}
+		return true;
+	}
+
+	// reopen the fields assigned after the trail had the given size
+	private void undo(int size) {
+		while (trailSize > size) {
+			int pos = trail[--trailSize];
+			int rs = rowSegment[pos];
+			int cs = columnSegment[pos];
+			boolean light = state[pos] == LIGHT;
+			state[pos] = OPEN;
+			openCount[rs]++;
+			openCount[cs]++;
+			if (light) {
+				lightCount[rs]--;
+				lightCount[cs]--;
+			}
+			for (int slot = 4 * pos; slot < 4 * pos + 4; slot++) {
+				int wall = adjacentWalls[slot];
+				if (wall < 0)
+					break;
+				wallOpen[wall]++;
+				if (light)
+					wallLights[wall]--;
+			}
+		}
+		propagated = trailSize;
+	}
+
+	/*
+	 * propagate the consequences of the assignments on the trail. Returns
+	 * false on a conflict, which is recorded.
+	 */
+	private boolean propagate() {
+		while (propagated < trailSize) {
+			int pos = trail[propagated++];
+			int rs = rowSegment[pos];
+			int cs = columnSegment[pos];
+			if (state[pos] == LIGHT) {
+				darken(rs, pos);
+				darken(cs, pos);
+			} else {
+				if (lightCount[rs] == 0 && !checkSegment(rs))
+					return false;
+				if (lightCount[cs] == 0 && !checkSegment(cs))
+					return false;
+			}
+			for (int slot = 4 * pos; slot < 4 * pos + 4; slot++) {
+				int wall = adjacentWalls[slot];
+				if (wall < 0)
+					break;
+				if (!checkWall(wall))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	// no further light in the segment of a light
+	private void darken(int seg, int light) {
+		int stride = segmentStride[seg];
+		for (int i = 0, pos = segmentStart[seg]; i < segmentLength[seg]; i++, pos += stride) {
+			if (state[pos] == OPEN)
+				assign(pos, NO_LIGHT, DARKENED, light);
+		}
+	}
+
+	// check the fields of a segment without light
+	private boolean checkSegment(int seg) {
+		int stride = segmentStride[seg];
+		for (int i = 0, pos = segmentStart[seg]; i < segmentLength[seg]; i++, pos += stride) {
+			if (!checkField(pos))
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * an unlit field needs an open field in its segments, the only one gets
+	 * a light.
+	 */
+	private boolean checkField(int pos) {
+		if (isLit(pos))
+			return true;
+		int options = options(pos);
+		if (options == 0) {
+			// all fields which could have lit it hold no light
+			stamp++;
+			int count = addAssigned(rowSegment[pos], NO_LIGHT, 0);
+			analyze(addAssigned(columnSegment[pos], NO_LIGHT, count));
+			return false;
+		}
+		if (options == 1)
+			return assign(state[pos] == OPEN ? pos : findOpen(pos), LIGHT,
+					ONLY_OPTION, pos);
+		return true;
+	}
+
+	/*
+	 * a numbered wall needs exactly its number of lights among its
+	 * neighbours.
+	 */
+	private boolean checkWall(int wall) {
+		int need = wallNeed[wall];
+		int lit = wallLights[wall];
+		int open = wallOpen[wall];
+		if (lit > need || lit + open < need) {
+			stamp++;
+			analyze(antecedents(WALL, wall, -1, trailSize, 0));
+			return false;
+		}
+		if (open == 0 || (lit < need && lit + open > need))
+			return true;
+
+		byte value = lit == need ? NO_LIGHT : LIGHT;
+		for (int k = 4 * wall; k < 4 * wall + 4; k++) {
+			int pos = wallNeighbours[k];
+			if (pos < 0)
+				break;
+			if (state[pos] == OPEN && !assign(pos, value, WALL, wall))
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * put the fields which caused the state of pos on the work list: the
+	 * light which darkened it, the other fields which could have lit the
+	 * field it lights, or the other neighbours of the wall which forced it.
+	 * Only fields assigned before the trail index bound are considered.
+	 * Returns the new size of the work list.
+	 */
+	private int antecedents(byte why, int ref, int pos, int bound, int count) {
+		switch (why) {
+		case DARKENED:
+			count = push(ref, count);
+			break;
+		case ONLY_OPTION:
+			count = addBefore(rowSegment[ref], pos, bound, count);
+			count = addBefore(columnSegment[ref], pos, bound, count);
+			break;
+		case WALL:
+			for (int k = 4 * ref; k < 4 * ref + 4; k++) {
+				int other = wallNeighbours[k];
+				if (other < 0)
+					break;
+				if (other != pos && state[other] != OPEN
+						&& trailIndex[other] < bound)
+					count = push(other, count);
+			}
+			break;
+		default:
+			// decisions have no antecedents
+		}
+		return count;
+	}
+
+	// add the fields of a segment assigned before bound, except pos
+	private int addBefore(int seg, int pos, int bound, int count) {
+		int stride = segmentStride[seg];
+		for (int i = 0, p = segmentStart[seg]; i < segmentLength[seg]; i++, p += stride) {
+			if (p != pos && state[p] != OPEN && trailIndex[p] < bound)
+				count = push(p, count);
+		}
+		return count;
+	}
+
+	// add the fields of a segment in the given state
+	private int addAssigned(int seg, byte value, int count) {
+		int stride = segmentStride[seg];
+		for (int i = 0, p = segmentStart[seg]; i < segmentLength[seg]; i++, p += stride) {
+			if (state[p] == value)
+				count = push(p, count);
+		}
+		return count;
+	}
+
+	// put a field on the work list unless it has been there before
+	private int push(int pos, int count) {
+		if (seen[pos] != stamp) {
+			seen[pos] = stamp;
+			work[count++] = pos;
+		}
+		return count;
+	}
+
+	/*
+	 * collect the decisions the fields on the work list depend on into the
+	 * conflict set, following the reasons back through the trail.
+	 */
+	private void analyze(int count) {
+		conflict = new BitSet();
+		while (count > 0) {
+			int pos = work[--count];
+			int lv = level[pos];
+			if (lv < 0)
+				continue;
+			switch (reason[pos]) {
+			case DECISION:
+				conflict.set(lv);
+				break;
+			case FLIPPED:
+				conflict.or(flipReason[lv]);
+				break;
+			default:
+				count = antecedents(reason[pos], reasonRef[pos], pos,
+						trailIndex[pos], count);
+			}
+		}
+	}
+
+	// put the lights of the current assignment on the board
+	private void place() {
+		lights.removeAllLights();
+		for (int pos = 0; pos < state.length; pos++) {
+			if (state[pos] == LIGHT)
+				lights.setLight(pos / dimension, pos % dimension);
+		}
+	}
+
+}
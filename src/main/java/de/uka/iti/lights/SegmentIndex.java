@@ -0,0 +1,298 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import java.util.Arrays;
+
+/**
+ * This class splits the rows and columns of a {@link Lights} board into
+ * segments.
+ *
+ * <p>
+ * A segment is a maximal sequence of non-block fields in one row or one
+ * column. Every non-block field lies in exactly one row segment and exactly
+ * one column segment. A light illuminates precisely the fields of its two
+ * segments, hence a field is lit iff one of its segments contains a light, and
+ * two lights see each other iff they share a segment.
+ * </p>
+ *
+ * <p>
+ * Fields are addressed by their linear index <code>row * dimension + col</code>.
+ * Row segments are numbered from 0 to {@link #getRowSegmentCount()}-1 in
+ * row-major order, column segments follow in column-major order up to
+ * {@link #getSegmentCount()}-1.
+ * </p>
+ *
+ * <p>
+ * Besides the structure, the index keeps the number of lights in every
+ * segment, so {@link #isLit(int)} and {@link #isConflict(int)} take constant
+ * time. The counts start with the lights on the board at creation. Later they
+ * are kept up to date by the owner of the index through
+ * {@link #setLight(int)} and {@link #removeLight(int)}, which take constant
+ * time as well; changes of the board itself are not seen. Blocks must not
+ * change while the index is in use.
+ * </p>
+ *
+ * <p>
+ * The board does not keep an index, the classes which need one build and own
+ * it. An index is not thread-safe.
+ * </p>
+ *
+ * @see Presolver
+ */
+public class SegmentIndex {
+
+	// the height and width of the square board
+	private final int dimension;
+
+	// the row segment of every field, -1 for blocks
+	private final int[] rowSegment;
+
+	// the column segment of every field, -1 for blocks
+	private final int[] columnSegment;
+
+	// the number of row segments, column segments have higher numbers
+	private final int rowSegmentCount;
+
+	// the first field of every segment
+	private final int[] segmentStart;
+
+	// the number of fields in every segment
+	private final int[] segmentLength;
+
+	// the number of lights in every segment
+	private final int[] lightCount;
+
+	/**
+	 * create the segment index for a board. The light counters reflect the
+	 * lights currently placed on the board.
+	 *
+	 * @param lights
+	 *            the board to index
+	 */
+	public SegmentIndex(Lights lights) {
+		this.dimension = lights.getDimension();
+		int size = dimension * dimension;
+		rowSegment = new int[size];
+		columnSegment = new int[size];
+
+		// there cannot be more segments than fields in each direction
+		int[] start = new int[2 * size];
+		int[] length = new int[2 * size];
+		int count = 0;
+
+		for (int row = 0; row < dimension; row++) {
+			for (int col = 0; col < dimension; col++) {
+				int pos = row * dimension + col;
+				if (Lights.isBlockCode(lights.getLinear(pos))) {
+					rowSegment[pos] = -1;
+				} else {
+					if (col == 0 || rowSegment[pos - 1] == -1) {
+						start[count] = pos;
+						count++;
+					}
+					rowSegment[pos] = count - 1;
+					length[count - 1]++;
+				}
+			}
+		}
+		rowSegmentCount = count;
+
+		for (int col = 0; col < dimension; col++) {
+			for (int row = 0; row < dimension; row++) {
+				int pos = row * dimension + col;
+				if (rowSegment[pos] == -1) {
+					columnSegment[pos] = -1;
+				} else {
+					if (row == 0 || columnSegment[pos - dimension] == -1) {
+						start[count] = pos;
+						count++;
+					}
+					columnSegment[pos] = count - 1;
+					length[count - 1]++;
+				}
+			}
+		}
+
+		segmentStart = Arrays.copyOf(start, count);
+		segmentLength = Arrays.copyOf(length, count);
+		lightCount = new int[count];
+
+		for (int pos = 0; pos < size; pos++) {
+			if (lights.getLinear(pos) == Lights.LIGHT_CELL)
+				setLight(pos);
+		}
+	}
+
+	/**
+	 * get the width/height of the indexed board.
+	 *
+	 * @return a non-negative integer
+	 */
+	public int getDimension() {
+		return dimension;
+	}
+
+	/**
+	 * get the total number of row and column segments.
+	 *
+	 * @return a non-negative integer
+	 */
+	public int getSegmentCount() {
+		return segmentStart.length;
+	}
+
+	/**
+	 * get the number of row segments. All segments with a smaller number are
+	 * row segments, all others are column segments.
+	 *
+	 * @return a non-negative integer
+	 */
+	public int getRowSegmentCount() {
+		return rowSegmentCount;
+	}
+
+	/**
+	 * get the row segment which contains a field.
+	 *
+	 * @param pos
+	 *            the linear index of the field
+	 * @return the number of the segment, -1 if the field is a block
+	 */
+	public int getRowSegment(int pos) {
+		return rowSegment[pos];
+	}
+
+	/**
+	 * get the column segment which contains a field.
+	 *
+	 * @param pos
+	 *            the linear index of the field
+	 * @return the number of the segment, -1 if the field is a block
+	 */
+	public int getColumnSegment(int pos) {
+		return columnSegment[pos];
+	}
+
+	/**
+	 * get the linear index of the first (leftmost or topmost) field of a
+	 * segment.
+	 *
+	 * @param segment
+	 *            the number of the segment
+	 * @return the linear index of a field
+	 */
+	public int getSegmentStart(int segment) {
+		return segmentStart[segment];
+	}
+
+	/**
+	 * get the number of fields in a segment.
+	 *
+	 * @param segment
+	 *            the number of the segment
+	 * @return a positive integer
+	 */
+	public int getSegmentLength(int segment) {
+		return segmentLength[segment];
+	}
+
+	/**
+	 * get the difference between the linear indices of two consecutive fields
+	 * of a segment. This is 1 for row segments and the dimension for column
+	 * segments.
+	 *
+	 * @param segment
+	 *            the number of the segment
+	 * @return a positive integer
+	 */
+	public int getSegmentStride(int segment) {
+		return segment < rowSegmentCount ? 1 : dimension;
+	}
+
+	/**
+	 * get the number of lights placed in a segment.
+	 *
+	 * @param segment
+	 *            the number of the segment
+	 * @return a non-negative integer
+	 */
+	public int getLightCount(int segment) {
+		return lightCount[segment];
+	}
+
+	/**
+	 * check if a field is lit, i.e. if it is not a block and one of its
+	 * segments contains a light.
+	 *
+	 * @param pos
+	 *            the linear index of the field
+	 * @return true iff the field is lit
+	 */
+	public boolean isLit(int pos) {
+		int rowSeg = rowSegment[pos];
+		return rowSeg != -1
+				&& (lightCount[rowSeg] > 0 || lightCount[columnSegment[pos]] > 0);
+	}
+
+	/**
+	 * check if a field holds a light which is lit by another light.
+	 *
+	 * The field is expected to hold a light. For other fields the result is
+	 * meaningless.
+	 *
+	 * @param pos
+	 *            the linear index of the field
+	 * @return true iff one of the segments of the field contains more than
+	 *         one light
+	 */
+	public boolean isConflict(int pos) {
+		int rowSeg = rowSegment[pos];
+		return rowSeg != -1
+				&& (lightCount[rowSeg] > 1 || lightCount[columnSegment[pos]] > 1);
+	}
+
+	/**
+	 * count a light placed on a field. The field must not hold a light
+	 * already.
+	 *
+	 * @param pos
+	 *            the linear index of the field
+	 * @throws IllegalArgumentException
+	 *             if the field is a block
+	 */
+	public void setLight(int pos) {
+		int rowSeg = rowSegment[pos];
+		if (rowSeg == -1)
+			throw new IllegalArgumentException("Light on a block: " + pos);
+		lightCount[rowSeg]++;
+		lightCount[columnSegment[pos]]++;
+	}
+
+	/**
+	 * count a light removed from a field. The field must hold a light.
+	 *
+	 * @param pos
+	 *            the linear index of the field
+	 * @throws IllegalArgumentException
+	 *             if the field is a block
+	 */
+	public void removeLight(int pos) {
+		int rowSeg = rowSegment[pos];
+		if (rowSeg == -1)
+			throw new IllegalArgumentException("Light on a block: " + pos);
+		lightCount[rowSeg]--;
+		lightCount[columnSegment[pos]]--;
+	}
+
+	/**
+	 * reset the light counts of all segments to zero.
+	 */
+	public void removeAllLights() {
+		Arrays.fill(lightCount, 0);
+	}
+
+}
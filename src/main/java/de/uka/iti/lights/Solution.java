@@ -8,10 +8,25 @@ package de.uka.iti.lights;
 import org.sat4j.core.VecInt;
 import org.sat4j.minisat.SolverFactory;
 import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.IConstr;
 import org.sat4j.specs.ISolver;
+import org.sat4j.specs.ISolverService;
+import org.sat4j.specs.SearchListenerAdapter;
 import org.sat4j.specs.TimeoutException;
+import org.sat4j.tools.ModelIterator;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * <p>
@@ -22,21 +37,103 @@ import java.io.IOException;
  * <ul>
  * <li>We use a shadow index {@link #alwaysFalse} beyond the indices of the
  * board to create clauses at the edge. </li>
+ * <li>The field in row <i>r</i> and column <i>c</i> is represented by the
+ * variable <i>r</i>*dimension+<i>c</i>+1 which is true iff there is a light
+ * on the field.</li>
+ * <li>The clauses are built from the segments of the board (see
+ * {@link SegmentIndex}) rather than from pairs of fields: Every segment gets
+ * an auxiliary variable which is true iff the segment holds a light. The
+ * number of clauses is hence linear in the size of the board.</li>
+ * <li>The at-most-one constraints of the segments can be encoded in different
+ * ways, see {@link #setAtMostOneEncoding(AtMostOneEncoding)}. The numbered
+ * walls can be encoded by clauses or by native cardinality constraints, see
+ * {@link #setNativeCardinality(boolean)}.</li>
+ * <li>Before encoding, the {@link Presolver} decides the fields that follow
+ * from simple deductions. Only the remaining problem is encoded, decided
+ * fields become unit clauses. If every field is decided, no SAT call is
+ * needed at all.</li>
  * <li>This solution allows to find all solutions to a board if there is more
  * than one. To do so, it encodes the currently found solution in a single clause
  * which requires that at the next run at least one light must be placed
- * differently.</li>
+ * differently. It suffices to mention the lights of the solution in this
+ * clause: No solution can contain all lights of another solution plus an
+ * additional one, since the additional light would be lit by another
+ * light. The auxiliary variables of the encoding are never mentioned, so
+ * every solution is found once.</li>
+ * <li>Encoding and search are measured, see {@link #getMetrics()}. Listeners
+ * can follow the progress, see {@link #addListener(SolutionListener)}.</li>
+ * <li>Every SAT call can be limited in time and in the number of conflicts,
+ * and can be cancelled from another thread, see {@link #cancel()}. The
+ * methods {@link #trySolve()} and {@link #tryNewSolution()} report running
+ * out of budget as {@link SolveStatus#UNKNOWN} instead of throwing.</li>
+ * <li>For boards which are symmetric under rotations or reflections, the
+ * symmetric variants of a solution can be excluded by lex-leader clauses, see
+ * {@link #setSymmetryBreaking(boolean)}.</li>
+ * <li>For boards up to medium size, the {@link SearchSolver} without SAT
+ * solver is usually faster, see {@link LightsSolver#create(Lights)}.</li>
+ * <li>Boards which fall apart into independent components after presolving
+ * can be solved component by component, see {@link ComponentSolver}. A
+ * component is encoded with variables for its own fields only.</li>
+ * <li>A board which is edited field by field can be checked again without
+ * encoding it anew, see {@link IncrementalSolution}.</li>
  * </ul>
  * 
  * @author Mattias Ulbrich
  * @version 2008.1c
  */
-public class Solution {
+public class Solution implements LightsSolver {
 
 	/**
 	 * The cnf clauses storage before it is written to the file.
 	 */
-	private ISolver solver = SolverFactory.newDefault();
+	private final ISolver solver;
+
+	/**
+	 * The builder which adds the encoding to {@link #solver} and counts the
+	 * constraints.
+	 */
+	private final CnfBuilder cnf;
+
+	/**
+	 * The encoding used for the at-most-one constraints of the segments.
+	 */
+	private AtMostOneEncoding atMostOne = AtMostOneEncoding.PAIRWISE;
+
+	/**
+	 * Whether numbered walls are encoded by native cardinality constraints
+	 * instead of clauses.
+	 */
+	private boolean nativeCardinality;
+
+	/**
+	 * Whether the {@link Presolver} is run before encoding.
+	 */
+	private boolean presolve = true;
+
+	/**
+	 * The presolver holding the fields decided before encoding, set by
+	 * {@link #solve()}.
+	 */
+	private Presolver presolver;
+
+	/**
+	 * The components of the presolved board if only one of them is encoded,
+	 * null for the whole board. Set by the constructor for
+	 * {@link ComponentSolver}.
+	 */
+	private final Components components;
+
+	/**
+	 * The component which is encoded if {@link #components} is set.
+	 */
+	private final int component;
+
+	/**
+	 * The fields of the encoded component, null for the whole board. The
+	 * variable of field scope[i] is i+1, so the SAT solver does not see the
+	 * fields of other components at all.
+	 */
+	private final int[] scope;
 
 	/**
 	 * The Lights object we use.
@@ -56,6 +153,136 @@ public class Solution {
 	 */
 	private final int alwaysFalse;
 
+	/**
+	 * Set when the last blocking clause made the clause set unsatisfiable. No
+	 * further solutions can be found then.
+	 */
+	private boolean exhausted;
+
+	/**
+	 * The solver used for the search, either {@link #solver} or a
+	 * {@link ModelIterator} around it.
+	 */
+	private ISolver search;
+
+	/**
+	 * Whether SAT4J's {@link ModelIterator} is used to block found solutions.
+	 */
+	private boolean useModelIterator;
+
+	/**
+	 * The maximum number of solutions to find.
+	 */
+	private long solutionLimit = Long.MAX_VALUE;
+
+	/**
+	 * The number of solutions found so far.
+	 */
+	private long solutionCount;
+
+	/**
+	 * Whether {@link #solve()} has been called.
+	 */
+	private boolean started;
+
+	/**
+	 * Whether the listeners have been told that the search is finished.
+	 */
+	private boolean finished;
+
+	/**
+	 * The measurements of this solve.
+	 */
+	private final SolveMetrics metrics;
+
+	/**
+	 * The listeners informed about the progress.
+	 */
+	private final List<SolutionListener> listeners = new ArrayList<SolutionListener>();
+
+	/**
+	 * The wall clock time per SAT call in milliseconds, 0 for no limit.
+	 */
+	private long timeoutMs;
+
+	/**
+	 * Watches the search for the conflict budget and cancellation.
+	 */
+	private final Budget budget;
+
+	/**
+	 * Whether symmetric variants of solutions are excluded.
+	 */
+	private boolean symmetryBreaking;
+
+	/**
+	 * The automorphisms of the board, identity included. Only the identity
+	 * unless symmetry breaking is on.
+	 */
+	private List<Symmetry> automorphisms = Collections.singletonList(Symmetry.IDENTITY);
+
+	/**
+	 * The number of symmetric variants of the last solution found.
+	 */
+	private int orbitSize;
+
+	/**
+	 * The number of solutions represented by the solutions found so far,
+	 * i.e. the sum of their orbit sizes.
+	 */
+	private long representedCount;
+
+	/**
+	 * The SAT4J default timeout in seconds, used if no timeout is set. It is
+	 * set explicitly since the solver may be reused.
+	 */
+	private static final int NO_TIMEOUT = Integer.MAX_VALUE;
+
+	/*
+	 * Stops the search once the conflict budget is used up or the solution
+	 * is cancelled.
+	 * 
+	 * The solver's own conflict based timeout (setTimeoutOnConflicts) is not
+	 * used: expireTimeout() discards its conflict counters while the search
+	 * still uses them, so the search could not be cancelled safely. Instead,
+	 * the solver keeps a time based timeout, and this listener expires it
+	 * from within the search thread.
+	 */
+	private static class Budget extends SearchListenerAdapter<ISolverService> {
+		private static final long serialVersionUID = 1L;
+
+		// the solver to stop
+		private final transient ISolver solver;
+
+		// the conflicts allowed per SAT call, 0 for no limit
+		private int conflictBudget;
+
+		// the conflicts of the current SAT call
+		private int conflicts;
+
+		// set by cancel(), possibly from another thread
+		private volatile boolean cancelled;
+
+		Budget(ISolver solver) {
+			this.solver = solver;
+		}
+
+		public void start() {
+			conflicts = 0;
+		}
+
+		public void assuming(int literal) {
+			if (cancelled)
+				solver.expireTimeout();
+		}
+
+		public void conflictFound(IConstr confl, int dlevel, int trailLevel) {
+			conflicts++;
+			if (cancelled || (conflictBudget > 0 && conflicts >= conflictBudget))
+				solver.expireTimeout();
+		}
+	}
+
 	/**
 	 * Instantiates a new sample solution.
 	 *
@@ -64,11 +291,326 @@ public class Solution {
 	 *            walls set up (but no lights yet)
 	 */
 	public Solution(Lights lights) {
+		this(lights, SolverFactory.newDefault());
+	}
+
+	/**
+	 * Instantiates a new sample solution which reuses an existing SAT solver.
+	 * The solver is {@link ISolver#reset() reset} before it is used, so a
+	 * worker thread can keep one solver for all the boards it solves. The
+	 * solver must not be used by anyone else while this object is in use.
+	 *
+	 * @param lights
+	 *            the {@link Lights} object which contains the board with all
+	 *            walls set up (but no lights yet)
+	 * @param solver
+	 *            the solver to fill with the encoding of the board
+	 */
+	public Solution(Lights lights, ISolver solver) {
+		this(lights, solver, null, null, -1);
+	}
+
+	/**
+	 * Instantiates a solution for one component of a presolved board. Only
+	 * the constraints on the open fields of the component are encoded, the
+	 * presolver is not run again. Solutions place the lights of the
+	 * component only, the decided lights are left out.
+	 * 
+	 * @param lights
+	 *            the board, walls set up (but no lights yet)
+	 * @param presolver
+	 *            the presolver of the board after a successful presolve
+	 * @param components
+	 *            the components of the presolved board
+	 * @param component
+	 *            the number of the component to encode
+	 */
+	Solution(Lights lights, Presolver presolver, Components components,
+			int component) {
+		this(lights, SolverFactory.newDefault(), presolver, components,
+				component);
+	}
+
+	private Solution(Lights lights, ISolver solver, Presolver presolver,
+			Components components, int component) {
 		this.lights = lights;
+		this.presolver = presolver;
+		this.components = components;
+		this.component = component;
 		this.dimension = lights.getDimension();
+		this.solver = solver;
+		solver.reset();
 
 		// the index beyond the boards ensured to be false
-		alwaysFalse = dimension * dimension + 1;
+		if (components == null) {
+			scope = null;
+			alwaysFalse = dimension * dimension + 1;
+		} else {
+			scope = components.getFields(component);
+			alwaysFalse = scope.length + 1;
+		}
+
+		this.cnf = new CnfBuilder(solver);
+		this.search = solver;
+		this.metrics = new SolveMetrics(dimension);
+		this.budget = new Budget(solver);
+		solver.setSearchListener(budget);
+	}
+
+	/**
+	 * Limit the wall clock time of every SAT call. A call running out of
+	 * time raises a {@link TimeoutException} or, for {@link #trySolve()} and
+	 * {@link #tryNewSolution()}, returns {@link SolveStatus#UNKNOWN}.
+	 * 
+	 * @param timeoutMs
+	 *            the time in milliseconds, 0 (the default) for no limit
+	 * @throws IllegalArgumentException
+	 *             if the time is negative
+	 */
+	public void setTimeoutMs(long timeoutMs) {
+		if (timeoutMs < 0)
+			throw new IllegalArgumentException("Timeout negative: " + timeoutMs);
+		this.timeoutMs = timeoutMs;
+	}
+
+	/**
+	 * Limit the number of conflicts of every SAT call. A call running out of
+	 * conflicts behaves like a call running out of time.
+	 * 
+	 * @see #setTimeoutMs(long)
+	 * @param conflicts
+	 *            the number of conflicts, 0 (the default) for no limit
+	 * @throws IllegalArgumentException
+	 *             if the number is negative
+	 */
+	public void setConflictBudget(int conflicts) {
+		if (conflicts < 0)
+			throw new IllegalArgumentException("Conflicts negative: "
+					+ conflicts);
+		budget.conflictBudget = conflicts;
+	}
+
+	/**
+	 * Cancel the search. This may be called from any thread. A running SAT
+	 * call stops at its next decision or conflict, and every later call stops
+	 * right away, as if it ran out of time. Cancellation cannot be undone.
+	 */
+	public void cancel() {
+		budget.cancelled = true;
+	}
+
+	/**
+	 * Check whether {@link #cancel()} has been called.
+	 * 
+	 * @return true iff the search has been cancelled
+	 */
+	public boolean isCancelled() {
+		return budget.cancelled;
+	}
+
+	/**
+	 * Add a listener which is informed about the encoding, every solution
+	 * found and the end of the search.
+	 * 
+	 * @param listener
+	 *            the listener to add, not null
+	 */
+	public void addListener(SolutionListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Remove a listener added by {@link #addListener(SolutionListener)}.
+	 * 
+	 * @param listener
+	 *            the listener to remove
+	 */
+	public void removeListener(SolutionListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Get the measurements of this solve. The object is updated by
+	 * {@link #solve()} and {@link #newSolution()}.
+	 * 
+	 * @return the metrics, not null
+	 */
+	public SolveMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Choose whether found solutions are blocked by SAT4J's
+	 * {@link ModelIterator} instead of by a clause over the placed lights.
+	 * The iterator blocks the assignment to all fields, which is equivalent
+	 * but leads to longer clauses. Call this before {@link #solve()}.
+	 * 
+	 * @param useModelIterator
+	 *            true to use the model iterator, false (the default) to block
+	 *            the lights only
+	 */
+	public void setModelIterator(boolean useModelIterator) {
+		this.useModelIterator = useModelIterator;
+	}
+
+	/**
+	 * Set the maximum number of solutions to find. Once as many solutions have
+	 * been found, {@link #newSolution()} returns <code>false</code>. A limit of
+	 * 2 suffices to check whether a solution is unique.
+	 * 
+	 * @param limit
+	 *            a positive number, unlimited by default
+	 * @throws IllegalArgumentException
+	 *             if the limit is not positive
+	 */
+	public void setSolutionLimit(long limit) {
+		if (limit <= 0)
+			throw new IllegalArgumentException("Limit non-positive: " + limit);
+		this.solutionLimit = limit;
+	}
+
+	/**
+	 * Get the number of solutions found so far by {@link #solve()} and
+	 * {@link #newSolution()}.
+	 * 
+	 * @return a non-negative number
+	 */
+	public long getSolutionCount() {
+		return solutionCount;
+	}
+
+	/**
+	 * Choose how the at-most-one constraints of the segments are encoded.
+	 * Call this before {@link #solve()}.
+	 * 
+	 * @param encoding
+	 *            the encoding to use, {@link AtMostOneEncoding#PAIRWISE} by
+	 *            default
+	 */
+	public void setAtMostOneEncoding(AtMostOneEncoding encoding) {
+		this.atMostOne = encoding;
+	}
+
+	/**
+	 * Choose whether the numbered walls are encoded by native SAT4J
+	 * cardinality constraints ({@link ISolver#addExactly}) instead of
+	 * clauses. Call this before {@link #solve()}.
+	 * 
+	 * @param nativeCardinality
+	 *            true to use native constraints, false (the default) to use
+	 *            clauses
+	 */
+	public void setNativeCardinality(boolean nativeCardinality) {
+		this.nativeCardinality = nativeCardinality;
+	}
+
+	/**
+	 * Choose whether the board is presolved before encoding. Call this before
+	 * {@link #solve()}.
+	 * 
+	 * @param presolve
+	 *            true (the default) to run the {@link Presolver}, false to
+	 *            encode the full board
+	 */
+	public void setPresolve(boolean presolve) {
+		this.presolve = presolve;
+	}
+
+	/**
+	 * Choose whether symmetric variants of solutions are excluded. The
+	 * automorphisms of the board among the eight symmetries of the square
+	 * (see {@link Symmetry#automorphisms(Lights)}) are detected, and for each
+	 * of them a lex-leader constraint requires that the assignment of the
+	 * fields is lexicographically not larger than its image. Only the
+	 * lexicographically smallest solution of each orbit remains, so the
+	 * enumeration yields one representative per orbit, see
+	 * {@link #getOrbitSize()}. Call this before {@link #solve()}.
+	 * 
+	 * @param symmetryBreaking
+	 *            true to exclude symmetric variants, false (the default) to
+	 *            find every solution
+	 */
+	public void setSymmetryBreaking(boolean symmetryBreaking) {
+		this.symmetryBreaking = symmetryBreaking;
+	}
+
+	/**
+	 * Get the automorphisms of the board used for symmetry breaking.
+	 * 
+	 * @return an unmodifiable list of the symmetries which map the board onto
+	 *         itself, identity included. Only the identity if symmetry
+	 *         breaking is off. Valid after {@link #solve()}.
+	 */
+	public List<Symmetry> getAutomorphisms() {
+		return Collections.unmodifiableList(automorphisms);
+	}
+
+	/**
+	 * Get the number of distinct solutions which are symmetric variants of the
+	 * solution on the board, the solution itself included.
+	 * 
+	 * @return a divisor of the number of automorphisms, 1 if symmetry
+	 *         breaking is off. Valid after a solution has been found.
+	 */
+	public int getOrbitSize() {
+		return orbitSize;
+	}
+
+	/**
+	 * Get the number of solutions represented by the solutions found so far.
+	 * This is the sum of their orbit sizes. With symmetry breaking, this is
+	 * the number of solutions the enumeration would have found without it.
+	 * 
+	 * @return a number not below {@link #getSolutionCount()}
+	 */
+	public long getRepresentedCount() {
+		return representedCount;
+	}
+
+	/**
+	 * Get the number of fields without block which have been decided by the
+	 * {@link Presolver}.
+	 * 
+	 * @return a non-negative integer, valid after {@link #solve()}
+	 */
+	public int getPresolvedCount() {
+		if (presolver == null)
+			return 0;
+		int fields = 0;
+		for (int pos = 0; pos < dimension * dimension; pos++) {
+			if (!Lights.isBlockCode(lights.getLinear(pos)))
+				fields++;
+		}
+		return fields - presolver.getOpenCount();
+	}
+
+	/**
+	 * Get the number of variables of the encoding: one per field, the
+	 * {@link #alwaysFalse} variable and all auxiliary variables.
+	 * 
+	 * @return a positive integer, valid after {@link #solve()}
+	 */
+	public int getVariableCount() {
+		return alwaysFalse + cnf.getAuxiliaryCount();
+	}
+
+	/**
+	 * Get the number of clauses of the encoding. Clauses added by
+	 * {@link #newSolution()} are not counted.
+	 * 
+	 * @return a non-negative integer, valid after {@link #solve()}
+	 */
+	public int getClauseCount() {
+		return cnf.getClauseCount();
+	}
+
+	/**
+	 * Get the number of native cardinality constraints of the encoding.
+	 * 
+	 * @return a non-negative integer, valid after {@link #solve()}
+	 */
+	public int getCardinalityCount() {
+		return cnf.getCardinalityCount();
 	}
 
 	/**
@@ -84,16 +626,406 @@ public class Solution {
 	 */
 	public boolean solve() throws IOException, InterruptedException, ContradictionException, TimeoutException {
 
-		// Add a clause that alwaysFalse is false
-
-		// 1. Make clauses that make sure everything is properly lit
+		if (!encode()) {
+			// the clause set may be incomplete, never search it
+			exhausted = true;
+			finish();
+			return false;
+		}
 
-		// 2. light constraints
+		if (presolve && presolver.isComplete()) {
+			// the decided lights are the only solution
+			presolver.applyTo(lights);
+			exhausted = true;
+			solutionCount++;
+			countOrbit();
+			metrics.solutionFound(0);
+			for (SolutionListener listener : listeners)
+				listener.solutionFound(lights, metrics);
+			return true;
+		}
 
 		// 3. Interpret results
 		return newSolution();
 	}
 
+	/**
+	 * Presolve the board and add its encoding to the solver. This is the first
+	 * part of {@link #solve()}, separated for benchmarks and measurements.
+	 * 
+	 * @return <code>false</code> if the board is found to have no solution
+	 *         already, <code>true</code> otherwise (including the case that the
+	 *         presolver decided every field)
+	 */
+	boolean encode() {
+		long start = System.nanoTime();
+		boolean result = encodeBoard();
+		metrics.encoded(System.nanoTime() - start, getPresolvedCount(), cnf,
+				getVariableCount());
+		for (SolutionListener listener : listeners)
+			listener.encoded(metrics);
+		return result;
+	}
+
+	/*
+	 * The encoding, see encode(). The constraints are counted by kind: fixed
+	 * fields, at-most-one per segment, definition of the segment literals,
+	 * lit fields and numbered walls.
+	 */
+	private boolean encodeBoard() {
+
+		started = true;
+		solver.newVar(alwaysFalse);
+		if (symmetryBreaking)
+			automorphisms = Symmetry.automorphisms(lights);
+		if (useModelIterator)
+			search = new ModelIterator(solver);
+
+		// Decide what follows by simple deductions. Without presolving, only
+		// the blocks are decided. A component uses the presolver it has been
+		// given.
+		if (components == null) {
+			presolver = new Presolver(lights);
+			if (presolve) {
+				if (!presolver.presolve())
+					return false;
+				if (presolver.isComplete())
+					return true;
+			}
+		}
+
+		SegmentIndex segments = presolver.getSegments();
+		try {
+			// Add a clause that alwaysFalse is false
+			cnf.setKind("fixed");
+			cnf.addClause(-alwaysFalse);
+
+			// 0. There are no lights on blocks, decided fields are fixed. A
+			// component does not mention decided fields at all.
+			for (int pos = 0; components == null && pos < dimension * dimension; pos++) {
+				byte state = presolver.getState(pos);
+				if (state == Presolver.NO_LIGHT)
+					cnf.addClause(-variable(pos));
+				else if (state == Presolver.LIGHT)
+					cnf.addClause(variable(pos));
+			}
+
+			// 1. Make clauses that make sure everything is properly lit
+			// (segments with a decided light light all their fields)
+			int[] segmentLit = new int[segments.getSegmentCount()];
+			boolean[] encoded = encodedSegments(segments);
+			for (int seg = 0; seg < segmentLit.length; seg++) {
+				if (encoded[seg])
+					segmentLit[seg] = encodeSegment(segments, seg);
+				else
+					segmentLit[seg] = alwaysFalse;
+			}
+
+			cnf.setKind("lit");
+			int[] region = region(segments, encoded);
+			for (int pos : region) {
+				int rowSeg = segments.getRowSegment(pos);
+				if (rowSeg != -1 && !presolver.isLit(pos)) {
+					cnf.addClause(segmentLit[rowSeg],
+							segmentLit[segments.getColumnSegment(pos)]);
+				}
+			}
+
+			// 2. light constraints
+			cnf.setKind("wall");
+			for (int pos : region) {
+				int row = pos / dimension;
+				int col = pos % dimension;
+				if (lights.isConstrainedBlock(row, col)) {
+					encodeConstraint(row, col);
+				}
+			}
+
+			// 3. symmetry breaking
+			cnf.setKind("symmetry");
+			for (Symmetry symmetry : automorphisms) {
+				if (symmetry != Symmetry.IDENTITY)
+					encodeLexLeader(symmetry);
+			}
+		} catch (ContradictionException e) {
+			// the clauses are trivially unsatisfiable
+			return false;
+		}
+
+		return true;
+	}
+
+	/*
+	 * The segments whose constraints are encoded: all segments without
+	 * decided light, or the segments of the fields of the component.
+	 */
+	private boolean[] encodedSegments(SegmentIndex segments) {
+		boolean[] encoded = new boolean[segments.getSegmentCount()];
+		if (scope == null) {
+			for (int seg = 0; seg < encoded.length; seg++)
+				encoded[seg] = !presolver.hasLight(seg);
+		} else {
+			for (int pos : scope) {
+				encoded[segments.getRowSegment(pos)] = true;
+				encoded[segments.getColumnSegment(pos)] = true;
+			}
+		}
+		return encoded;
+	}
+
+	/*
+	 * The fields whose constraints are encoded, in row-major order: the whole
+	 * board, or the fields of the encoded segments and the walls next to the
+	 * component. All unlit fields which depend on the component lie in its
+	 * segments, so a component is encoded in time linear in its region.
+	 */
+	private int[] region(SegmentIndex segments, boolean[] encoded) {
+		if (scope == null) {
+			int[] all = new int[dimension * dimension];
+			for (int pos = 0; pos < all.length; pos++)
+				all[pos] = pos;
+			return all;
+		}
+
+		BitSet region = new BitSet(dimension * dimension);
+		for (int seg = 0; seg < encoded.length; seg++) {
+			if (!encoded[seg])
+				continue;
+			int stride = segments.getSegmentStride(seg);
+			int start = segments.getSegmentStart(seg);
+			for (int i = 0; i < segments.getSegmentLength(seg); i++)
+				region.set(start + i * stride);
+		}
+		for (int pos : scope) {
+			int row = pos / dimension;
+			int col = pos % dimension;
+			int[] neighbours = { neighbour(row - 1, col),
+					neighbour(row + 1, col), neighbour(row, col - 1),
+					neighbour(row, col + 1) };
+			for (int neighbour : neighbours) {
+				if (neighbour != -1 && segments.getRowSegment(neighbour) == -1)
+					region.set(neighbour);
+			}
+		}
+		return region.stream().toArray();
+	}
+
+	/*
+	 * Encode one segment without decided light: At most one of the open
+	 * fields of the segment is a light. The returned literal is true iff the
+	 * segment holds a light.
+	 */
+	private int encodeSegment(SegmentIndex segments, int seg)
+			throws ContradictionException {
+		int stride = segments.getSegmentStride(seg);
+		int[] fields = new int[segments.getSegmentLength(seg)];
+		int length = 0;
+		for (int i = 0, pos = segments.getSegmentStart(seg); i < fields.length; i++, pos += stride) {
+			if (presolver.getState(pos) == Presolver.OPEN)
+				fields[length++] = variable(pos);
+		}
+
+		if (length == 0)
+			return alwaysFalse;
+		fields = Arrays.copyOf(fields, length);
+
+		// at most one light
+		cnf.setKind("atMostOne");
+		atMostOne.encode(cnf, fields);
+
+		if (length == 1)
+			return fields[0];
+
+		// lit <-> fields[0] | ... | fields[length-1]
+		cnf.setKind("segment");
+		int lit = cnf.newVariable();
+		VecInt clause = new VecInt(length + 1);
+		clause.push(-lit);
+		for (int field : fields) {
+			clause.push(field);
+			cnf.addClause(-field, lit);
+		}
+		cnf.addClause(clause);
+		return lit;
+	}
+
+	/*
+	 * Encode that exactly k of the neighbours of the numbered wall at row, col
+	 * are lights. Decided neighbours are replaced by alwaysFalse, decided
+	 * lights are subtracted from k.
+	 */
+	private void encodeConstraint(int row, int col)
+			throws ContradictionException {
+		int[] positions = {
+				neighbour(row - 1, col), neighbour(row + 1, col),
+				neighbour(row, col - 1), neighbour(row, col + 1) };
+		int[] neighbours = new int[positions.length];
+		int k = lights.getBlockConstraint(row, col);
+		boolean open = false;
+		for (int i = 0; i < positions.length; i++) {
+			neighbours[i] = alwaysFalse;
+			if (positions[i] == -1)
+				continue;
+			byte state = presolver.getState(positions[i]);
+			if (state == Presolver.LIGHT)
+				k--;
+			if (state == Presolver.OPEN) {
+				open = true;
+				neighbours[i] = variable(positions[i]);
+			}
+		}
+
+		if (k < 0)
+			throw new ContradictionException("too many lights at " + row
+					+ ", " + col);
+		if (!open && k == 0)
+			return;
+
+		if (nativeCardinality) {
+			// cardinality constraints must not contain duplicates, so leave
+			// out the edge
+			int[] onBoard = new int[neighbours.length];
+			int count = 0;
+			for (int neighbour : neighbours) {
+				if (neighbour != alwaysFalse)
+					onBoard[count++] = neighbour;
+			}
+			cnf.addExactly(Arrays.copyOf(onBoard, count), k);
+		} else {
+			addExactly(neighbours, k);
+		}
+	}
+
+	/*
+	 * Encode that exactly k of the given literals are true. There are at most
+	 * four literals, hence all subsets can be enumerated: Every subset of size
+	 * k+1 contains a false literal, every subset of size n-k+1 a true one.
+	 */
+	private void addExactly(int[] literals, int k) throws ContradictionException {
+		int n = literals.length;
+		for (int subset = 0; subset < (1 << n); subset++) {
+			int size = Integer.bitCount(subset);
+			if (size == k + 1)
+				addSubsetClause(literals, subset, -1);
+			if (size == n - k + 1)
+				addSubsetClause(literals, subset, 1);
+		}
+	}
+
+	/*
+	 * Add the clause over the literals selected by the bits of subset, each
+	 * multiplied by sign.
+	 */
+	private void addSubsetClause(int[] literals, int subset, int sign)
+			throws ContradictionException {
+		VecInt clause = new VecInt(literals.length);
+		for (int i = 0; i < literals.length; i++) {
+			if ((subset & (1 << i)) != 0)
+				clause.push(sign * literals[i]);
+		}
+		cnf.addClause(clause);
+	}
+
+	/*
+	 * Encode that the assignment x of the fields is lexicographically not
+	 * larger than its image y under the symmetry, with y[pos] =
+	 * x[symmetry(pos)]. An auxiliary variable e is true if x and y are equal
+	 * on the positions compared before:
+	 * 
+	 * e(i-1) -> (x[i] -> y[i]) and e(i-1) & x[i] = y[i] -> e(i).
+	 * 
+	 * Positions which cannot make a difference are left out: fixed points,
+	 * pairs of decided fields with equal state, and the second position of a
+	 * swapped pair, which is equal once the first one is.
+	 */
+	private void encodeLexLeader(Symmetry symmetry)
+			throws ContradictionException {
+		int cells = dimension * dimension;
+		int[] positions = new int[cells];
+		int count = 0;
+		for (int pos = 0; pos < cells; pos++) {
+			int image = symmetry.map(pos, dimension);
+			byte state = presolver.getState(pos);
+			if (image == pos
+					|| (image < pos && symmetry.map(image, dimension) == pos)
+					|| (state != Presolver.OPEN && state == presolver
+							.getState(image)))
+				continue;
+			positions[count++] = pos;
+		}
+
+		// 0 stands for the (always true) equality of the empty prefix
+		int equal = 0;
+		for (int i = 0; i < count; i++) {
+			int x = variable(positions[i]);
+			int y = variable(symmetry.map(positions[i], dimension));
+			if (equal == 0)
+				cnf.addClause(-x, y);
+			else
+				cnf.addClause(-equal, -x, y);
+			if (i == count - 1)
+				break;
+
+			int next = cnf.newVariable();
+			if (equal == 0) {
+				cnf.addClause(-x, -y, next);
+				cnf.addClause(x, y, next);
+			} else {
+				cnf.addClause(-equal, -x, -y, next);
+				cnf.addClause(-equal, x, y, next);
+			}
+			equal = next;
+		}
+	}
+
+	/*
+	 * Determine the orbit size of the solution on the board: the number of
+	 * automorphisms divided by the number of those which leave the lights in
+	 * place.
+	 */
+	private void countOrbit() {
+		int stabilizer = 0;
+		for (Symmetry symmetry : automorphisms) {
+			boolean fixed = true;
+			for (int row = 0; row < dimension && fixed; row++) {
+				for (int col = 0; col < dimension && fixed; col++) {
+					if (lights.isLight(row, col))
+						fixed = lights.isLight(
+								symmetry.mapRow(row, col, dimension),
+								symmetry.mapColumn(row, col, dimension));
+				}
+			}
+			if (fixed)
+				stabilizer++;
+		}
+		orbitSize = automorphisms.size() / stabilizer;
+		representedCount += orbitSize;
+	}
+
+	/*
+	 * The linear index of a field, or -1 if the field is beyond the board.
+	 */
+	private int neighbour(int row, int col) {
+		if (row < 0 || row >= dimension || col < 0 || col >= dimension)
+			return -1;
+		return row * dimension + col;
+	}
+
+	/*
+	 * The variable of the field with the linear index pos. Within a
+	 * component, only its open fields have variables.
+	 */
+	private int variable(int pos) {
+		return scope == null ? pos + 1 : components.getIndex(pos) + 1;
+	}
+
+	/*
+	 * The field of a variable, the inverse of variable(int).
+	 */
+	private int field(int variable) {
+		return scope == null ? variable - 1 : scope[variable - 1];
+	}
+
 	/**
 	 * Find a solution for the given set of clauses.
 	 * 
@@ -118,27 +1050,226 @@ public class Solution {
 	 */
 	public boolean newSolution() throws IOException, InterruptedException, TimeoutException, ContradictionException {
 
-		if(!solver.isSatisfiable()) {
+		if (exhausted || solutionCount >= solutionLimit) {
+			finish();
 			return false;
 		}
 
+		if (budget.cancelled)
+			throw new TimeoutException("Search cancelled");
+		if (timeoutMs > 0)
+			solver.setTimeoutMs(timeoutMs);
+		else
+			solver.setTimeout(NO_TIMEOUT);
+
+		long start = System.nanoTime();
+		boolean satisfiable;
+		try {
+			satisfiable = search.isSatisfiable();
+		} catch (TimeoutException e) {
+			metrics.timedOut(System.nanoTime() - start);
+			metrics.statistics(search.getStat());
+			throw e;
+		}
+		metrics.searched(System.nanoTime() - start, satisfiable);
+		metrics.statistics(search.getStat());
+		if (!satisfiable) {
+			finish();
+			return false;
+		}
+		solutionCount++;
+
+		// The model covers only the field variables and alwaysFalse, the
+		// auxiliary variables are internal. The model iterator blocks the
+		// model when it is retrieved.
+		int[] model = search.model();
+
 		lights.removeAllLights();
 		// set all lights from the model available via solver.model() or solver.model(int)
+		VecInt blocking = new VecInt();
+		for (int literal : model) {
+			if (literal > 0 && literal != alwaysFalse) {
+				int pos = field(literal);
+				lights.setLight(pos / dimension, pos % dimension);
+				blocking.push(-literal);
+			}
+		}
+		countOrbit();
 
 		// add clause to avoid same model again
+		if (!useModelIterator) {
+			try {
+				solver.addClause(blocking);
+			} catch (ContradictionException e) {
+				exhausted = true;
+			}
+		}
 
+		for (SolutionListener listener : listeners)
+			listener.solutionFound(lights, metrics);
 		return true;
 	}
+
+	/*
+	 * Tell the listeners once that no further solution will be found.
+	 */
+	private void finish() {
+		if (finished)
+			return;
+		finished = true;
+		for (SolutionListener listener : listeners)
+			listener.finished(metrics);
+	}
+
+	/**
+	 * Find a solution like {@link #solve()}, but report running out of time
+	 * or conflicts and cancellation as a result. After
+	 * {@link SolveStatus#UNKNOWN}, the search can be resumed by
+	 * {@link #tryNewSolution()}.
+	 * 
+	 * @return the outcome of the search, not null
+	 */
+	public SolveStatus trySolve() {
+		try {
+			return solve() ? SolveStatus.SAT : SolveStatus.UNSAT;
+		} catch (TimeoutException e) {
+			return SolveStatus.UNKNOWN;
+		} catch (IOException | InterruptedException | ContradictionException e) {
+			// not raised by the encoding, see solve()
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Find a further solution like {@link #newSolution()}, but report running
+	 * out of time or conflicts and cancellation as a result.
+	 * 
+	 * @return the outcome of the search, not null
+	 */
+	public SolveStatus tryNewSolution() {
+		try {
+			return newSolution() ? SolveStatus.SAT : SolveStatus.UNSAT;
+		} catch (TimeoutException e) {
+			return SolveStatus.UNKNOWN;
+		} catch (IOException | InterruptedException | ContradictionException e) {
+			// not raised by the encoding, see solve()
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Enumerate the solutions of the board lazily.
+	 * 
+	 * The iterator calls {@link #solve()} for the first solution unless it has
+	 * been called before, and {@link #newSolution()} for every further one.
+	 * Each solution is returned as a copy of the board, the board itself holds
+	 * the last solution found. The enumeration ends at the solution limit.
+	 * 
+	 * @see #setSolutionLimit(long)
+	 * @return an iterator over copies of the board with the lights of one
+	 *         solution each
+	 * @throws IllegalStateException
+	 *             (from the iterator) if the solver fails or times out
+	 */
+	public Iterator<Lights> solutions() {
+		return new Iterator<Lights>() {
+			// the next solution, null if not yet searched
+			private Lights next;
+			private boolean done;
+
+			public boolean hasNext() {
+				if (next == null && !done) {
+					try {
+						if (started ? newSolution() : solve())
+							next = lights.clone();
+						else
+							done = true;
+					} catch (Exception e) {
+						throw new IllegalStateException("Search failed", e);
+					}
+				}
+				return next != null;
+			}
+
+			public Lights next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				Lights result = next;
+				next = null;
+				return result;
+			}
+		};
+	}
+
+	/**
+	 * Enumerate the solutions of the board lazily as a sequential stream.
+	 * 
+	 * @see #solutions()
+	 * @return a stream of copies of the board with the lights of one solution
+	 *         each
+	 */
+	public Stream<Lights> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+				solutions(), Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
 	
+	/**
+	 * Check whether a board has exactly one solution.
+	 * 
+	 * The board is encoded once. After the first solution, the search is
+	 * continued with the blocking clause for that solution, hence there are
+	 * at most two SAT calls. The given board is not modified.
+	 * 
+	 * @param lights
+	 *            the board to check, lights on it are ignored
+	 * @return the verdict together with up to two solutions
+	 * @throws TimeoutException
+	 *             if the SAT solver times out
+	 */
+	public static Uniqueness isUnique(Lights lights) throws TimeoutException {
+		Lights board = lights.clone();
+		board.removeAllLights();
+		Solution solution = new Solution(board);
+		solution.setSolutionLimit(2);
+
+		try {
+			if (!solution.solve())
+				return new Uniqueness(Uniqueness.Verdict.NONE, null, null);
+			Lights first = board.clone();
+			if (!solution.newSolution())
+				return new Uniqueness(Uniqueness.Verdict.UNIQUE, first, null);
+			return new Uniqueness(Uniqueness.Verdict.MULTIPLE, first, board);
+		} catch (IOException | InterruptedException | ContradictionException e) {
+			// not raised by the encoding, see solve()
+			throw new IllegalStateException(e);
+		}
+	}
+
 	public static void main(String[] args) throws Exception {
 
+		if (args.length > 0 && args[0].equals("--batch")) {
+			BatchSolver.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
+		if (args.length > 0 && args[0].equals("--generate")) {
+			Generator.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
 		try {
 			Lights lights = new Lights(args[0]);
 			lights.toConsole();
 			lights.showWindow();
 
 			Solution solver = new Solution(lights);
-			if(solver.solve()) {
+			if (args.length > 1)
+				solver.setAtMostOneEncoding(AtMostOneEncoding.valueOf(args[1]
+						.toUpperCase()));
+			boolean solved = solver.solve();
+			System.out.println("Encoding: " + solver.getVariableCount()
+					+ " variables, " + solver.getClauseCount() + " clauses");
+			if(solved) {
 				do {
 					lights.showWindow();
 					lights.toConsole();
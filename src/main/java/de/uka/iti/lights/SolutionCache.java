@@ -0,0 +1,556 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.TimeoutException;
+
+/**
+ * A bounded cache of solved boards.
+ *
+ * <p>
+ * The cache maps the description of a board without lights (see
+ * {@link Lights#toBoardString()}) to the {@link Uniqueness} verdict of the
+ * board and up to two solutions as description strings. When the cache is
+ * full, the least recently used board is evicted.
+ * </p>
+ *
+ * <p>
+ * {@link #solve(Lights)} searches for a single solution only. Its entries
+ * hold that solution without a verdict; the verdict is added by the first
+ * {@link #isUnique(Lights)} for the board.
+ * </p>
+ *
+ * <p>
+ * In {@link #setCanonical(boolean) canonical} mode, a board is stored under
+ * its {@link Symmetry#canonicalForm(Lights) canonical form}, so rotations and
+ * reflections of a board share one entry. Entries always hold the solutions
+ * of the board described by their key; they are mapped to and from the
+ * orientation of the board at hand.
+ * </p>
+ *
+ * <p>
+ * All methods are thread-safe. The SAT search of {@link #isUnique(Lights)}
+ * runs without holding the lock, so two threads may solve the same board at
+ * the same time; the second result simply replaces the first, unless only
+ * the first one has a verdict.
+ * </p>
+ *
+ * <p>
+ * The content can be saved to a file and loaded again via a memory mapping,
+ * so a cache survives restarts of the JVM. The file holds the entries from
+ * the least to the most recently used one.
+ * </p>
+ */
+public class SolutionCache {
+
+	/**
+	 * A cached result.
+	 */
+	public static class Entry {
+		private final Uniqueness.Verdict verdict;
+		private final String[] solutions;
+
+		/**
+		 * create a new entry.
+		 *
+		 * @param verdict
+		 *            the verdict of the board, null if the board has not been
+		 *            checked for uniqueness
+		 * @param solutions
+		 *            the description strings of the solutions, as many as
+		 *            the verdict requires (0, 1 or 2), one for a null verdict
+		 */
+		public Entry(Uniqueness.Verdict verdict, String... solutions) {
+			this.verdict = verdict;
+			this.solutions = solutions.clone();
+		}
+
+		/**
+		 * get the verdict of the board.
+		 *
+		 * @return the verdict, null if the entry holds a solution only
+		 */
+		public Uniqueness.Verdict getVerdict() {
+			return verdict;
+		}
+
+		/**
+		 * get the solutions of the board.
+		 *
+		 * @return an unmodifiable list of description strings
+		 */
+		public List<String> getSolutions() {
+			return Collections.unmodifiableList(Arrays.asList(solutions));
+		}
+
+		/**
+		 * create the uniqueness result of this entry.
+		 *
+		 * @return a new result with fresh boards as witnesses
+		 * @throws IllegalStateException
+		 *             if the entry has no verdict
+		 */
+		public Uniqueness toUniqueness() {
+			if (verdict == null)
+				throw new IllegalStateException("No verdict");
+			try {
+				Lights first = solutions.length > 0 ? new Lights(solutions[0])
+						: null;
+				Lights second = solutions.length > 1 ? new Lights(solutions[1])
+						: null;
+				return new Uniqueness(verdict, first, second);
+			} catch (LightsFormatException e) {
+				// only strings from Lights.toString() are stored
+				throw new IllegalStateException(e);
+			}
+		}
+
+		/**
+		 * create the entry of the image of the board under a symmetry.
+		 *
+		 * @param symmetry
+		 *            the symmetry to apply to the solutions
+		 * @return an entry with the transformed solutions
+		 */
+		public Entry transform(Symmetry symmetry) {
+			if (symmetry == Symmetry.IDENTITY)
+				return this;
+			String[] transformed = new String[solutions.length];
+			try {
+				for (int i = 0; i < solutions.length; i++) {
+					transformed[i] = symmetry.apply(new Lights(solutions[i]))
+							.toString();
+				}
+			} catch (LightsFormatException e) {
+				// only strings from Lights.toString() are stored
+				throw new IllegalStateException(e);
+			}
+			return new Entry(verdict, transformed);
+		}
+	}
+
+	// the magic number at the beginning of a cache file ("LUC1")
+	private static final int MAGIC = 0x4C554331;
+
+	// the maximum number of entries
+	private final int capacity;
+
+	// the entries, in access order
+	private final LinkedHashMap<String, Entry> entries;
+
+	// whether boards are stored under their canonical form
+	private volatile boolean canonical;
+
+	// statistics
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * create an empty cache.
+	 *
+	 * @param capacity
+	 *            the maximum number of boards to keep, positive
+	 */
+	public SolutionCache(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity non-positive: "
+					+ capacity);
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if (size() > SolutionCache.this.capacity) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * choose whether boards are stored under their canonical form, so that
+	 * rotated and mirrored boards share entries.
+	 *
+	 * @param canonical
+	 *            true to canonicalize, false (the default) to use the board
+	 *            description as it is
+	 */
+	public void setCanonical(boolean canonical) {
+		this.canonical = canonical;
+	}
+
+	/**
+	 * check whether boards are stored under their canonical form.
+	 *
+	 * @return true iff canonical mode is on
+	 */
+	public boolean isCanonical() {
+		return canonical;
+	}
+
+	/**
+	 * look up a board.
+	 *
+	 * @param lights
+	 *            the board, lights on it are ignored
+	 * @return the cached entry with solutions of this board, null if the
+	 *         board is not in the cache
+	 */
+	public Entry get(Lights lights) {
+		if (!canonical)
+			return get(lights.toBoardString());
+
+		StringBuilder key = new StringBuilder();
+		Symmetry symmetry = Symmetry.canonical(lights, key);
+		Entry entry = get(key.toString());
+		return entry == null ? null : entry.transform(symmetry.inverse());
+	}
+
+	/**
+	 * look up a board by its description.
+	 *
+	 * @param key
+	 *            the description of the board without lights
+	 * @return the cached entry, null if the board is not in the cache
+	 */
+	public synchronized Entry get(String key) {
+		Entry entry = entries.get(key);
+		if (entry == null)
+			misses++;
+		else
+			hits++;
+		return entry;
+	}
+
+	/**
+	 * store the result of a uniqueness check.
+	 *
+	 * @param lights
+	 *            the board, lights on it are ignored
+	 * @param uniqueness
+	 *            the result for the board
+	 */
+	public void put(Lights lights, Uniqueness uniqueness) {
+		put(lights, toEntry(uniqueness));
+	}
+
+	/**
+	 * store an entry for a board.
+	 *
+	 * @param lights
+	 *            the board, lights on it are ignored
+	 * @param entry
+	 *            the result with solutions of this board
+	 */
+	public void put(Lights lights, Entry entry) {
+		if (!canonical) {
+			put(lights.toBoardString(), entry);
+		} else {
+			StringBuilder key = new StringBuilder();
+			Symmetry symmetry = Symmetry.canonical(lights, key);
+			put(key.toString(), entry.transform(symmetry));
+		}
+	}
+
+	// the entry holding a uniqueness result
+	private static Entry toEntry(Uniqueness uniqueness) {
+		List<String> solutions = new ArrayList<String>(2);
+		if (uniqueness.getFirst() != null)
+			solutions.add(uniqueness.getFirst().toString());
+		if (uniqueness.getSecond() != null)
+			solutions.add(uniqueness.getSecond().toString());
+		return new Entry(uniqueness.getVerdict(),
+				solutions.toArray(new String[solutions.size()]));
+	}
+
+	/**
+	 * store an entry. An entry without verdict does not replace an entry
+	 * with one, which may have been stored by a uniqueness check in the
+	 * meantime.
+	 *
+	 * @param key
+	 *            the description of the board without lights
+	 * @param entry
+	 *            the result for the board
+	 */
+	public synchronized void put(String key, Entry entry) {
+		if (entry.verdict == null) {
+			Entry old = entries.get(key);
+			if (old != null && old.verdict != null)
+				return;
+		}
+		entries.put(key, entry);
+	}
+
+	/**
+	 * check whether a board has exactly one solution, answered from the
+	 * cache if possible.
+	 *
+	 * @see Solution#isUnique(Lights)
+	 * @param lights
+	 *            the board to check, it is not modified
+	 * @return the verdict together with up to two solutions
+	 * @throws TimeoutException
+	 *             if the SAT solver times out, nothing is cached then
+	 */
+	public Uniqueness isUnique(Lights lights) throws TimeoutException {
+		Entry entry = get(lights);
+		if (entry != null && entry.getVerdict() != null)
+			return entry.toUniqueness();
+
+		Uniqueness result = Solution.isUnique(lights);
+		put(lights, result);
+		return result;
+	}
+
+	/**
+	 * solve a board, answered from the cache if possible. On a miss only one
+	 * solution is searched for, so uniqueness is not checked.
+	 *
+	 * @param lights
+	 *            the board to solve, a solution is placed on it
+	 * @return true iff the board has a solution
+	 * @throws TimeoutException
+	 *             if the SAT solver times out, nothing is cached then
+	 */
+	public boolean solve(Lights lights) throws TimeoutException {
+		Entry entry = get(lights);
+		lights.removeAllLights();
+		if (entry == null) {
+			boolean solved;
+			try {
+				solved = new Solution(lights).solve();
+			} catch (IOException | InterruptedException | ContradictionException e) {
+				// not raised by the encoding, see Solution.solve()
+				throw new IllegalStateException(e);
+			}
+			if (solved)
+				put(lights, new Entry(null, lights.toString()));
+			else
+				put(lights, new Entry(Uniqueness.Verdict.NONE));
+			return solved;
+		}
+
+		List<String> solutions = entry.getSolutions();
+		if (solutions.isEmpty())
+			return false;
+		Lights first;
+		try {
+			first = new Lights(solutions.get(0));
+		} catch (LightsFormatException e) {
+			// only strings from Lights.toString() are stored
+			throw new IllegalStateException(e);
+		}
+		int dimension = first.getDimension();
+		for (int row = 0; row < dimension; row++) {
+			for (int col = 0; col < dimension; col++) {
+				if (first.isLight(row, col))
+					lights.setLight(row, col);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * get the maximum number of entries.
+	 *
+	 * @return the capacity passed to the constructor
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * get the number of entries.
+	 *
+	 * @return a non-negative integer not above the capacity
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * get the number of lookups which found an entry.
+	 *
+	 * @return a non-negative number
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * get the number of lookups which found no entry.
+	 *
+	 * @return a non-negative number
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * get the number of entries removed to make room for new ones.
+	 *
+	 * @return a non-negative number
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * remove all entries. The statistics are kept.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * save the entries to a file, replacing its content.
+	 *
+	 * @param file
+	 *            the file to write
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public synchronized void save(Path file) throws IOException {
+		List<byte[]> strings = new ArrayList<byte[]>();
+		long size = 8;
+		for (Map.Entry<String, Entry> e : entries.entrySet()) {
+			byte[] key = e.getKey().getBytes(StandardCharsets.US_ASCII);
+			strings.add(key);
+			size += 2 + 4 + key.length;
+			for (String solution : e.getValue().solutions) {
+				byte[] bytes = solution.getBytes(StandardCharsets.US_ASCII);
+				strings.add(bytes);
+				size += 4 + bytes.length;
+			}
+		}
+		if (size > Integer.MAX_VALUE)
+			throw new IOException("Cache too large for a single mapping: "
+					+ size + " bytes");
+
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,
+					0, size);
+			buffer.putInt(MAGIC).putInt(entries.size());
+			int next = 0;
+			for (Entry entry : entries.values()) {
+				buffer.put((byte) (entry.verdict == null ? -1 : entry.verdict
+						.ordinal()));
+				buffer.put((byte) entry.solutions.length);
+				for (int i = 0; i <= entry.solutions.length; i++) {
+					byte[] bytes = strings.get(next++);
+					buffer.putInt(bytes.length).put(bytes);
+				}
+			}
+			buffer.force();
+		}
+	}
+
+	/**
+	 * load a cache saved by {@link #save(Path)}. If the file holds more
+	 * entries than the capacity, the least recently used ones are dropped.
+	 *
+	 * @param file
+	 *            the file to read
+	 * @param capacity
+	 *            the capacity of the new cache
+	 * @return a new cache
+	 * @throws IOException
+	 *             if the file cannot be read or is no cache file
+	 */
+	public static SolutionCache load(Path file, int capacity)
+			throws IOException {
+		SolutionCache cache = new SolutionCache(capacity);
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Not a cache file: " + file);
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+			if (buffer.remaining() < 8 || buffer.getInt() != MAGIC)
+				throw new IOException("Not a cache file: " + file);
+			int count = buffer.getInt();
+			Uniqueness.Verdict[] verdicts = Uniqueness.Verdict.values();
+			for (int i = 0; i < count; i++) {
+				int verdict = buffer.get();
+				int solutionCount = buffer.get();
+				if (verdict < -1 || verdict >= verdicts.length
+						|| solutionCount < 0 || solutionCount > 2)
+					throw new IOException("Corrupt cache file: " + file);
+				String key = readString(buffer);
+				String[] solutions = new String[solutionCount];
+				for (int j = 0; j < solutionCount; j++) {
+					solutions[j] = readString(buffer);
+				}
+				cache.entries.put(key, new Entry(verdict < 0 ? null
+						: verdicts[verdict], solutions));
+			}
+			// loading is no eviction
+			cache.evictions = 0;
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			throw new IOException("Corrupt cache file: " + file, e);
+		}
+		return cache;
+	}
+
+	// read a length-prefixed ASCII string
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining())
+			throw new BufferUnderflowException();
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * load a cache if the file exists, otherwise create an empty one.
+	 *
+	 * @see #load(Path, int)
+	 * @param file
+	 *            the file to read, if it exists
+	 * @param capacity
+	 *            the capacity of the new cache
+	 * @return a new cache
+	 * @throws IOException
+	 *             if the file exists but cannot be read
+	 */
+	public static SolutionCache loadIfExists(Path file, int capacity)
+			throws IOException {
+		if (Files.exists(file))
+			return load(file, capacity);
+		return new SolutionCache(capacity);
+	}
+
+	public synchronized String toString() {
+		return "SolutionCache[size=" + entries.size() + ", capacity="
+				+ capacity + ", hits=" + hits + ", misses=" + misses
+				+ ", evictions=" + evictions + "]";
+	}
+
+}
@@ -0,0 +1,52 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+/**
+ * A listener which is informed about the progress of a {@link Solution}.
+ *
+ * <p>
+ * The methods are called in the thread which runs the solution. All of them
+ * do nothing by default, so implementations override only what they need.
+ * The metrics passed are the live object of the solution and must not be
+ * kept beyond the call if a snapshot is needed.
+ * </p>
+ *
+ * @see Solution#addListener(SolutionListener)
+ */
+public interface SolutionListener {
+
+	/**
+	 * called after the board has been presolved and encoded.
+	 *
+	 * @param metrics
+	 *            the metrics of the solve so far
+	 */
+	default void encoded(SolveMetrics metrics) {
+	}
+
+	/**
+	 * called after a solution has been placed on the board.
+	 *
+	 * @param lights
+	 *            the board holding the solution
+	 * @param metrics
+	 *            the metrics of the solve so far
+	 */
+	default void solutionFound(Lights lights, SolveMetrics metrics) {
+	}
+
+	/**
+	 * called when no further solution is found, i.e. the board has no
+	 * (further) solution or the solution limit is reached.
+	 *
+	 * @param metrics
+	 *            the final metrics of the solve
+	 */
+	default void finished(SolveMetrics metrics) {
+	}
+
+}
@@ -0,0 +1,338 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measurements taken while a {@link Solution} solves one board.
+ *
+ * <p>
+ * The metrics cover the encoding (time, variables and constraints, counted
+ * per kind of constraint), the SAT calls (time to the first solution and
+ * to every further one) and the statistics of the SAT4J solver (conflicts,
+ * decisions, propagations, ...) as reported by
+ * {@link org.sat4j.specs.ISolver#getStat()}.
+ * </p>
+ *
+ * <p>
+ * The object is filled while the search proceeds and is handed to the
+ * {@link SolutionListener}s of the solution. All times are in nanoseconds.
+ * </p>
+ *
+ * @see Solution#getMetrics()
+ */
+public class SolveMetrics {
+
+	// the dimension of the board
+	private final int dimension;
+
+	// the number of fields decided by the presolver
+	private int presolvedFields;
+
+	// the time for presolving and encoding
+	private long encodingNanos;
+
+	// the number of variables, including auxiliary ones
+	private int variables;
+
+	// the number of clauses of the encoding
+	private int clauses;
+
+	// the number of native cardinality constraints of the encoding
+	private int cardinalityConstraints;
+
+	// constraints and auxiliary variables per kind
+	private Map<String, Integer> constraintsByKind = Collections.emptyMap();
+	private Map<String, Integer> variablesByKind = Collections.emptyMap();
+
+	// the time of the SAT call which found the first solution, -1 if none
+	private long firstSolutionNanos = -1;
+
+	// the times of the SAT calls which found further solutions
+	private final List<Long> additionalSolutionNanos = new ArrayList<Long>();
+
+	// the number of SAT calls and their total time
+	private int satCalls;
+	private long searchNanos;
+
+	// the number of SAT calls which ran out of budget
+	private int timeouts;
+
+	// the number of solutions found
+	private long solutions;
+
+	// the last snapshot of the solver statistics
+	private Map<String, Number> solverStatistics = Collections.emptyMap();
+
+	/**
+	 * create empty metrics for a board.
+	 *
+	 * @param dimension
+	 *            the dimension of the board
+	 */
+	SolveMetrics(int dimension) {
+		this.dimension = dimension;
+	}
+
+	/*
+	 * record the end of the encoding.
+	 */
+	void encoded(long nanos, int presolvedFields, CnfBuilder cnf, int variables) {
+		this.encodingNanos = nanos;
+		this.presolvedFields = presolvedFields;
+		this.variables = variables;
+		this.clauses = cnf.getClauseCount();
+		this.cardinalityConstraints = cnf.getCardinalityCount();
+		this.constraintsByKind = new LinkedHashMap<String, Integer>(
+				cnf.getConstraintsByKind());
+		this.variablesByKind = new LinkedHashMap<String, Integer>(
+				cnf.getVariablesByKind());
+	}
+
+	/*
+	 * record a SAT call. A call without solution only adds to the search
+	 * time.
+	 */
+	void searched(long nanos, boolean found) {
+		satCalls++;
+		searchNanos += nanos;
+		if (found)
+			solutionFound(nanos);
+	}
+
+	/*
+	 * record a SAT call which ran out of time or conflicts.
+	 */
+	void timedOut(long nanos) {
+		satCalls++;
+		searchNanos += nanos;
+		timeouts++;
+	}
+
+	/*
+	 * record a solution found after the given time.
+	 */
+	void solutionFound(long nanos) {
+		if (solutions == 0)
+			firstSolutionNanos = nanos;
+		else
+			additionalSolutionNanos.add(nanos);
+		solutions++;
+	}
+
+	/*
+	 * record the current solver statistics.
+	 */
+	void statistics(Map<String, Number> statistics) {
+		this.solverStatistics = new LinkedHashMap<String, Number>(statistics);
+	}
+
+	/**
+	 * get the dimension of the board.
+	 *
+	 * @return a positive integer
+	 */
+	public int getDimension() {
+		return dimension;
+	}
+
+	/**
+	 * get the number of fields decided before encoding.
+	 *
+	 * @return a non-negative integer
+	 */
+	public int getPresolvedFields() {
+		return presolvedFields;
+	}
+
+	/**
+	 * get the time for presolving and encoding the board.
+	 *
+	 * @return the time in nanoseconds
+	 */
+	public long getEncodingNanos() {
+		return encodingNanos;
+	}
+
+	/**
+	 * get the number of variables of the encoding.
+	 *
+	 * @return a positive integer
+	 */
+	public int getVariables() {
+		return variables;
+	}
+
+	/**
+	 * get the number of clauses of the encoding. Blocking clauses are not
+	 * counted.
+	 *
+	 * @return a non-negative integer
+	 */
+	public int getClauses() {
+		return clauses;
+	}
+
+	/**
+	 * get the number of native cardinality constraints of the encoding.
+	 *
+	 * @return a non-negative integer
+	 */
+	public int getCardinalityConstraints() {
+		return cardinalityConstraints;
+	}
+
+	/**
+	 * get the number of clauses and cardinality constraints per kind.
+	 *
+	 * @return an unmodifiable map from kinds to counts
+	 * @see CnfBuilder#setKind(String)
+	 */
+	public Map<String, Integer> getConstraintsByKind() {
+		return Collections.unmodifiableMap(constraintsByKind);
+	}
+
+	/**
+	 * get the number of auxiliary variables per kind.
+	 *
+	 * @return an unmodifiable map from kinds to counts
+	 */
+	public Map<String, Integer> getVariablesByKind() {
+		return Collections.unmodifiableMap(variablesByKind);
+	}
+
+	/**
+	 * get the time of the SAT call which found the first solution.
+	 *
+	 * @return the time in nanoseconds, 0 if the presolver found the
+	 *         solution, -1 if no solution has been found
+	 */
+	public long getFirstSolutionNanos() {
+		return firstSolutionNanos;
+	}
+
+	/**
+	 * get the times of the SAT calls which found the second, third, ...
+	 * solution.
+	 *
+	 * @return an unmodifiable list of times in nanoseconds
+	 */
+	public List<Long> getAdditionalSolutionNanos() {
+		return Collections.unmodifiableList(additionalSolutionNanos);
+	}
+
+	/**
+	 * get the number of SAT calls, including the final unsuccessful one.
+	 *
+	 * @return a non-negative integer
+	 */
+	public int getSatCalls() {
+		return satCalls;
+	}
+
+	/**
+	 * get the number of SAT calls which ran out of time or conflicts or were
+	 * cancelled.
+	 *
+	 * @return a non-negative integer
+	 */
+	public int getTimeouts() {
+		return timeouts;
+	}
+
+	/**
+	 * get the total time of all SAT calls.
+	 *
+	 * @return the time in nanoseconds
+	 */
+	public long getSearchNanos() {
+		return searchNanos;
+	}
+
+	/**
+	 * get the number of solutions found.
+	 *
+	 * @return a non-negative number
+	 */
+	public long getSolutions() {
+		return solutions;
+	}
+
+	/**
+	 * get the statistics of the SAT solver after the last SAT call.
+	 *
+	 * @return an unmodifiable map as returned by
+	 *         {@link org.sat4j.specs.ISolver#getStat()}, empty if the solver
+	 *         has not been called
+	 */
+	public Map<String, Number> getSolverStatistics() {
+		return Collections.unmodifiableMap(solverStatistics);
+	}
+
+	/**
+	 * write the metrics as a JSON object.
+	 *
+	 * @return a single line JSON object
+	 */
+	public String toJson() {
+		StringBuilder sb = new StringBuilder();
+		appendJson(sb);
+		return sb.toString();
+	}
+
+	/**
+	 * append the metrics as a JSON object.
+	 *
+	 * @param sb
+	 *            the builder to append to
+	 * @return sb
+	 */
+	StringBuilder appendJson(StringBuilder sb) {
+		sb.append('{');
+		Json.appendMember(sb, "dimension", dimension);
+		Json.appendMember(sb, "presolvedFields", presolvedFields);
+		Json.appendMember(sb, "encodingNanos", encodingNanos);
+		Json.appendMember(sb, "variables", variables);
+		Json.appendMember(sb, "clauses", clauses);
+		Json.appendMember(sb, "cardinalityConstraints", cardinalityConstraints);
+		appendObject(sb, "constraintsByKind", constraintsByKind);
+		appendObject(sb, "variablesByKind", variablesByKind);
+		Json.appendMember(sb, "solutions", solutions);
+		Json.appendMember(sb, "satCalls", satCalls);
+		Json.appendMember(sb, "searchNanos", searchNanos);
+		Json.appendMember(sb, "timeouts", timeouts);
+		Json.appendMember(sb, "firstSolutionNanos", firstSolutionNanos);
+		sb.append(",\"additionalSolutionNanos\":[");
+		for (int i = 0; i < additionalSolutionNanos.size(); i++) {
+			if (i > 0)
+				sb.append(',');
+			sb.append(additionalSolutionNanos.get(i));
+		}
+		sb.append(']');
+		appendObject(sb, "solver", solverStatistics);
+		return sb.append('}');
+	}
+
+	private static void appendObject(StringBuilder sb, String key,
+			Map<String, ? extends Number> map) {
+		sb.append(',');
+		Json.appendString(sb, key).append(":{");
+		for (Map.Entry<String, ? extends Number> entry : map.entrySet()) {
+			Json.appendMember(sb, entry.getKey(), entry.getValue());
+		}
+		sb.append('}');
+	}
+
+	public String toString() {
+		return toJson();
+	}
+
+}
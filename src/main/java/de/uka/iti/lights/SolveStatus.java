@@ -0,0 +1,21 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+/**
+ * The outcome of a search which may run out of time.
+ *
+ * @see Solution#trySolve()
+ * @see Solution#tryNewSolution()
+ */
+public enum SolveStatus {
+	/** a (further) solution has been placed on the board */
+	SAT,
+	/** there is no (further) solution, or the solution limit is reached */
+	UNSAT,
+	/** the search ran out of time or conflicts, or has been cancelled */
+	UNKNOWN
+}
@@ -0,0 +1,305 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The eight symmetries of the square.
+ *
+ * <p>
+ * The rules of Light Up do not depend on the orientation of the board: A
+ * rotated or mirrored board has the rotated or mirrored solutions. The
+ * numbers of walls stay valid since neighbours remain neighbours.
+ * </p>
+ *
+ * <p>
+ * A symmetry moves the field in row <i>r</i> and column <i>c</i> to
+ * {@link #mapRow(int, int, int)}, {@link #mapColumn(int, int, int)}. The
+ * {@link #canonical(Lights) canonical} symmetry of a board is the one which
+ * yields the lexicographically smallest description, so boards which are
+ * rotations or reflections of each other have the same
+ * {@link #canonicalForm(Lights) canonical form}.
+ * </p>
+ */
+public enum Symmetry {
+
+	/** leaves every field in place */
+	IDENTITY {
+		int row(int row, int col, int last) {
+			return row;
+		}
+
+		int column(int row, int col, int last) {
+			return col;
+		}
+	},
+
+	/** rotates clockwise by 90 degrees */
+	ROTATE_90 {
+		int row(int row, int col, int last) {
+			return col;
+		}
+
+		int column(int row, int col, int last) {
+			return last - row;
+		}
+	},
+
+	/** rotates by 180 degrees */
+	ROTATE_180 {
+		int row(int row, int col, int last) {
+			return last - row;
+		}
+
+		int column(int row, int col, int last) {
+			return last - col;
+		}
+	},
+
+	/** rotates clockwise by 270 degrees */
+	ROTATE_270 {
+		int row(int row, int col, int last) {
+			return last - col;
+		}
+
+		int column(int row, int col, int last) {
+			return row;
+		}
+	},
+
+	/** mirrors left and right */
+	MIRROR_COLUMNS {
+		int row(int row, int col, int last) {
+			return row;
+		}
+
+		int column(int row, int col, int last) {
+			return last - col;
+		}
+	},
+
+	/** mirrors top and bottom */
+	MIRROR_ROWS {
+		int row(int row, int col, int last) {
+			return last - row;
+		}
+
+		int column(int row, int col, int last) {
+			return col;
+		}
+	},
+
+	/** mirrors at the main diagonal */
+	TRANSPOSE {
+		int row(int row, int col, int last) {
+			return col;
+		}
+
+		int column(int row, int col, int last) {
+			return row;
+		}
+	},
+
+	/** mirrors at the anti-diagonal */
+	ANTI_TRANSPOSE {
+		int row(int row, int col, int last) {
+			return last - col;
+		}
+
+		int column(int row, int col, int last) {
+			return last - row;
+		}
+	};
+
+	/*
+	 * the row of the image of the field at row, col. last is the largest
+	 * index, i.e. the dimension - 1.
+	 */
+	abstract int row(int row, int col, int last);
+
+	/*
+	 * the column of the image of the field at row, col.
+	 */
+	abstract int column(int row, int col, int last);
+
+	/**
+	 * get the row a field is moved to.
+	 *
+	 * @param row
+	 *            the row of the field
+	 * @param col
+	 *            the column of the field
+	 * @param dimension
+	 *            the dimension of the board
+	 * @return the row of the image of the field
+	 */
+	public int mapRow(int row, int col, int dimension) {
+		return row(row, col, dimension - 1);
+	}
+
+	/**
+	 * get the column a field is moved to.
+	 *
+	 * @param row
+	 *            the row of the field
+	 * @param col
+	 *            the column of the field
+	 * @param dimension
+	 *            the dimension of the board
+	 * @return the column of the image of the field
+	 */
+	public int mapColumn(int row, int col, int dimension) {
+		return column(row, col, dimension - 1);
+	}
+
+	/**
+	 * get the linear index (<i>row</i>*dimension+<i>col</i>) a field is moved
+	 * to.
+	 *
+	 * @param pos
+	 *            the linear index of the field
+	 * @param dimension
+	 *            the dimension of the board
+	 * @return the linear index of the image of the field
+	 */
+	public int map(int pos, int dimension) {
+		int row = pos / dimension;
+		int col = pos % dimension;
+		int last = dimension - 1;
+		return row(row, col, last) * dimension + column(row, col, last);
+	}
+
+	/**
+	 * get the symmetry which undoes this one.
+	 *
+	 * @return the inverse symmetry
+	 */
+	public Symmetry inverse() {
+		switch (this) {
+		case ROTATE_90:
+			return ROTATE_270;
+		case ROTATE_270:
+			return ROTATE_90;
+		default:
+			// all others are reflections or their own inverse
+			return this;
+		}
+	}
+
+	/**
+	 * create the image of a board under this symmetry, lights included.
+	 *
+	 * @param lights
+	 *            the board to transform, it is not modified
+	 * @return a new board
+	 */
+	public Lights apply(Lights lights) {
+		return lights.transform(this);
+	}
+
+	/**
+	 * describe the image of a board under this symmetry without creating
+	 * it. Lights on the board are ignored.
+	 *
+	 * @param lights
+	 *            the board
+	 * @return the same as <code>apply(lights).toBoardString()</code>
+	 */
+	public String describe(Lights lights) {
+		StringBuilder sb = new StringBuilder();
+		lights.appendDescription(sb, this, false);
+		return sb.toString();
+	}
+
+	/**
+	 * find the automorphisms of a board: the symmetries which map every
+	 * wall onto an equal wall. Lights on the board are ignored. The
+	 * automorphisms form a group, so the result always contains
+	 * {@link #IDENTITY} and the inverse of every element.
+	 *
+	 * @param lights
+	 *            the board
+	 * @return the automorphisms in declaration order
+	 */
+	public static List<Symmetry> automorphisms(Lights lights) {
+		List<Symmetry> result = new ArrayList<Symmetry>();
+		result.add(IDENTITY);
+		String board = lights.toBoardString();
+		StringBuilder sb = new StringBuilder(board.length());
+		for (Symmetry symmetry : values()) {
+			if (symmetry == IDENTITY)
+				continue;
+			sb.setLength(0);
+			if (lights.appendDescription(sb, symmetry, false, board)
+					&& board.contentEquals(sb))
+				result.add(symmetry);
+		}
+		return result;
+	}
+
+	/**
+	 * find the symmetry which maps a board to its canonical form. Lights on
+	 * the board are ignored. If several symmetries yield the canonical form,
+	 * i.e. the board is symmetric, the first one in declaration order is
+	 * returned.
+	 *
+	 * @param lights
+	 *            the board
+	 * @return the symmetry whose image has the lexicographically smallest
+	 *         description
+	 */
+	public static Symmetry canonical(Lights lights) {
+		return canonical(lights, new StringBuilder());
+	}
+
+	/**
+	 * get the canonical form of a board: the lexicographically smallest
+	 * description of its eight images. Lights on the board are ignored.
+	 *
+	 * @param lights
+	 *            the board
+	 * @return a description string, equal for all rotations and reflections
+	 *         of the board
+	 */
+	public static String canonicalForm(Lights lights) {
+		StringBuilder best = new StringBuilder();
+		canonical(lights, best);
+		return best.toString();
+	}
+
+	/*
+	 * find the canonical symmetry and leave the canonical form in best. Two
+	 * builders are reused for all candidates instead of cloning the board,
+	 * and a candidate is given up as soon as it exceeds the best one.
+	 */
+	static Symmetry canonical(Lights lights, StringBuilder out) {
+		Symmetry result = IDENTITY;
+		StringBuilder best = out;
+		best.setLength(0);
+		lights.appendDescription(best, IDENTITY, false);
+		StringBuilder candidate = new StringBuilder(best.length());
+		for (Symmetry symmetry : values()) {
+			if (symmetry == IDENTITY)
+				continue;
+			candidate.setLength(0);
+			if (lights.appendDescription(candidate, symmetry, false, best)
+					&& candidate.compareTo(best) < 0) {
+				result = symmetry;
+				StringBuilder swap = best;
+				best = candidate;
+				candidate = swap;
+			}
+		}
+		if (best != out) {
+			out.setLength(0);
+			out.append(best);
+		}
+		return result;
+	}
+
+}
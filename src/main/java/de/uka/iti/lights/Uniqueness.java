@@ -0,0 +1,111 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+/**
+ * The result of a uniqueness check of a {@link Lights} board.
+ *
+ * <p>
+ * The result tells whether the board has no, exactly one or more than one
+ * solution. It holds up to two solutions as witnesses.
+ * </p>
+ *
+ * @see Solution#isUnique(Lights)
+ */
+public class Uniqueness {
+
+	/**
+	 * The possible outcomes of a uniqueness check.
+	 */
+	public enum Verdict {
+		/** the board has no solution */
+		NONE,
+		/** the board has exactly one solution */
+		UNIQUE,
+		/** the board has more than one solution */
+		MULTIPLE
+	}
+
+	// the outcome
+	private final Verdict verdict;
+
+	// the first solution found, null for NONE
+	private final Lights first;
+
+	// the second solution found, null unless MULTIPLE
+	private final Lights second;
+
+	/**
+	 * create a new result.
+	 *
+	 * @param verdict
+	 *            the outcome of the check
+	 * @param first
+	 *            a solution, null iff the verdict is {@link Verdict#NONE}
+	 * @param second
+	 *            a solution different from the first one, null unless the
+	 *            verdict is {@link Verdict#MULTIPLE}
+	 */
+	public Uniqueness(Verdict verdict, Lights first, Lights second) {
+		this.verdict = verdict;
+		this.first = first;
+		this.second = second;
+	}
+
+	/**
+	 * get the outcome of the check.
+	 *
+	 * @return the verdict, not null
+	 */
+	public Verdict getVerdict() {
+		return verdict;
+	}
+
+	/**
+	 * check if the board has exactly one solution.
+	 *
+	 * @return true iff the verdict is {@link Verdict#UNIQUE}
+	 */
+	public boolean isUnique() {
+		return verdict == Verdict.UNIQUE;
+	}
+
+	/**
+	 * get the first solution found.
+	 *
+	 * @return a copy of the board with the lights of a solution, null if the
+	 *         board has no solution
+	 */
+	public Lights getFirst() {
+		return first;
+	}
+
+	/**
+	 * get a second solution different from {@link #getFirst()}.
+	 *
+	 * @return a copy of the board with the lights of a solution, null unless
+	 *         the board has more than one solution
+	 */
+	public Lights getSecond() {
+		return second;
+	}
+
+	/**
+	 * describe the result by the verdict and the description strings of the
+	 * witnesses.
+	 *
+	 * @return a string like <code>MULTIPLE 5:... 5:...</code>
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder(verdict.name());
+		if (first != null)
+			sb.append(' ').append(first);
+		if (second != null)
+			sb.append(' ').append(second);
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,111 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class checks whether the lights on a board form a solution.
+ *
+ * <p>
+ * The check is independent of the SAT encoding and of the
+ * {@link SegmentIndex} of the board. It takes a {@link Bitboard} of the
+ * board, which finds the unlit fields, the lights which see each other and
+ * the violated numbered blocks 64 fields at a time, and reports the fields
+ * of these masks. This takes time linear in the number of fields, so it is
+ * cheap enough to double-check every answer of the solver.
+ * </p>
+ *
+ * <p>
+ * Violations are reported in row-major order. A light which is lit by
+ * another light is reported once, even if it conflicts in both directions.
+ * </p>
+ */
+public final class Verifier {
+
+	// flags per field
+	private static final byte LIT = 1;
+	private static final byte CONFLICT = 2;
+
+	private Verifier() {
+	}
+
+	/**
+	 * check whether the lights on a board form a solution.
+	 *
+	 * @param lights
+	 *            the board to check, it is not modified
+	 * @return true iff all three rules of the puzzle hold
+	 */
+	public static boolean isValid(Lights lights) {
+		return verify(lights) == null;
+	}
+
+	/**
+	 * find the first violation of the rules on a board.
+	 *
+	 * @param lights
+	 *            the board to check, it is not modified
+	 * @return the first violation in row-major order, null if the lights
+	 *         form a solution
+	 */
+	public static Violation verify(Lights lights) {
+		return check(lights, null);
+	}
+
+	/**
+	 * find all violations of the rules on a board.
+	 *
+	 * @param lights
+	 *            the board to check, it is not modified
+	 * @return the violations in row-major order, empty if the lights form a
+	 *         solution
+	 */
+	public static List<Violation> verifyAll(Lights lights) {
+		List<Violation> result = new ArrayList<Violation>();
+		check(lights, result);
+		return result;
+	}
+
+	/*
+	 * check the board. If all is null, the first violation is returned,
+	 * otherwise all violations are added to it and null is returned.
+	 */
+	private static Violation check(Lights lights, List<Violation> all) {
+		Bitboard board = new Bitboard(lights);
+		int dimension = board.getDimension();
+		int words = board.getWordsPerRow();
+		for (int row = 0; row < dimension; row++) {
+			for (int word = 0; word < words; word++) {
+				long unlit = board.getFreeMask(row, word)
+						& ~board.getLitMask(row, word);
+				long conflict = board.getConflictMask(row, word);
+				long violated = board.getViolatedMask(row, word);
+				long mask = unlit | conflict | violated;
+				while (mask != 0) {
+					long bit = mask & -mask;
+					mask ^= bit;
+					Violation.Kind kind;
+					if ((violated & bit) != 0)
+						kind = Violation.Kind.CONSTRAINT;
+					else if ((unlit & bit) != 0)
+						kind = Violation.Kind.UNLIT;
+					else
+						kind = Violation.Kind.CONFLICT;
+
+					int col = word * 64 + Long.numberOfTrailingZeros(bit);
+					Violation violation = new Violation(kind, row, col);
+					if (all == null)
+						return violation;
+					all.add(violation);
+				}
+			}
+		}
+		return null;
+	}
+
+}
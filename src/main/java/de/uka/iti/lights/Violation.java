@@ -0,0 +1,99 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+/**
+ * A field of a {@link Lights} board which breaks one of the rules of the
+ * puzzle.
+ *
+ * @see Verifier
+ */
+public class Violation {
+
+	/**
+	 * The rules of the puzzle.
+	 */
+	public enum Kind {
+		/** an empty field is not lit by any light */
+		UNLIT,
+		/** a light is lit by another light */
+		CONFLICT,
+		/** a numbered block has a different number of adjacent lights */
+		CONSTRAINT
+	}
+
+	// the broken rule
+	private final Kind kind;
+
+	// the position of the offending field
+	private final int row;
+	private final int col;
+
+	/**
+	 * create a new violation.
+	 *
+	 * @param kind
+	 *            the broken rule
+	 * @param row
+	 *            the row of the offending field
+	 * @param col
+	 *            the column of the offending field
+	 */
+	public Violation(Kind kind, int row, int col) {
+		this.kind = kind;
+		this.row = row;
+		this.col = col;
+	}
+
+	/**
+	 * get the broken rule.
+	 *
+	 * @return the kind, not null
+	 */
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * get the row of the offending field: the empty field, the light or the
+	 * block.
+	 *
+	 * @return the index of the row (0 .. dimension-1)
+	 */
+	public int getRow() {
+		return row;
+	}
+
+	/**
+	 * get the column of the offending field.
+	 *
+	 * @return the index of the column (0 .. dimension-1)
+	 */
+	public int getColumn() {
+		return col;
+	}
+
+	/**
+	 * describe the violation.
+	 *
+	 * @return a string like <code>UNLIT at 2, 3</code>
+	 */
+	public String toString() {
+		return kind + " at " + row + ", " + col;
+	}
+
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Violation))
+			return false;
+		Violation other = (Violation) obj;
+		return kind == other.kind && row == other.row && col == other.col;
+	}
+
+	public int hashCode() {
+		return (kind.ordinal() * 31 + row) * 31 + col;
+	}
+
+}
@@ -0,0 +1,187 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class BatchSolverTest {
+
+	// the top row split by a block, four solutions
+	private static final String FOUR_SOLUTIONS;
+
+	static {
+		Lights lights = new Lights(5);
+		for (int row = 0; row < 5; row++) {
+			for (int col = 0; col < 5; col++) {
+				if (row > 0 || col == 2)
+					lights.setBlock(row, col);
+			}
+		}
+		FOUR_SOLUTIONS = lights.toString();
+	}
+
+	private static String run(BatchSolver batch, String input)
+			throws Exception {
+		StringWriter out = new StringWriter();
+		batch.run(new BufferedReader(new StringReader(input)), out);
+		return out.toString();
+	}
+
+	// the CSV lines without header and without the timing columns
+	private static List<String> rows(String csv) {
+		List<String> rows = new ArrayList<String>();
+		String[] lines = csv.split("\n");
+		assertEquals("line,status,solutions,solution,millis,firstMillis,error",
+				lines[0]);
+		for (int i = 1; i < lines.length; i++) {
+			String[] columns = lines[i].split(",", 7);
+			assertEquals(7, columns.length, lines[i]);
+			assertTrue(columns[4].matches("\\d+\\.\\d{3}"), lines[i]);
+			assertTrue(columns[5].matches("\\d+\\.\\d{3}"), lines[i]);
+			rows.add(columns[0] + "," + columns[1] + "," + columns[2] + ","
+					+ columns[3] + "," + columns[6]);
+		}
+		return rows;
+	}
+
+	// random boards with comments, blank and malformed lines in between
+	private static String input(long seed, int count) {
+		Random random = new Random(seed);
+		StringBuilder sb = new StringBuilder("# boards\n");
+		for (int i = 0; i < count; i++) {
+			if (i % 10 == 0)
+				sb.append("\n");
+			if (i % 25 == 0)
+				sb.append("3:x\n");
+			sb.append(LightsSolverTest.puzzle(random, 2 + random.nextInt(8)))
+					.append('\n');
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void csv() throws Exception {
+		// a number without neighbours to light
+		Lights unsolvable = new Lights(1);
+		unsolvable.setBlockConstraint(0, 0, 1);
+		String input = "# comment\n" + FOUR_SOLUTIONS + "\n\n3:x\n"
+				+ unsolvable + "\n";
+		List<String> rows = rows(run(new BatchSolver(
+				BatchSolver.Format.CSV, 2), input));
+		assertEquals(3, rows.size());
+		assertTrue(rows.get(0).startsWith("2,SAT,2,5:"), rows.get(0));
+		assertTrue(rows.get(1).startsWith("4,ERROR,0,,\""), rows.get(1));
+		assertEquals("5,UNSAT,0,,", rows.get(2));
+	}
+
+	@Test
+	public void json() throws Exception {
+		BatchSolver batch = new BatchSolver(BatchSolver.Format.JSON, 2);
+		batch.setMetrics(true);
+		String[] lines = run(batch, FOUR_SOLUTIONS + "\n3:x\n").split("\n");
+		assertEquals(2, lines.length);
+		assertTrue(lines[0].matches("\\{\"line\":1,\"status\":\"SAT\","
+				+ "\"solutions\":2,\"solution\":\"5:[^\"]*\","
+				+ "\"millis\":[0-9.E-]+,\"firstMillis\":[0-9.E-]+,"
+				+ "\"metrics\":\\{.*\\}\\}"), lines[0]);
+		assertTrue(lines[1].matches("\\{\"line\":2,\"status\":\"ERROR\","
+				+ "\"solutions\":0,\"solution\":null,.*\"error\":\".*\"\\}"),
+				lines[1]);
+	}
+
+	@Test
+	public void limit() throws Exception {
+		for (long limit = 1; limit <= 5; limit++) {
+			List<String> rows = rows(run(new BatchSolver(
+					BatchSolver.Format.CSV, limit), FOUR_SOLUTIONS + "\n"));
+			assertTrue(rows.get(0).startsWith("1,SAT," + Math.min(limit, 4)
+					+ ","), rows.get(0));
+		}
+	}
+
+	@Test
+	public void threads() throws Exception {
+		String input = input(9, 300);
+		List<String> single = rows(run(new BatchSolver(
+				BatchSolver.Format.CSV, 2, 1), input));
+		List<String> parallel = rows(run(new BatchSolver(
+				BatchSolver.Format.CSV, 2, 4), input));
+		assertEquals(single, parallel);
+
+		// in input order, every solution is valid
+		long previous = 0;
+		for (String row : parallel) {
+			String[] columns = row.split(",", 5);
+			long line = Long.parseLong(columns[0]);
+			assertTrue(line > previous, row);
+			previous = line;
+			if (columns[1].equals("SAT"))
+				assertTrue(Verifier.isValid(new Lights(columns[3])), row);
+		}
+	}
+
+	@Test
+	public void verify() throws Exception {
+		// a cache entry with two lights which see each other
+		Lights board = new Lights(3);
+		Lights wrong = board.clone();
+		wrong.setLight(0, 0);
+		wrong.setLight(0, 2);
+		SolutionCache cache = new SolutionCache(10);
+		cache.put(board, new SolutionCache.Entry(Uniqueness.Verdict.UNIQUE,
+				wrong.toString()));
+
+		BatchSolver batch = new BatchSolver(BatchSolver.Format.CSV, 2);
+		batch.setCache(cache);
+		assertTrue(rows(run(batch, board + "\n")).get(0).startsWith(
+				"1,SAT,1,"));
+		batch.setVerify(true);
+		String row = rows(run(batch, board + "\n")).get(0);
+		assertTrue(row.startsWith("1,ERROR,"), row);
+		assertTrue(row.contains("Invalid solution: "), row);
+	}
+
+	@Test
+	public void cache() throws Exception {
+		String input = input(14, 40);
+		SolutionCache cache = new SolutionCache(1000);
+		BatchSolver batch = new BatchSolver(BatchSolver.Format.CSV, 1);
+		batch.setCache(cache);
+		List<String> first = rows(run(batch, input));
+		long misses = cache.getMisses();
+		assertEquals(0, cache.getHits());
+
+		// the second run is answered from the entries without verdict
+		assertEquals(first, rows(run(batch, input)));
+		assertEquals(misses, cache.getHits());
+
+		// a limit of 2 needs the verdict and solves again
+		Lights lights = new Lights(FOUR_SOLUTIONS);
+		run(batch, FOUR_SOLUTIONS + "\n");
+		assertNull(cache.get(lights).getVerdict());
+		BatchSolver two = new BatchSolver(BatchSolver.Format.CSV, 2);
+		two.setCache(cache);
+		assertTrue(rows(run(two, FOUR_SOLUTIONS + "\n")).get(0).startsWith(
+				"1,SAT,2,"));
+		assertEquals(Uniqueness.Verdict.MULTIPLE, cache.get(lights)
+				.getVerdict());
+		Set<String> solutions = LightsSolverTest.bruteForce(lights);
+		assertTrue(solutions.containsAll(cache.get(lights).getSolutions()));
+	}
+
+}
@@ -0,0 +1,142 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class BitboardTest {
+
+	/*
+	 * a random board with the given densities of blocks and lights. Few
+	 * blocks give long segments, which carry the light across the words.
+	 */
+	private static Lights randomBoard(Random random, int dimension,
+			double blocks, double lights) {
+		Lights board = new Lights(dimension);
+		for (int row = 0; row < dimension; row++) {
+			for (int col = 0; col < dimension; col++) {
+				double x = random.nextDouble();
+				if (x < blocks / 2)
+					board.setBlock(row, col);
+				else if (x < blocks)
+					board.setBlockConstraint(row, col, random.nextInt(5));
+				else if (x < blocks + lights)
+					board.setLight(row, col);
+			}
+		}
+		return board;
+	}
+
+	// whether a light sees another light in its row or column
+	private static boolean isConflict(Lights board, int row, int col) {
+		if (!board.isLight(row, col))
+			return false;
+		int dimension = board.getDimension();
+		int[][] directions = { { 0, 1 }, { 0, -1 }, { 1, 0 }, { -1, 0 } };
+		for (int[] d : directions) {
+			int r = row + d[0];
+			int c = col + d[1];
+			while (r >= 0 && r < dimension && c >= 0 && c < dimension
+					&& !board.isBlock(r, c)) {
+				if (board.isLight(r, c))
+					return true;
+				r += d[0];
+				c += d[1];
+			}
+		}
+		return false;
+	}
+
+	private static void compare(Lights board) {
+		Bitboard bits = new Bitboard(board);
+		int dimension = board.getDimension();
+		assertEquals(dimension, bits.getDimension());
+		assertEquals((dimension + 63) / 64, bits.getWordsPerRow());
+
+		int lights = 0, unlit = 0, conflicts = 0, violated = 0;
+		for (int row = 0; row < dimension; row++) {
+			for (int col = 0; col < dimension; col++) {
+				String field = dimension + ": " + row + ", " + col;
+				assertEquals(board.isBlock(row, col), bits.isBlock(row, col),
+						field);
+				assertEquals(board.isLight(row, col), bits.isLight(row, col),
+						field);
+				assertEquals(board.isLit(row, col), bits.isLit(row, col), field);
+				assertEquals(board.getLitNeighbours(row, col), bits
+						.getLitNeighbours(row, col), field);
+				boolean conflict = isConflict(board, row, col);
+				assertEquals(conflict, bits.isConflict(row, col), field);
+				boolean violation = board.isConstrainedBlock(row, col)
+						&& board.getBlockConstraint(row, col) != board
+								.getLitNeighbours(row, col);
+				assertEquals(violation, bits.isViolated(row, col), field);
+
+				if (board.isLight(row, col))
+					lights++;
+				if (!board.isBlock(row, col) && !board.isLit(row, col))
+					unlit++;
+				if (conflict)
+					conflicts++;
+				if (violation)
+					violated++;
+			}
+		}
+		assertEquals(lights, bits.countLights());
+		assertEquals(unlit, bits.countUnlit());
+		assertEquals(conflicts, bits.countConflicts());
+		assertEquals(violated, bits.countViolated());
+		assertEquals(unlit + conflicts + violated == 0, bits.isSolution());
+	}
+
+	@Test
+	public void smallBoards() {
+		Random random = new Random(22);
+		for (int i = 0; i < 300; i++)
+			compare(LightsParserTest.randomBoard(random, 1 + random.nextInt(12)));
+	}
+
+	@Test
+	public void largeBoards() {
+		Random random = new Random(63);
+		double[][] densities = { { 0.3, 0.1 }, { 0.05, 0.02 }, { 0.01, 0.005 },
+				{ 0, 0.001 } };
+		for (int dimension = 63; dimension <= 130; dimension++) {
+			for (double[] density : densities)
+				compare(randomBoard(random, dimension, density[0], density[1]));
+		}
+	}
+
+	@Test
+	public void singleLights() {
+		// a light at the edges of the words lights its whole row and column
+		for (int dimension : new int[] { 63, 64, 65, 127, 128, 129, 130 }) {
+			for (int pos : new int[] { 0, 62, 63, 64, 65, 127, 128, 129 }) {
+				if (pos >= dimension)
+					continue;
+				Lights board = new Lights(dimension);
+				board.setLight(pos, pos);
+				compare(board);
+				board.setLight(dimension - 1 - pos, dimension - 1 - pos);
+				compare(board);
+			}
+		}
+	}
+
+	@Test
+	public void solution() throws Exception {
+		Random random = new Random(8);
+		for (int i = 0; i < 40; i++) {
+			Lights board = LightsSolverTest.puzzle(random, 2 + random.nextInt(7));
+			if (new Solution(board).solve())
+				compare(board);
+		}
+	}
+
+}
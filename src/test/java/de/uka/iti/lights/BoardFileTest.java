@@ -0,0 +1,184 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BoardFileTest {
+
+	@TempDir
+	Path dir;
+
+	// write boards, every second one with a random light pattern as solution
+	private Path write(List<Lights> boards, List<Lights> solutions)
+			throws IOException {
+		Path file = dir.resolve("boards.bin");
+		try (BoardFileWriter writer = new BoardFileWriter(file)) {
+			for (int i = 0; i < boards.size(); i++)
+				writer.write(boards.get(i), solutions.get(i));
+		}
+		return file;
+	}
+
+	private static List<Lights> randomBoards(Random random, int count) {
+		List<Lights> boards = new ArrayList<Lights>();
+		for (int i = 0; i < count; i++) {
+			boards.add(LightsParserTest.randomBoard(random,
+					1 + random.nextInt(30)));
+		}
+		return boards;
+	}
+
+	private static List<Lights> solutionsFor(List<Lights> boards) {
+		List<Lights> solutions = new ArrayList<Lights>();
+		for (int i = 0; i < boards.size(); i++) {
+			Lights solution = null;
+			if (i % 2 == 0) {
+				solution = boards.get(i).clone();
+				solution.removeAllLights();
+				int dimension = solution.getDimension();
+				for (int row = 0; row < dimension; row++) {
+					for (int col = 0; col < dimension; col++) {
+						if (solution.isEmpty(row, col) && (row + col) % 3 == 0)
+							solution.setLight(row, col);
+					}
+				}
+			}
+			solutions.add(solution);
+		}
+		return solutions;
+	}
+
+	@Test
+	public void roundTrip() throws Exception {
+		List<Lights> boards = randomBoards(new Random(18), 200);
+		List<Lights> solutions = solutionsFor(boards);
+		Path file = write(boards, solutions);
+
+		try (BoardFile in = new BoardFile(file)) {
+			assertEquals(boards.size(), in.size());
+			for (int i = 0; i < boards.size(); i++) {
+				assertEquals(boards.get(i).getDimension(), in.getDimension(i));
+				assertEquals(boards.get(i), in.getBoard(i));
+				assertEquals(solutions.get(i) != null, in.hasSolution(i));
+				assertEquals(solutions.get(i), in.getSolution(i));
+			}
+			assertThrows(IndexOutOfBoundsException.class,
+					() -> in.getBoard(boards.size()));
+		}
+	}
+
+	@Test
+	public void textConversion() throws Exception {
+		List<Lights> boards = randomBoards(new Random(8), 50);
+		StringBuilder sb = new StringBuilder();
+		for (Lights board : boards)
+			sb.append(board).append('\n');
+		Path text = dir.resolve("boards.txt");
+		Files.write(text, sb.toString().getBytes(StandardCharsets.US_ASCII));
+
+		Path binary = dir.resolve("boards.bin");
+		assertEquals(boards.size(), BoardFile.fromText(text, binary));
+		Path back = dir.resolve("back.txt");
+		BoardFile.toText(binary, back);
+		assertEquals(sb.toString(), new String(Files.readAllBytes(back),
+				StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	public void closed() throws Exception {
+		List<Lights> boards = randomBoards(new Random(3), 2);
+		Path file = write(boards, Arrays.asList(null, null));
+		BoardFile in = new BoardFile(file);
+		in.close();
+		assertThrows(IllegalStateException.class, () -> in.getBoard(0));
+		assertThrows(IllegalStateException.class, () -> in.hasSolution(0));
+	}
+
+	@Test
+	public void truncated() throws Exception {
+		List<Lights> boards = randomBoards(new Random(5), 10);
+		Path file = write(boards, solutionsFor(boards));
+		try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+			raf.setLength(raf.length() - 5);
+		}
+		assertThrows(IOException.class, () -> new BoardFile(file));
+	}
+
+	@Test
+	public void corruptRecords() throws Exception {
+		List<Lights> boards = new ArrayList<Lights>();
+		boards.add(new Lights("3:B"));
+		boards.add(new Lights("2:1"));
+		Path file = write(boards, Arrays.asList(null, null));
+
+		// the first record starts after the header: dimension, flags, cells
+		int first = BoardFile.HEADER_SIZE;
+		for (int dimension : new int[] { 0, 4, 65535 }) {
+			patchShort(file, first, dimension);
+			try (BoardFile in = new BoardFile(file)) {
+				assertThrows(IOException.class, () -> in.getBoard(0));
+				assertThrows(IOException.class, () -> in.getDimension(0));
+				assertEquals(boards.get(1), in.getBoard(1));
+			}
+		}
+		patchShort(file, first, 3);
+
+		// a flag promising a solution which does not fit
+		patchByte(file, first + 2, BoardFile.FLAG_SOLUTION);
+		try (BoardFile in = new BoardFile(file)) {
+			assertThrows(IOException.class, () -> in.getSolution(0));
+		}
+		patchByte(file, first + 2, 0);
+
+		// an unknown cell code
+		patchByte(file, first + 3, 0xf0);
+		try (BoardFile in = new BoardFile(file)) {
+			assertThrows(IOException.class, () -> in.getBoard(0));
+		}
+		patchByte(file, first + 3, 0x20);
+		try (BoardFile in = new BoardFile(file)) {
+			assertEquals(boards.get(0), in.getBoard(0));
+			assertFalse(in.hasSolution(0));
+			assertNull(in.getSolution(0));
+			assertTrue(in.getBoard(0).isBlock(0, 0));
+		}
+	}
+
+	private static void patchShort(Path file, long offset, int value)
+			throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+			raf.seek(offset);
+			raf.writeShort(value);
+		}
+	}
+
+	private static void patchByte(Path file, long offset, int value)
+			throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+			raf.seek(offset);
+			raf.writeByte(value);
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import static de.uka.iti.lights.LightsSolverTest.boards;
+import static de.uka.iti.lights.LightsSolverTest.bruteForce;
+import static de.uka.iti.lights.LightsSolverTest.check;
+import static de.uka.iti.lights.LightsSolverTest.enumerate;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class ComponentSolverTest {
+
+	@Test
+	public void allSolutions() {
+		for (Lights lights : boards(31, 300)) {
+			Lights board = lights.clone();
+			assertEquals(bruteForce(lights), enumerate(new ComponentSolver(
+					board), board), lights.toString());
+		}
+	}
+
+	@Test
+	public void countAndUniqueness() throws Exception {
+		for (Lights lights : boards(32, 200)) {
+			Set<String> expected = bruteForce(lights);
+			for (long limit = 1; limit <= 5; limit++) {
+				assertEquals(Math.min(limit, expected.size()),
+						new ComponentSolver(lights.clone()).countSolutions(limit),
+						lights.toString());
+			}
+			check(expected, ComponentSolver.isUnique(lights));
+		}
+	}
+
+	@Test
+	public void separatedComponents() {
+		// two halves of the top row split by a block, with two solutions each
+		Lights lights = new Lights(5);
+		for (int row = 0; row < 5; row++) {
+			for (int col = 0; col < 5; col++) {
+				if (row > 0 || col == 2)
+					lights.setBlock(row, col);
+			}
+		}
+		Lights board = lights.clone();
+		ComponentSolver solver = new ComponentSolver(board);
+		Set<String> solutions = enumerate(solver, board);
+		assertEquals(bruteForce(lights), solutions);
+		assertEquals(4, solutions.size());
+		assertEquals(2, solver.getComponentCount());
+	}
+
+	@Test
+	public void largeBoards() throws Exception {
+		// enough open fields for the parallel search of the components
+		Random random = new Random(33);
+		for (int i = 0; i < 6; i++) {
+			Lights lights = LightsSolverTest.puzzle(random, 25);
+			assertEquals(Solution.isUnique(lights).getVerdict(),
+					ComponentSolver.isUnique(lights).getVerdict(),
+					lights.toString());
+			Lights board = lights.clone();
+			if (new ComponentSolver(board).trySolve() == SolveStatus.SAT)
+				assertTrue(Verifier.isValid(board), board.toString());
+		}
+	}
+
+}
@@ -0,0 +1,54 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import static de.uka.iti.lights.LightsSolverTest.bruteForce;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+
+public class GeneratorTest {
+
+	@Test
+	public void uniqueBoards() {
+		Generator generator = new Generator(5, 25);
+		for (int i = 0; i < 30; i++) {
+			Lights lights = generator.generate(i);
+			assertEquals(1, bruteForce(lights).size(), lights.toString());
+			assertEquals(lights, generator.generate(i));
+		}
+		assertNotEquals(generator.generate(0), new Generator(5, 26).generate(0));
+	}
+
+	@Test
+	public void threads() throws Exception {
+		Generator generator = new Generator(5, 25);
+		StringWriter single = new StringWriter();
+		generator.generate(0, 150, 1, single);
+		StringWriter parallel = new StringWriter();
+		generator.generate(0, 150, 3, parallel);
+		assertEquals(single.toString(), parallel.toString());
+
+		String[] lines = single.toString().split("\n");
+		assertEquals(150, lines.length);
+		assertEquals(generator.generate(100).toString(), lines[100]);
+	}
+
+	@Test
+	public void arguments() {
+		assertThrows(IllegalArgumentException.class, () -> new Generator(0, 1));
+		Generator generator = new Generator(3, 1);
+		assertThrows(IllegalArgumentException.class,
+				() -> generator.setWallDensity(1.5));
+		assertThrows(IllegalArgumentException.class,
+				() -> generator.generate(0, 1, 0, new StringWriter()));
+	}
+
+}
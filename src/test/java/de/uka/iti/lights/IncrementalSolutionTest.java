@@ -0,0 +1,87 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import static de.uka.iti.lights.LightsSolverTest.boards;
+import static de.uka.iti.lights.LightsSolverTest.bruteForce;
+import static de.uka.iti.lights.LightsSolverTest.check;
+import static de.uka.iti.lights.LightsSolverTest.puzzle;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class IncrementalSolutionTest {
+
+	@Test
+	public void uniqueness() throws Exception {
+		for (Lights lights : boards(41, 300)) {
+			check(bruteForce(lights),
+					new IncrementalSolution(lights.clone()).isUnique());
+		}
+	}
+
+	@Test
+	public void edits() throws Exception {
+		Random random = new Random(24);
+		for (int i = 0; i < 20; i++) {
+			int dimension = 2 + random.nextInt(4);
+			Lights board = puzzle(random, dimension);
+			IncrementalSolution incremental = new IncrementalSolution(board);
+			incremental.setPresolve(i % 2 == 0);
+			for (int step = 0; step < 15; step++) {
+				int row = random.nextInt(dimension);
+				int col = random.nextInt(dimension);
+				board.clear(row, col);
+				int kind = random.nextInt(3);
+				if (kind == 1)
+					board.setBlock(row, col);
+				else if (kind == 2)
+					board.setBlockConstraint(row, col, random.nextInt(5));
+				incremental.update(row, col);
+
+				Set<String> expected = bruteForce(board);
+				check(expected, incremental.isUnique());
+				Lights solved = board.clone();
+				SolveStatus status = new IncrementalSolution(solved).trySolve();
+				assertEquals(expected.isEmpty() ? SolveStatus.UNSAT
+						: SolveStatus.SAT, status);
+				if (status == SolveStatus.SAT)
+					assertTrue(expected.contains(solved.toString()));
+			}
+		}
+	}
+
+	@Test
+	public void rebuild() throws Exception {
+		Random random = new Random(42);
+		Lights board = puzzle(random, 4);
+		IncrementalSolution incremental = new IncrementalSolution(board);
+		int guarded = 0;
+		while (guarded < 2 * IncrementalSolution.MAX_RETIRED) {
+			int row = random.nextInt(4);
+			int col = random.nextInt(4);
+			board.clear(row, col);
+			if (random.nextBoolean())
+				board.setBlock(row, col);
+			incremental.update(row, col);
+			Uniqueness uniqueness = incremental.isUnique();
+			check(bruteForce(board), uniqueness);
+
+			// a check with a first solution retires a guard, after enough
+			// of them only the current types are encoded
+			if (uniqueness.getVerdict() != Uniqueness.Verdict.NONE
+					&& ++guarded % IncrementalSolution.MAX_RETIRED == 0) {
+				assertEquals(new IncrementalSolution(board).getClauseCount(),
+						incremental.getClauseCount());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,126 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class LightsParserTest {
+
+	/**
+	 * create a random board with blocks, numbers and lights; the board need
+	 * not be solvable.
+	 */
+	static Lights randomBoard(Random random, int dimension) {
+		Lights lights = new Lights(dimension);
+		for (int row = 0; row < dimension; row++) {
+			for (int col = 0; col < dimension; col++) {
+				double x = random.nextDouble();
+				if (x < 0.15)
+					lights.setBlock(row, col);
+				else if (x < 0.3)
+					lights.setBlockConstraint(row, col, random.nextInt(5));
+				else if (x < 0.4)
+					lights.setLight(row, col);
+			}
+		}
+		return lights;
+	}
+
+	@Test
+	public void roundTrip() throws Exception {
+		Random random = new Random(17);
+		for (int i = 0; i < 500; i++) {
+			Lights lights = randomBoard(random, 1 + random.nextInt(40));
+			String description = lights.toString();
+			Lights parsed = new Lights(description);
+			assertEquals(lights, parsed);
+			assertEquals(description, parsed.toString());
+
+			ByteBuffer bytes = ByteBuffer.wrap(description
+					.getBytes(StandardCharsets.US_ASCII));
+			assertEquals(lights, new LightsParser(bytes).next());
+			assertEquals(lights, new LightsParser(new StringReader(description))
+					.next());
+		}
+	}
+
+	@Test
+	public void outputPaths() throws Exception {
+		Random random = new Random(19);
+		for (int i = 0; i < 200; i++) {
+			Lights lights = randomBoard(random, 1 + random.nextInt(60));
+			String description = lights.toString();
+
+			StringWriter writer = new StringWriter();
+			lights.appendTo(writer);
+			assertEquals(description, writer.toString());
+
+			ByteBuffer bytes = ByteBuffer.allocate(description.length());
+			lights.writeTo(bytes);
+			assertEquals(description, new String(bytes.array(),
+					StandardCharsets.US_ASCII));
+
+			for (Symmetry symmetry : Symmetry.values()) {
+				assertEquals(symmetry.apply(lights).toBoardString(),
+						symmetry.describe(lights));
+			}
+		}
+	}
+
+	@Test
+	public void manyBoards() throws Exception {
+		Random random = new Random(4);
+		List<Lights> boards = new ArrayList<Lights>();
+		StringBuilder sb = new StringBuilder("# boards\n");
+		for (int i = 0; i < 50; i++) {
+			Lights lights = randomBoard(random, 1 + random.nextInt(12));
+			boards.add(lights);
+			sb.append(lights).append('\n');
+		}
+
+		LightsParser parser = new LightsParser(new StringReader(sb.toString()));
+		for (Lights lights : boards) {
+			assertTrue(parser.hasNext());
+			assertEquals(lights, parser.next());
+		}
+		assertFalse(parser.hasNext());
+	}
+
+	@Test
+	public void incompleteDescription() throws Exception {
+		Lights empty = new Lights("3:");
+		assertEquals(new Lights(3), empty);
+		assertEquals("3:i", empty.toString());
+		assertEquals(empty, new Lights(empty.toString()));
+
+		Lights partial = new Lights("3:B");
+		assertTrue(partial.isBlock(0, 0));
+		assertEquals("3:Bh", partial.toString());
+	}
+
+	@Test
+	public void rejectsMalformed() {
+		for (String description : new String[] { "0:", "0: ", "00:", ":",
+				"3", "x:a", "1001:", "2:e", "2:X" }) {
+			assertThrows(LightsFormatException.class,
+					() -> new Lights(description), description);
+		}
+	}
+
+}
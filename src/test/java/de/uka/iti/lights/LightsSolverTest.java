@@ -0,0 +1,169 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+public class LightsSolverTest {
+
+	/**
+	 * all solutions of a small board by brute force: lights are placed on
+	 * unlit fields only, every complete placement is checked by the verifier.
+	 */
+	static Set<String> bruteForce(Lights lights) {
+		Lights board = lights.clone();
+		board.removeAllLights();
+		Set<String> solutions = new TreeSet<String>();
+		bruteForce(board, 0, solutions);
+		return solutions;
+	}
+
+	private static void bruteForce(Lights board, int pos, Set<String> solutions) {
+		int dimension = board.getDimension();
+		if (pos == dimension * dimension) {
+			if (Verifier.isValid(board))
+				solutions.add(board.toString());
+			return;
+		}
+		int row = pos / dimension;
+		int col = pos % dimension;
+		bruteForce(board, pos + 1, solutions);
+		if (board.isEmpty(row, col) && !board.isLit(row, col)) {
+			board.setLight(row, col);
+			bruteForce(board, pos + 1, solutions);
+			board.setEmpty(row, col);
+		}
+	}
+
+	/**
+	 * a random board which is mostly solvable: blocks are numbered after a
+	 * random valid placement of lights, some numbers are left out.
+	 */
+	static Lights puzzle(Random random, int dimension) {
+		Lights lights = new Lights(dimension);
+		for (int row = 0; row < dimension; row++) {
+			for (int col = 0; col < dimension; col++) {
+				if (random.nextDouble() < 0.3)
+					lights.setBlock(row, col);
+			}
+		}
+		for (int row = 0; row < dimension; row++) {
+			for (int col = 0; col < dimension; col++) {
+				if (lights.isEmpty(row, col) && !lights.isLit(row, col)
+						&& random.nextBoolean())
+					lights.setLight(row, col);
+			}
+		}
+		for (int row = 0; row < dimension; row++) {
+			for (int col = 0; col < dimension; col++) {
+				if (lights.isBlock(row, col) && random.nextBoolean()) {
+					int number = lights.getLitNeighbours(row, col);
+					lights.clear(row, col);
+					lights.setBlockConstraint(row, col, number);
+				}
+			}
+		}
+		lights.removeAllLights();
+		return lights;
+	}
+
+	/**
+	 * random boards of dimension 1 to 5, solvable and unsolvable ones.
+	 */
+	static List<Lights> boards(long seed, int count) {
+		Random random = new Random(seed);
+		List<Lights> boards = new ArrayList<Lights>();
+		for (int i = 0; i < count; i++) {
+			int dimension = 1 + random.nextInt(5);
+			Lights lights = i % 3 == 0 ? LightsParserTest.randomBoard(random,
+					dimension) : puzzle(random, dimension);
+			lights.removeAllLights();
+			boards.add(lights);
+		}
+		return boards;
+	}
+
+	/**
+	 * all solutions found by a solver, each checked by the verifier.
+	 */
+	static Set<String> enumerate(LightsSolver solver, Lights board) {
+		Set<String> solutions = new TreeSet<String>();
+		SolveStatus status = solver.trySolve();
+		while (status == SolveStatus.SAT) {
+			assertTrue(Verifier.isValid(board), board.toString());
+			assertTrue(solutions.add(board.toString()), board.toString());
+			status = solver.tryNewSolution();
+		}
+		assertEquals(SolveStatus.UNSAT, status);
+		assertEquals(solutions.size(), solver.getSolutionCount());
+		return solutions;
+	}
+
+	private static Uniqueness.Verdict verdict(Set<String> solutions) {
+		return solutions.isEmpty() ? Uniqueness.Verdict.NONE
+				: solutions.size() == 1 ? Uniqueness.Verdict.UNIQUE
+						: Uniqueness.Verdict.MULTIPLE;
+	}
+
+	/**
+	 * check a uniqueness result against all solutions: the verdict matches
+	 * and the witnesses are distinct solutions.
+	 */
+	static void check(Set<String> solutions, Uniqueness uniqueness) {
+		assertEquals(verdict(solutions), uniqueness.getVerdict());
+		if (uniqueness.getFirst() != null)
+			assertTrue(solutions.contains(uniqueness.getFirst().toString()));
+		if (uniqueness.getSecond() != null) {
+			assertTrue(solutions.contains(uniqueness.getSecond().toString()));
+			assertNotEquals(uniqueness.getFirst(), uniqueness.getSecond());
+		}
+	}
+
+	@Test
+	public void allSolutions() {
+		for (Lights lights : boards(21, 300)) {
+			Set<String> expected = bruteForce(lights);
+			Lights board = lights.clone();
+			assertEquals(expected, enumerate(new Solution(board), board),
+					lights.toString());
+			board = lights.clone();
+			assertEquals(expected, enumerate(new SearchSolver(board), board),
+					lights.toString());
+		}
+	}
+
+	@Test
+	public void solutionLimit() {
+		for (Lights lights : boards(22, 100)) {
+			int expected = Math.min(2, bruteForce(lights).size());
+			Lights board = lights.clone();
+			LightsSolver solver = LightsSolver.create(board);
+			solver.setSolutionLimit(2);
+			if (solver.trySolve() == SolveStatus.SAT)
+				solver.tryNewSolution();
+			assertEquals(expected, solver.getSolutionCount(), lights.toString());
+		}
+	}
+
+	@Test
+	public void uniqueness() throws Exception {
+		for (Lights lights : boards(23, 300)) {
+			Set<String> expected = bruteForce(lights);
+			check(expected, Solution.isUnique(lights));
+		}
+	}
+
+}
@@ -0,0 +1,199 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.ISolverService;
+import org.sat4j.specs.SearchListener;
+import org.sat4j.specs.TimeoutException;
+import org.sat4j.tools.SolverDecorator;
+
+public class PortfolioTest {
+
+	// the longest a solver waits for its cancellation
+	private static final long WAIT_MS = 10000;
+
+	private static Portfolio.Configuration fast(String name) {
+		return new Portfolio.Configuration(name, SolverFactory::newDefault);
+	}
+
+	/*
+	 * a solver which never finds an answer. It reports a decision to the
+	 * search listener every millisecond, as a real search would, and stops
+	 * with a timeout once the timeout has been expired.
+	 */
+	private static Portfolio.Configuration slow(String name,
+			AtomicBoolean cancelled) {
+		return new Portfolio.Configuration(name,
+				() -> new SolverDecorator<ISolver>(SolverFactory.newDefault()) {
+					private static final long serialVersionUID = 1L;
+					private SearchListener<?> listener;
+
+					public <S extends ISolverService> void setSearchListener(
+							SearchListener<S> listener) {
+						this.listener = listener;
+						super.setSearchListener(listener);
+					}
+
+					public void expireTimeout() {
+						cancelled.set(true);
+						super.expireTimeout();
+					}
+
+					public boolean isSatisfiable() throws TimeoutException {
+						long end = System.currentTimeMillis() + WAIT_MS;
+						while (!cancelled.get()
+								&& System.currentTimeMillis() < end) {
+							listener.assuming(1);
+							try {
+								Thread.sleep(1);
+							} catch (InterruptedException e) {
+								Thread.currentThread().interrupt();
+								break;
+							}
+						}
+						throw new TimeoutException("Waited for cancellation");
+					}
+				});
+	}
+
+	// a solver which runs out of time right away
+	private static Portfolio.Configuration timingOut(String name) {
+		return new Portfolio.Configuration(name,
+				() -> new SolverDecorator<ISolver>(SolverFactory.newDefault()) {
+					private static final long serialVersionUID = 1L;
+
+					public boolean isSatisfiable() throws TimeoutException {
+						throw new TimeoutException("Out of time");
+					}
+				});
+	}
+
+	// a solver which fails with the given exception
+	private static Portfolio.Configuration failing(String name,
+			RuntimeException failure) {
+		return new Portfolio.Configuration(name,
+				() -> new SolverDecorator<ISolver>(SolverFactory.newDefault()) {
+					private static final long serialVersionUID = 1L;
+
+					public boolean isSatisfiable() {
+						throw failure;
+					}
+				});
+	}
+
+	// an empty board leaves every field to the SAT search
+	private static Lights board() {
+		return new Lights(4);
+	}
+
+	private static Map<String, Long> wins(Object... namesAndCounts) {
+		Map<String, Long> wins = new LinkedHashMap<String, Long>();
+		for (int i = 0; i < namesAndCounts.length; i += 2)
+			wins.put((String) namesAndCounts[i],
+					((Integer) namesAndCounts[i + 1]).longValue());
+		return wins;
+	}
+
+	@Test
+	public void firstAnswerWins() throws Exception {
+		AtomicBoolean cancelled = new AtomicBoolean();
+		try (Portfolio portfolio = new Portfolio(Arrays.asList(
+				slow("slow", cancelled), fast("fast")))) {
+			long start = System.currentTimeMillis();
+			Lights lights = board();
+			assertTrue(portfolio.solve(lights));
+			assertTrue(Verifier.isValid(lights));
+
+			// the loser has been cancelled instead of running out of time
+			assertTrue(cancelled.get());
+			assertTrue(System.currentTimeMillis() - start < WAIT_MS / 2);
+			assertEquals(wins("slow", 0, "fast", 1), portfolio.getWins());
+		}
+	}
+
+	@Test
+	public void unsolvable() throws Exception {
+		Lights lights = new Lights(2);
+		lights.setBlockConstraint(0, 0, 3);
+		try (Portfolio portfolio = new Portfolio(Arrays.asList(fast("a"),
+				timingOut("b")))) {
+			assertFalse(portfolio.solve(lights));
+			assertEquals(wins("a", 1, "b", 0), portfolio.getWins());
+		}
+	}
+
+	@Test
+	public void timeouts() throws Exception {
+		try (Portfolio portfolio = new Portfolio(Arrays.asList(
+				timingOut("a"), timingOut("b")))) {
+			assertThrows(TimeoutException.class, () -> portfolio.solve(board()));
+			assertEquals(wins("a", 0, "b", 0), portfolio.getWins());
+		}
+
+		// a single timeout is no failure while another one answers
+		try (Portfolio portfolio = new Portfolio(Arrays.asList(
+				timingOut("a"), fast("b")))) {
+			Lights lights = board();
+			assertTrue(portfolio.solve(lights));
+			assertTrue(Verifier.isValid(lights));
+		}
+	}
+
+	@Test
+	public void failures() {
+		RuntimeException failure = new IllegalStateException("broken solver");
+		try (Portfolio portfolio = new Portfolio(Arrays.asList(
+				timingOut("a"), failing("b", failure), timingOut("c")))) {
+			assertSame(failure, assertThrows(IllegalStateException.class,
+					() -> portfolio.solve(board())));
+		}
+	}
+
+	@Test
+	public void narrow() throws Exception {
+		try (Portfolio portfolio = new Portfolio(Arrays.asList(
+				timingOut("a"), fast("b"), timingOut("c")))) {
+			for (int i = 0; i < 3; i++)
+				assertTrue(portfolio.solve(board()));
+			assertEquals(wins("a", 0, "b", 3, "c", 0), portfolio.getWins());
+
+			try (Portfolio best = portfolio.narrow(1)) {
+				assertEquals(wins("b", 0), best.getWins());
+				assertTrue(best.solve(board()));
+				assertEquals(wins("b", 1), best.getWins());
+			}
+			try (Portfolio all = portfolio.narrow(5)) {
+				assertEquals("b", all.getWins().keySet().iterator().next());
+				assertEquals(3, all.getWins().size());
+			}
+		}
+	}
+
+	@Test
+	public void closed() {
+		Portfolio portfolio = new Portfolio(Arrays.asList(fast("a")));
+		portfolio.close();
+		assertThrows(IllegalStateException.class,
+				() -> portfolio.solve(board()));
+		assertThrows(IllegalArgumentException.class,
+				() -> new Portfolio(Arrays.<Portfolio.Configuration> asList()));
+	}
+
+}
@@ -0,0 +1,87 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class SegmentIndexTest {
+
+	// compare every field of the index with the ray scans of the board
+	private static void compare(Lights lights, SegmentIndex segments) {
+		int dimension = lights.getDimension();
+		for (int row = 0; row < dimension; row++) {
+			for (int col = 0; col < dimension; col++) {
+				int pos = row * dimension + col;
+				String where = lights + " at " + row + ", " + col;
+				assertEquals(lights.isLit(row, col), segments.isLit(pos), where);
+				if (lights.isLight(row, col)) {
+					// in conflict iff still lit without the light itself
+					lights.setEmpty(row, col);
+					assertEquals(lights.isLit(row, col),
+							segments.isConflict(pos), where);
+					lights.setLight(row, col);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void structure() {
+		// B . .
+		// . B .
+		// . . .
+		Lights lights = new Lights(3);
+		lights.setBlock(0, 0);
+		lights.setBlockConstraint(1, 1, 2);
+		SegmentIndex segments = lights.segments();
+		assertEquals(4, segments.getRowSegmentCount());
+		assertEquals(8, segments.getSegmentCount());
+		assertEquals(-1, segments.getRowSegment(0));
+		assertEquals(-1, segments.getColumnSegment(4));
+		assertEquals(segments.getRowSegment(1), segments.getRowSegment(2));
+		assertEquals(1, segments.getSegmentStart(segments.getRowSegment(1)));
+		assertEquals(2, segments.getSegmentLength(segments.getRowSegment(1)));
+		assertEquals(3, segments.getSegmentStride(segments.getColumnSegment(3)));
+		assertThrows(IllegalArgumentException.class, () -> segments.setLight(4));
+	}
+
+	@Test
+	public void lightEdits() {
+		Random random = new Random(2);
+		for (int i = 0; i < 100; i++) {
+			int dimension = 1 + random.nextInt(12);
+			Lights lights = LightsParserTest.randomBoard(random, dimension);
+			SegmentIndex segments = lights.segments();
+			compare(lights, segments);
+
+			for (int step = 0; step < 30; step++) {
+				int row = random.nextInt(dimension);
+				int col = random.nextInt(dimension);
+				int pos = row * dimension + col;
+				if (lights.isLight(row, col)) {
+					lights.setEmpty(row, col);
+					segments.removeLight(pos);
+				} else if (lights.isEmpty(row, col)) {
+					lights.setLight(row, col);
+					segments.setLight(pos);
+				}
+				compare(lights, segments);
+			}
+
+			lights.removeAllLights();
+			segments.removeAllLights();
+			for (int pos = 0; pos < dimension * dimension; pos++)
+				assertFalse(segments.isLit(pos));
+		}
+	}
+
+}
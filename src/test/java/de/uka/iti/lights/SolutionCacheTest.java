@@ -0,0 +1,110 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SolutionCacheTest {
+
+	// a board with blocks in the lower row and the given empty fields above
+	private static Lights board(int empty) {
+		Lights lights = new Lights(2);
+		lights.setBlock(1, 0);
+		lights.setBlock(1, 1);
+		for (int col = empty; col < 2; col++)
+			lights.setBlock(0, col);
+		return lights;
+	}
+
+	@TempDir
+	Path dir;
+
+	@Test
+	public void solveWithoutVerdict() throws Exception {
+		SolutionCache cache = new SolutionCache(10);
+		Lights lights = board(2);
+		assertTrue(cache.solve(lights));
+		assertTrue(Verifier.isValid(lights));
+
+		SolutionCache.Entry entry = cache.get(lights);
+		assertNull(entry.getVerdict());
+		assertEquals(1, entry.getSolutions().size());
+
+		// answered from the cache
+		Lights again = board(2);
+		assertTrue(cache.solve(again));
+		assertEquals(lights, again);
+		assertEquals(2, cache.getHits());
+
+		// the verdict is added on request
+		assertEquals(Uniqueness.Verdict.MULTIPLE, cache.isUnique(lights)
+				.getVerdict());
+		assertEquals(Uniqueness.Verdict.MULTIPLE, cache.get(lights)
+				.getVerdict());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void unsolvable() throws Exception {
+		SolutionCache cache = new SolutionCache(10);
+		// a corner with four lit neighbours
+		Lights lights = new Lights(2);
+		lights.setBlockConstraint(0, 0, 4);
+		assertFalse(cache.solve(lights));
+		assertEquals(Uniqueness.Verdict.NONE, cache.get(lights).getVerdict());
+		assertFalse(cache.solve(lights));
+	}
+
+	@Test
+	public void verdictKept() throws Exception {
+		SolutionCache cache = new SolutionCache(10);
+		Lights lights = board(2);
+		Uniqueness uniqueness = cache.isUnique(lights);
+
+		// a solution stored by a concurrent solve() keeps the verdict
+		Lights solved = lights.clone();
+		solved.setLight(0, 0);
+		cache.put(lights, new SolutionCache.Entry(null, solved.toString()));
+		SolutionCache.Entry entry = cache.get(lights);
+		assertEquals(uniqueness.getVerdict(), entry.getVerdict());
+		assertEquals(2, entry.getSolutions().size());
+
+		// an entry with a verdict replaces one without
+		Lights other = board(1);
+		cache.solve(other);
+		cache.put(other, new SolutionCache.Entry(Uniqueness.Verdict.UNIQUE,
+				other.toString()));
+		assertEquals(Uniqueness.Verdict.UNIQUE, cache.get(other).getVerdict());
+	}
+
+	@Test
+	public void saveAndLoad() throws Exception {
+		SolutionCache cache = new SolutionCache(10);
+		Lights solved = board(2);
+		cache.solve(solved);
+		Lights checked = board(1);
+		assertTrue(cache.isUnique(checked).isUnique());
+
+		Path file = dir.resolve("cache.bin");
+		cache.save(file);
+		SolutionCache loaded = SolutionCache.load(file, 10);
+		assertEquals(2, loaded.size());
+		assertNull(loaded.get(solved).getVerdict());
+		assertEquals(cache.get(solved).getSolutions(), loaded.get(solved)
+				.getSolutions());
+		assertEquals(Uniqueness.Verdict.UNIQUE, loaded.get(checked)
+				.getVerdict());
+	}
+
+}
@@ -0,0 +1,177 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import static de.uka.iti.lights.LightsSolverTest.boards;
+import static de.uka.iti.lights.LightsSolverTest.bruteForce;
+import static de.uka.iti.lights.LightsSolverTest.enumerate;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class SolutionOptionsTest {
+
+	// every at-most-one encoding with clauses and native cardinalities
+	static List<Arguments> encodings() {
+		List<Arguments> result = new ArrayList<Arguments>();
+		for (AtMostOneEncoding encoding : AtMostOneEncoding.values()) {
+			result.add(Arguments.of(encoding, false));
+			result.add(Arguments.of(encoding, true));
+		}
+		return result;
+	}
+
+	@ParameterizedTest
+	@MethodSource("encodings")
+	public void encodings(AtMostOneEncoding encoding, boolean nativeCardinality) {
+		for (Lights lights : boards(4, 150)) {
+			Lights board = lights.clone();
+			Solution solution = new Solution(board);
+			solution.setAtMostOneEncoding(encoding);
+			solution.setNativeCardinality(nativeCardinality);
+			// the presolver would decide most fields before the encoding
+			solution.setPresolve(false);
+			assertEquals(bruteForce(lights), enumerate(solution, board),
+					lights.toString());
+		}
+	}
+
+	@ParameterizedTest
+	@CsvSource({ "false, false", "false, true", "true, false", "true, true" })
+	public void blocking(boolean modelIterator, boolean presolve) {
+		for (Lights lights : boards(6, 150)) {
+			Lights board = lights.clone();
+			Solution solution = new Solution(board);
+			solution.setModelIterator(modelIterator);
+			solution.setPresolve(presolve);
+			assertEquals(bruteForce(lights), enumerate(solution, board),
+					lights.toString());
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	public void lazySolutions(boolean modelIterator) {
+		for (Lights lights : boards(7, 150)) {
+			Set<String> expected = bruteForce(lights);
+			Solution solution = new Solution(lights.clone());
+			solution.setModelIterator(modelIterator);
+			Set<String> found = new TreeSet<String>();
+			for (Iterator<Lights> it = solution.solutions(); it.hasNext();)
+				found.add(it.next().toString());
+			assertEquals(expected, found, lights.toString());
+
+			// the stream stops searching at its limit
+			solution = new Solution(lights.clone());
+			solution.setModelIterator(modelIterator);
+			assertEquals(Math.min(2, expected.size()), solution.stream()
+					.limit(2).count());
+			assertEquals(Math.min(2, expected.size()),
+					solution.getSolutionCount());
+		}
+	}
+
+	/*
+	 * a random board which is invariant under a symmetry: the content of a
+	 * field is copied to its orbit.
+	 */
+	static Lights symmetric(Random random, int dimension, Symmetry symmetry) {
+		Lights lights = new Lights(dimension);
+		boolean[] done = new boolean[dimension * dimension];
+		for (int pos = 0; pos < done.length; pos++) {
+			if (done[pos])
+				continue;
+			double x = random.nextDouble();
+			int number = random.nextInt(3);
+			for (int p = pos; !done[p]; p = symmetry.map(p, dimension)) {
+				done[p] = true;
+				if (x < 0.2)
+					lights.setBlock(p / dimension, p % dimension);
+				else if (x < 0.3)
+					lights.setBlockConstraint(p / dimension, p % dimension,
+							number);
+			}
+		}
+		return lights;
+	}
+
+	// symmetric boards of dimension 2 to 6 and their solutions, shared by
+	// all options
+	private static final List<Lights> SYMMETRIC = new ArrayList<Lights>();
+	private static final List<Set<String>> SYMMETRIC_SOLUTIONS = new ArrayList<Set<String>>();
+
+	static {
+		Random random = new Random(16);
+		Symmetry[] symmetries = Symmetry.values();
+		while (SYMMETRIC.size() < 60) {
+			Lights lights = symmetric(random, 2 + random.nextInt(5),
+					symmetries[random.nextInt(symmetries.length)]);
+			// nearly empty boards have hundreds of solutions
+			Set<String> solutions = bruteForce(lights);
+			if (solutions.size() <= 48) {
+				SYMMETRIC.add(lights);
+				SYMMETRIC_SOLUTIONS.add(solutions);
+			}
+		}
+	}
+
+	// the encodings and blocking methods combined with symmetry breaking
+	static List<Arguments> symmetryOptions() {
+		List<Arguments> result = new ArrayList<Arguments>();
+		for (Arguments arguments : encodings()) {
+			Object[] a = arguments.get();
+			result.add(Arguments.of(a[0], a[1], false));
+			result.add(Arguments.of(a[0], a[1], true));
+		}
+		return result;
+	}
+
+	@ParameterizedTest
+	@MethodSource("symmetryOptions")
+	public void symmetryBreaking(AtMostOneEncoding encoding,
+			boolean nativeCardinality, boolean modelIterator) throws Exception {
+		for (int i = 0; i < SYMMETRIC.size(); i++) {
+			Lights lights = SYMMETRIC.get(i);
+			Set<String> expected = SYMMETRIC_SOLUTIONS.get(i);
+
+			Lights board = lights.clone();
+			Solution solution = new Solution(board);
+			solution.setAtMostOneEncoding(encoding);
+			solution.setNativeCardinality(nativeCardinality);
+			solution.setModelIterator(modelIterator);
+			solution.setSymmetryBreaking(true);
+
+			// the orbits of the representatives are all solutions
+			Set<String> covered = new TreeSet<String>();
+			for (String representative : enumerate(solution, board)) {
+				Lights found = new Lights(representative);
+				Set<String> orbit = new TreeSet<String>();
+				for (Symmetry symmetry : solution.getAutomorphisms())
+					orbit.add(symmetry.apply(found).toString());
+				for (String variant : orbit)
+					assertTrue(covered.add(variant), lights.toString());
+			}
+			assertEquals(expected, covered, lights.toString());
+			assertEquals(expected.size(), solution.getRepresentedCount(),
+					lights.toString());
+			assertEquals(Symmetry.automorphisms(lights),
+					solution.getAutomorphisms());
+		}
+	}
+
+}
@@ -0,0 +1,140 @@
+// Copyright (C) 2008 Universitaet Karlsruhe, Germany
+//
+// This source is protected by the GNU General Public License.
+//
+
+package de.uka.iti.lights;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+public class VerifierTest {
+
+	private static Violation unlit(int row, int col) {
+		return new Violation(Violation.Kind.UNLIT, row, col);
+	}
+
+	private static Violation conflict(int row, int col) {
+		return new Violation(Violation.Kind.CONFLICT, row, col);
+	}
+
+	private static Violation constraint(int row, int col) {
+		return new Violation(Violation.Kind.CONSTRAINT, row, col);
+	}
+
+	@Test
+	public void solution() {
+		Lights lights = new Lights(3);
+		lights.setBlockConstraint(1, 1, 2);
+		lights.setLight(0, 1);
+		lights.setLight(1, 0);
+		lights.setLight(2, 2);
+		assertTrue(Verifier.isValid(lights));
+		assertNull(Verifier.verify(lights));
+		assertEquals(Collections.emptyList(), Verifier.verifyAll(lights));
+	}
+
+	@Test
+	public void unlit() {
+		Lights lights = new Lights(3);
+		lights.setLight(1, 1);
+		assertFalse(Verifier.isValid(lights));
+		assertEquals(unlit(0, 0), Verifier.verify(lights));
+		assertEquals(Arrays.asList(unlit(0, 0), unlit(0, 2), unlit(2, 0),
+				unlit(2, 2)), Verifier.verifyAll(lights));
+	}
+
+	@Test
+	public void conflicts() {
+		// the light in the corner sees both others
+		Lights lights = new Lights(3);
+		lights.setLight(0, 0);
+		lights.setLight(0, 2);
+		lights.setLight(2, 0);
+		assertEquals(conflict(0, 0), Verifier.verify(lights));
+		assertEquals(Arrays.asList(conflict(0, 0), conflict(0, 2),
+				unlit(1, 1), conflict(2, 0)), Verifier.verifyAll(lights));
+
+		// a block between two lights separates them
+		lights.setBlock(0, 1);
+		lights.setBlock(1, 0);
+		lights.setLight(1, 1);
+		assertTrue(Verifier.isValid(lights));
+	}
+
+	@Test
+	public void constraints() {
+		// too few lights
+		Lights lights = new Lights(2);
+		lights.setBlockConstraint(0, 0, 1);
+		lights.setLight(1, 1);
+		assertEquals(Arrays.asList(constraint(0, 0)),
+				Verifier.verifyAll(lights));
+
+		// too many lights at both blocks
+		lights.clear(1, 1);
+		lights.setBlockConstraint(1, 1, 0);
+		lights.setLight(0, 1);
+		lights.setLight(1, 0);
+		assertEquals(Arrays.asList(constraint(0, 0), constraint(1, 1)),
+				Verifier.verifyAll(lights));
+		lights.clear(0, 0);
+		lights.clear(1, 1);
+		lights.setBlockConstraint(0, 0, 2);
+		lights.setBlockConstraint(1, 1, 2);
+		assertTrue(Verifier.isValid(lights));
+	}
+
+	@Test
+	public void kinds() {
+		/*
+		 * every kind on one board, each field is reported with the rule it
+		 * breaks: the block, the unlit empty field and the light
+		 */
+		Lights lights = new Lights(3);
+		lights.setBlock(0, 1);
+		lights.setBlockConstraint(1, 1, 3);
+		lights.setLight(1, 0);
+		lights.setLight(2, 0);
+		assertEquals(Arrays.asList(unlit(0, 2), conflict(1, 0),
+				constraint(1, 1), unlit(1, 2), conflict(2, 0)),
+				Verifier.verifyAll(lights));
+		assertEquals(unlit(0, 2), Verifier.verify(lights));
+		assertEquals("CONSTRAINT at 1, 1", Verifier.verifyAll(lights).get(2)
+				.toString());
+	}
+
+	@Test
+	public void wideBoard() {
+		// row 5 of a blocked board, split at columns 65 and 70
+		Lights lights = new Lights(130);
+		for (int row = 0; row < 130; row++) {
+			for (int col = 0; col < 130; col++) {
+				if (row != 5)
+					lights.setBlock(row, col);
+			}
+		}
+		lights.setBlock(5, 65);
+		lights.setBlock(5, 70);
+		lights.clear(4, 100);
+		lights.setBlockConstraint(4, 100, 0);
+		lights.setLight(5, 0);
+		lights.setLight(5, 100);
+		lights.setLight(5, 129);
+		assertEquals(Arrays.asList(constraint(4, 100), unlit(5, 66),
+				unlit(5, 67), unlit(5, 68), unlit(5, 69), conflict(5, 100),
+				conflict(5, 129)), Verifier.verifyAll(lights));
+		Violation first = Verifier.verify(lights);
+		assertEquals(4, first.getRow());
+		assertEquals(100, first.getColumn());
+		assertEquals(Violation.Kind.CONSTRAINT, first.getKind());
+	}
+
+}